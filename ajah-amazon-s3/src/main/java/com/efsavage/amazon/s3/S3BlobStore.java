@@ -0,0 +1,92 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.efsavage.amazon.s3;
+
+import java.io.IOException;
+
+import org.jets3t.service.ServiceException;
+
+import com.ajah.util.AjahUtils;
+import com.ajah.util.data.BlobStore;
+import com.ajah.util.io.file.FileHashUtils;
+
+/**
+ * A {@link BlobStore} backed by an S3 bucket. Blobs are stored under their key
+ * spread over prefixes by
+ * {@link FileHashUtils#getHashedFileName(String, int, int)}, and are not
+ * re-uploaded if already present.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class S3BlobStore implements BlobStore {
+
+	private final S3Client client;
+	private final Bucket bucket;
+	private final String prefix;
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param client
+	 *            The client to use, required.
+	 * @param bucket
+	 *            The bucket to store blobs in, required.
+	 * @param prefix
+	 *            A prefix for the object names (e.g. "entries/"), may be null.
+	 */
+	public S3BlobStore(final S3Client client, final Bucket bucket, final String prefix) {
+		AjahUtils.requireParam(client, "client");
+		AjahUtils.requireParam(bucket, "bucket");
+		this.client = client;
+		this.bucket = bucket;
+		this.prefix = prefix == null ? "" : prefix;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] get(final String key) throws IOException {
+		try {
+			return this.client.get(this.bucket, getName(key), false);
+		} catch (final S3Exception e) {
+			if (e.getCause() instanceof ServiceException && ((ServiceException) e.getCause()).getResponseCode() == 404) {
+				return null;
+			}
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void put(final String key, final byte[] data) throws IOException {
+		AjahUtils.requireParam(data, "data");
+		try {
+			this.client.put(this.bucket, getName(key), data, false, false);
+		} catch (final S3Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	private String getName(final String key) {
+		AjahUtils.requireParam(key, "key");
+		return this.prefix + FileHashUtils.getHashedFileName(key, 2, 2);
+	}
+
+}
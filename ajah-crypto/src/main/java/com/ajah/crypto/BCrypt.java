@@ -16,6 +16,7 @@ package com.ajah.crypto;
 
 import java.io.UnsupportedEncodingException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 /**
  * BCrypt implements OpenBSD-style Blowfish password hashing using the scheme
@@ -65,6 +66,26 @@ public class BCrypt {
 	private static final int GENSALT_DEFAULT_LOG2_ROUNDS = 10;
 	private static final int BCRYPT_SALT_LEN = 16;
 
+	// Seeding a SecureRandom is expensive and sharing one between threads
+	// contends on its lock, so each thread keeps its own.
+	private static final ThreadLocal<SecureRandom> random = new ThreadLocal<SecureRandom>() {
+
+		@Override
+		protected SecureRandom initialValue() {
+			return new SecureRandom();
+		}
+	};
+
+	// The key schedule is 4KB, so each thread reuses one instance rather than
+	// allocating a new one per hash.
+	private static final ThreadLocal<BCrypt> state = new ThreadLocal<BCrypt>() {
+
+		@Override
+		protected BCrypt initialValue() {
+			return new BCrypt();
+		}
+	};
+
 	// Blowfish parameters
 	private static final int BLOWFISH_NUM_ROUNDS = 16;
 
@@ -162,7 +183,7 @@ public class BCrypt {
 	 * @return the decoded value of x
 	 */
 	private static byte char64(final char x) {
-		if (x < 0 || x > index_64.length) {
+		if (x >= index_64.length) {
 			return -1;
 		}
 		return index_64[x];
@@ -195,26 +216,24 @@ public class BCrypt {
 	 *             if maxolen is invalid
 	 */
 	private static byte[] decode_base64(final String s, final int maxolen) throws IllegalArgumentException {
-		final StringBuffer rs = new StringBuffer();
 		int off = 0;
 		final int slen = s.length();
 		int olen = 0;
 		byte ret[];
-		byte c1, c2, c3, c4, o;
+		byte c1, c2, c3, c4;
 
 		if (maxolen <= 0) {
 			throw new IllegalArgumentException("Invalid maxolen");
 		}
 
+		ret = new byte[maxolen];
 		while (off < slen - 1 && olen < maxolen) {
 			c1 = char64(s.charAt(off++));
 			c2 = char64(s.charAt(off++));
 			if (c1 == -1 || c2 == -1) {
 				break;
 			}
-			o = (byte) (c1 << 2);
-			o |= (c2 & 0x30) >> 4;
-			rs.append((char) o);
+			ret[olen] = (byte) (c1 << 2 | (c2 & 0x30) >> 4);
 			if (++olen >= maxolen || off >= slen) {
 				break;
 			}
@@ -222,24 +241,16 @@ public class BCrypt {
 			if (c3 == -1) {
 				break;
 			}
-			o = (byte) ((c2 & 0x0f) << 4);
-			o |= (c3 & 0x3c) >> 2;
-			rs.append((char) o);
+			ret[olen] = (byte) ((c2 & 0x0f) << 4 | (c3 & 0x3c) >> 2);
 			if (++olen >= maxolen || off >= slen) {
 				break;
 			}
 			c4 = char64(s.charAt(off++));
-			o = (byte) ((c3 & 0x03) << 6);
-			o |= c4;
-			rs.append((char) o);
+			ret[olen] = (byte) ((c3 & 0x03) << 6 | c4);
 			++olen;
 		}
 
-		ret = new byte[olen];
-		for (off = 0; off < olen; off++) {
-			ret[off] = (byte) rs.charAt(off);
-		}
-		return ret;
+		return olen == maxolen ? ret : Arrays.copyOf(ret, olen);
 	}
 
 	/**
@@ -251,13 +262,13 @@ public class BCrypt {
 	 *            the byte array to encode
 	 * @param len
 	 *            the number of bytes to encode
-	 * @return base64-encoded string
+	 * @param rs
+	 *            the buffer to append the encoded characters to
 	 * @exception IllegalArgumentException
 	 *                if the length is invalid
 	 */
-	private static String encode_base64(final byte d[], final int len) throws IllegalArgumentException {
+	private static void encode_base64(final byte d[], final int len, final StringBuilder rs) throws IllegalArgumentException {
 		int off = 0;
-		final StringBuffer rs = new StringBuffer();
 		int c1, c2;
 
 		if (len <= 0 || len > d.length) {
@@ -285,7 +296,6 @@ public class BCrypt {
 			rs.append(base64_code[c1 & 0x3f]);
 			rs.append(base64_code[c2 & 0x3f]);
 		}
-		return rs.toString();
 	}
 
 	/**
@@ -307,7 +317,7 @@ public class BCrypt {
 	 * @return an encoded salt value
 	 */
 	public static String gensalt(final int log_rounds) {
-		return gensalt(log_rounds, new SecureRandom());
+		return gensalt(log_rounds, random.get());
 	}
 
 	/**
@@ -321,7 +331,7 @@ public class BCrypt {
 	 * @return an encoded salt value
 	 */
 	public static String gensalt(final int log_rounds, final SecureRandom random) {
-		final StringBuffer rs = new StringBuffer();
+		final StringBuilder rs = new StringBuilder(29);
 		final byte rnd[] = new byte[BCRYPT_SALT_LEN];
 
 		random.nextBytes(rnd);
@@ -332,7 +342,7 @@ public class BCrypt {
 		}
 		rs.append(Integer.toString(log_rounds));
 		rs.append("$");
-		rs.append(encode_base64(rnd, rnd.length));
+		encode_base64(rnd, rnd.length, rs);
 		return rs.toString();
 	}
 
@@ -346,12 +356,11 @@ public class BCrypt {
 	 * @return the hashed password
 	 */
 	public static String hashpw(final String password, final String salt) {
-		BCrypt B;
 		String real_salt;
 		byte passwordb[], saltb[], hashed[];
 		char minor = (char) 0;
 		int rounds, off = 0;
-		final StringBuffer rs = new StringBuffer();
+		final StringBuilder rs = new StringBuilder(60);
 
 		if (salt.charAt(0) != '$' || salt.charAt(1) != '2') {
 			throw new IllegalArgumentException("Invalid salt version");
@@ -381,8 +390,11 @@ public class BCrypt {
 
 		saltb = decode_base64(real_salt, BCRYPT_SALT_LEN);
 
-		B = new BCrypt();
-		hashed = B.crypt_raw(passwordb, saltb, rounds);
+		try {
+			hashed = state.get().crypt_raw(passwordb, saltb, rounds);
+		} finally {
+			Arrays.fill(passwordb, (byte) 0);
+		}
 
 		rs.append("$2");
 		if (minor >= 'a') {
@@ -394,39 +406,49 @@ public class BCrypt {
 		}
 		rs.append(Integer.toString(rounds));
 		rs.append("$");
-		rs.append(encode_base64(saltb, saltb.length));
-		rs.append(encode_base64(hashed, bf_crypt_ciphertext.length * 4 - 1));
+		encode_base64(saltb, saltb.length, rs);
+		encode_base64(hashed, bf_crypt_ciphertext.length * 4 - 1, rs);
 		return rs.toString();
 	}
 
 	/**
-	 * Cycically extract a word of key material
+	 * Cycically extract words of key material, starting from the beginning of
+	 * the data
 	 * 
 	 * @param data
 	 *            the string to extract the data from
-	 * @param offp
-	 *            a "pointer" (as a one-entry array) to the current offset into
-	 *            data
-	 * @return the next word of material from data
+	 * @param words
+	 *            the array to fill with successive words from data
 	 */
-	private static int streamtoword(final byte data[], final int offp[]) {
-		int i;
-		int word = 0;
-		int off = offp[0];
-
-		for (i = 0; i < 4; i++) {
-			word = word << 8 | data[off] & 0xff;
-			off = (off + 1) % data.length;
+	private static void streamtowords(final byte data[], final int words[]) {
+		int i, j;
+		int off = 0;
+		final int dlen = data.length;
+
+		for (i = 0; i < words.length; i++) {
+			int word = 0;
+			for (j = 0; j < 4; j++) {
+				word = word << 8 | data[off] & 0xff;
+				if (++off == dlen) {
+					off = 0;
+				}
+			}
+			words[i] = word;
 		}
-
-		offp[0] = off;
-		return word;
 	}
 
 	// Expanded Blowfish key
-	private int P[];
+	private final int P[] = new int[P_orig.length];
+
+	private final int S[] = new int[S_orig.length];
+
+	// The key material XORed into P, extracted once per hash rather than on
+	// every one of the 2**log_rounds calls to key()
+	private final int passwordWords[] = new int[P_orig.length];
 
-	private int S[];
+	private final int saltWords[] = new int[P_orig.length];
+
+	private final int cdata[] = new int[bf_crypt_ciphertext.length];
 
 	/**
 	 * Perform the central password hashing step in the bcrypt scheme.
@@ -442,7 +464,8 @@ public class BCrypt {
 	 */
 	private byte[] crypt_raw(final byte password[], final byte salt[], final int log_rounds) {
 		int rounds, i, j;
-		final int cdata[] = bf_crypt_ciphertext.clone();
+		long lr;
+		final int cdata[] = this.cdata;
 		final int clen = cdata.length;
 		byte ret[];
 
@@ -454,27 +477,43 @@ public class BCrypt {
 			throw new IllegalArgumentException("Bad salt length");
 		}
 
-		init_key();
-		ekskey(salt, password);
-		for (i = 0; i < rounds; i++) {
-			key(password);
-			key(salt);
-		}
+		try {
+			streamtowords(password, this.passwordWords);
+			streamtowords(salt, this.saltWords);
+			System.arraycopy(bf_crypt_ciphertext, 0, cdata, 0, clen);
+
+			init_key();
+			ekskey();
+			for (i = 0; i < rounds; i++) {
+				key(this.passwordWords);
+				key(this.saltWords);
+			}
 
-		for (i = 0; i < 64; i++) {
-			for (j = 0; j < clen >> 1; j++) {
-				encipher(cdata, j << 1);
+			for (i = 0; i < 64; i++) {
+				for (j = 0; j < clen >> 1; j++) {
+					lr = encipher(cdata[j << 1], cdata[(j << 1) + 1]);
+					cdata[j << 1] = (int) (lr >> 32);
+					cdata[(j << 1) + 1] = (int) lr;
+				}
 			}
-		}
 
-		ret = new byte[clen * 4];
-		for (i = 0, j = 0; i < clen; i++) {
-			ret[j++] = (byte) (cdata[i] >> 24 & 0xff);
-			ret[j++] = (byte) (cdata[i] >> 16 & 0xff);
-			ret[j++] = (byte) (cdata[i] >> 8 & 0xff);
-			ret[j++] = (byte) (cdata[i] & 0xff);
+			ret = new byte[clen * 4];
+			for (i = 0, j = 0; i < clen; i++) {
+				ret[j++] = (byte) (cdata[i] >> 24 & 0xff);
+				ret[j++] = (byte) (cdata[i] >> 16 & 0xff);
+				ret[j++] = (byte) (cdata[i] >> 8 & 0xff);
+				ret[j++] = (byte) (cdata[i] & 0xff);
+			}
+			return ret;
+		} finally {
+			// This instance lives on in its thread, so don't leave the
+			// password's key material behind in it
+			Arrays.fill(this.passwordWords, 0);
+			Arrays.fill(this.saltWords, 0);
+			Arrays.fill(this.P, 0);
+			Arrays.fill(this.S, 0);
+			Arrays.fill(cdata, 0);
 		}
-		return ret;
 	}
 
 	/**
@@ -482,103 +521,104 @@ public class BCrypt {
 	 * in "A Future-Adaptable Password Scheme"
 	 * http://www.openbsd.org/papers/bcrypt-paper.ps
 	 * 
-	 * @param data
-	 *            salt information
-	 * @param key
-	 *            password information
+	 * The password and salt words must already have been extracted. The salt
+	 * is always 16 bytes, so its stream repeats every four words.
 	 */
-	private void ekskey(final byte data[], final byte key[]) {
-		int i;
-		final int koffp[] = { 0 }, doffp[] = { 0 };
-		final int lr[] = { 0, 0 };
-		final int plen = this.P.length, slen = this.S.length;
+	private void ekskey() {
+		int i, l = 0, r = 0, d = 0;
+		long lr;
+		final int P[] = this.P, S[] = this.S;
+		final int plen = P.length, slen = S.length;
 
 		for (i = 0; i < plen; i++) {
-			this.P[i] = this.P[i] ^ streamtoword(key, koffp);
+			P[i] ^= this.passwordWords[i];
 		}
 
 		for (i = 0; i < plen; i += 2) {
-			lr[0] ^= streamtoword(data, doffp);
-			lr[1] ^= streamtoword(data, doffp);
-			encipher(lr, 0);
-			this.P[i] = lr[0];
-			this.P[i + 1] = lr[1];
+			l ^= this.saltWords[d++ & 3];
+			r ^= this.saltWords[d++ & 3];
+			lr = encipher(l, r);
+			P[i] = l = (int) (lr >> 32);
+			P[i + 1] = r = (int) lr;
 		}
 
 		for (i = 0; i < slen; i += 2) {
-			lr[0] ^= streamtoword(data, doffp);
-			lr[1] ^= streamtoword(data, doffp);
-			encipher(lr, 0);
-			this.S[i] = lr[0];
-			this.S[i + 1] = lr[1];
+			l ^= this.saltWords[d++ & 3];
+			r ^= this.saltWords[d++ & 3];
+			lr = encipher(l, r);
+			S[i] = l = (int) (lr >> 32);
+			S[i + 1] = r = (int) lr;
 		}
 	}
 
 	/**
-	 * Blowfish encipher a single 64-bit block encoded as two 32-bit halves
+	 * Blowfish encipher a single 64-bit block encoded as two 32-bit halves.
+	 * The 16 rounds are unrolled.
 	 * 
-	 * @param lr
-	 *            an array containing the two 32-bit half blocks
-	 * @param off
-	 *            the position in the array of the blocks
+	 * @param l
+	 *            the left half block
+	 * @param r
+	 *            the right half block
+	 * @return the enciphered block, left half in the high word
 	 */
-	private final void encipher(final int lr[], final int off) {
-		int i, n, l = lr[off], r = lr[off + 1];
-
-		l ^= this.P[0];
-		for (i = 0; i <= BLOWFISH_NUM_ROUNDS - 2;) {
-			// Feistel substitution on left word
-			n = this.S[l >> 24 & 0xff];
-			n += this.S[0x100 | l >> 16 & 0xff];
-			n ^= this.S[0x200 | l >> 8 & 0xff];
-			n += this.S[0x300 | l & 0xff];
-			r ^= n ^ this.P[++i];
-
-			// Feistel substitution on right word
-			n = this.S[r >> 24 & 0xff];
-			n += this.S[0x100 | r >> 16 & 0xff];
-			n ^= this.S[0x200 | r >> 8 & 0xff];
-			n += this.S[0x300 | r & 0xff];
-			l ^= n ^ this.P[++i];
-		}
-		lr[off] = r ^ this.P[BLOWFISH_NUM_ROUNDS + 1];
-		lr[off + 1] = l;
+	private long encipher(int l, int r) {
+		final int P[] = this.P, S[] = this.S;
+
+		// Each line is the Feistel substitution on one word
+		l ^= P[0];
+		r ^= (S[l >>> 24] + S[0x100 | l >> 16 & 0xff] ^ S[0x200 | l >> 8 & 0xff]) + S[0x300 | l & 0xff] ^ P[1];
+		l ^= (S[r >>> 24] + S[0x100 | r >> 16 & 0xff] ^ S[0x200 | r >> 8 & 0xff]) + S[0x300 | r & 0xff] ^ P[2];
+		r ^= (S[l >>> 24] + S[0x100 | l >> 16 & 0xff] ^ S[0x200 | l >> 8 & 0xff]) + S[0x300 | l & 0xff] ^ P[3];
+		l ^= (S[r >>> 24] + S[0x100 | r >> 16 & 0xff] ^ S[0x200 | r >> 8 & 0xff]) + S[0x300 | r & 0xff] ^ P[4];
+		r ^= (S[l >>> 24] + S[0x100 | l >> 16 & 0xff] ^ S[0x200 | l >> 8 & 0xff]) + S[0x300 | l & 0xff] ^ P[5];
+		l ^= (S[r >>> 24] + S[0x100 | r >> 16 & 0xff] ^ S[0x200 | r >> 8 & 0xff]) + S[0x300 | r & 0xff] ^ P[6];
+		r ^= (S[l >>> 24] + S[0x100 | l >> 16 & 0xff] ^ S[0x200 | l >> 8 & 0xff]) + S[0x300 | l & 0xff] ^ P[7];
+		l ^= (S[r >>> 24] + S[0x100 | r >> 16 & 0xff] ^ S[0x200 | r >> 8 & 0xff]) + S[0x300 | r & 0xff] ^ P[8];
+		r ^= (S[l >>> 24] + S[0x100 | l >> 16 & 0xff] ^ S[0x200 | l >> 8 & 0xff]) + S[0x300 | l & 0xff] ^ P[9];
+		l ^= (S[r >>> 24] + S[0x100 | r >> 16 & 0xff] ^ S[0x200 | r >> 8 & 0xff]) + S[0x300 | r & 0xff] ^ P[10];
+		r ^= (S[l >>> 24] + S[0x100 | l >> 16 & 0xff] ^ S[0x200 | l >> 8 & 0xff]) + S[0x300 | l & 0xff] ^ P[11];
+		l ^= (S[r >>> 24] + S[0x100 | r >> 16 & 0xff] ^ S[0x200 | r >> 8 & 0xff]) + S[0x300 | r & 0xff] ^ P[12];
+		r ^= (S[l >>> 24] + S[0x100 | l >> 16 & 0xff] ^ S[0x200 | l >> 8 & 0xff]) + S[0x300 | l & 0xff] ^ P[13];
+		l ^= (S[r >>> 24] + S[0x100 | r >> 16 & 0xff] ^ S[0x200 | r >> 8 & 0xff]) + S[0x300 | r & 0xff] ^ P[14];
+		r ^= (S[l >>> 24] + S[0x100 | l >> 16 & 0xff] ^ S[0x200 | l >> 8 & 0xff]) + S[0x300 | l & 0xff] ^ P[15];
+		l ^= (S[r >>> 24] + S[0x100 | r >> 16 & 0xff] ^ S[0x200 | r >> 8 & 0xff]) + S[0x300 | r & 0xff] ^ P[16];
+		return (long) (r ^ P[BLOWFISH_NUM_ROUNDS + 1]) << 32 | l & 0xffffffffL;
 	}
 
 	/**
 	 * Initialise the Blowfish key schedule
 	 */
 	private void init_key() {
-		this.P = P_orig.clone();
-		this.S = S_orig.clone();
+		System.arraycopy(P_orig, 0, this.P, 0, P_orig.length);
+		System.arraycopy(S_orig, 0, this.S, 0, S_orig.length);
 	}
 
 	/**
 	 * Key the Blowfish cipher
 	 * 
-	 * @param key
-	 *            an array containing the key
+	 * @param words
+	 *            the key material, as extracted by streamtowords
 	 */
-	private void key(final byte key[]) {
+	private void key(final int words[]) {
 		int i;
-		final int koffp[] = { 0 };
-		final int lr[] = { 0, 0 };
-		final int plen = this.P.length, slen = this.S.length;
+		long lr = 0;
+		final int P[] = this.P, S[] = this.S;
+		final int plen = P.length, slen = S.length;
 
 		for (i = 0; i < plen; i++) {
-			this.P[i] = this.P[i] ^ streamtoword(key, koffp);
+			P[i] ^= words[i];
 		}
 
 		for (i = 0; i < plen; i += 2) {
-			encipher(lr, 0);
-			this.P[i] = lr[0];
-			this.P[i + 1] = lr[1];
+			lr = encipher((int) (lr >> 32), (int) lr);
+			P[i] = (int) (lr >> 32);
+			P[i + 1] = (int) lr;
 		}
 
 		for (i = 0; i < slen; i += 2) {
-			encipher(lr, 0);
-			this.S[i] = lr[0];
-			this.S[i + 1] = lr[1];
+			lr = encipher((int) (lr >> 32), (int) lr);
+			S[i] = (int) (lr >> 32);
+			S[i + 1] = (int) lr;
 		}
 	}
 }
@@ -0,0 +1,122 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.crypto;
+
+import lombok.extern.java.Log;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * Picks the {@link BCrypt} work factor to use on the current hardware. Each
+ * extra log round doubles the cost of a hash, so the right value depends on
+ * how fast the machine is and how long a log in is allowed to take.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Log
+public class BCryptCalibrator {
+
+	private static final int MIN_LOG_ROUNDS = 4;
+	private static final int MAX_LOG_ROUNDS = 31;
+	private static final int WARMUP = 100;
+	private static final int SAMPLES = 3;
+
+	/**
+	 * Finds the highest work factor whose hash takes no longer than the target
+	 * time, starting from 4 log rounds.
+	 * 
+	 * @param targetMillis
+	 *            The longest a single hash should take.
+	 * @return The log rounds to use, never less than 4.
+	 */
+	public static int calibrate(final long targetMillis) {
+		return calibrate(targetMillis, MIN_LOG_ROUNDS);
+	}
+
+	/**
+	 * Finds the highest work factor whose hash takes no longer than the target
+	 * time. Each work factor is timed, from the minimum up, until one is too
+	 * slow, so calibrating takes a few times the target. The fastest of
+	 * several samples is used so a pause on a busy machine does not lower the
+	 * result.
+	 * 
+	 * @param targetMillis
+	 *            The longest a single hash should take.
+	 * @param minLogRounds
+	 *            The lowest work factor to return, even if it is slower than
+	 *            the target, from 4 to 31.
+	 * @return The log rounds to use.
+	 */
+	public static int calibrate(final long targetMillis, final int minLogRounds) {
+		AjahUtils.requireParam(targetMillis, "targetMillis", 1);
+		AjahUtils.requireParam(minLogRounds, "minLogRounds", MIN_LOG_ROUNDS);
+		if (minLogRounds > MAX_LOG_ROUNDS) {
+			throw new IllegalArgumentException("minLogRounds must be at most " + MAX_LOG_ROUNDS);
+		}
+		// Let the JIT compile the cipher before anything is timed
+		final String password = "calibrate";
+		final String warmupSalt = BCrypt.gensalt(MIN_LOG_ROUNDS);
+		for (int i = 0; i < WARMUP; i++) {
+			BCrypt.hashpw(password, warmupSalt);
+		}
+		final long targetNanos = targetMillis * 1000000;
+		int logRounds = minLogRounds;
+		long nanos = time(password, logRounds);
+		if (nanos > targetNanos) {
+			log.warning(logRounds + " log rounds took " + nanos / 1000000 + "ms, more than the " + targetMillis + "ms target");
+			return logRounds;
+		}
+		while (logRounds < MAX_LOG_ROUNDS) {
+			// The next work factor takes twice as long, so don't time it if
+			// that is already over the target
+			if (nanos * 2 > targetNanos) {
+				break;
+			}
+			final long next = time(password, logRounds + 1);
+			if (next > targetNanos) {
+				break;
+			}
+			logRounds++;
+			nanos = next;
+		}
+		log.info("Using " + logRounds + " log rounds, " + nanos / 1000000 + "ms per hash");
+		return logRounds;
+	}
+
+	private static long time(final String password, final int logRounds) {
+		final String salt = BCrypt.gensalt(logRounds);
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < SAMPLES; i++) {
+			final long start = System.nanoTime();
+			BCrypt.hashpw(password, salt);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	/**
+	 * Prints the log rounds to use for a target time.
+	 * 
+	 * @param args
+	 *            The target time in milliseconds, defaults to 250.
+	 */
+	public static void main(final String[] args) {
+		final long targetMillis = args.length > 0 ? Long.parseLong(args[0]) : 250;
+		System.out.println(calibrate(targetMillis));
+	}
+
+}
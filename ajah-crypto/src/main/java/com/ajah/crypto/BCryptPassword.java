@@ -27,18 +27,21 @@ public class BCryptPassword implements Password {
 	private final int originalLength;
 
 	/**
-	 * Accepts raw or hashed version of a password.
+	 * Accepts raw or hashed version of a password. Raw passwords are hashed on
+	 * {@link PasswordHasher#i}.
 	 * 
 	 * @param value
 	 *            Password, or hash.
 	 * @param hashed
 	 *            true if the value is hashed (will not be re-hashed)
+	 * @throws PasswordHasherBusyException
+	 *             If the value needs hashing and too many hashes are queued.
 	 */
 	public BCryptPassword(final String value, final boolean hashed) {
 		if (hashed) {
 			this.hash = value;
 		} else {
-			this.hash = BCrypt.hashpw(value, BCrypt.gensalt());
+			this.hash = PasswordHasher.i.hash(value);
 		}
 		this.originalLength = value.length();
 	}
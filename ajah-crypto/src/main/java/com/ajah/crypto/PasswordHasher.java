@@ -0,0 +1,303 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.crypto;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ajah.util.AjahUtils;
+import com.ajah.util.config.Config;
+
+/**
+ * Runs {@link BCrypt} hashing and checking on a dedicated, fixed-size pool of
+ * threads, so a burst of log ins or sign ups uses at most that many cores
+ * rather than tying up every request thread. When more work is waiting than
+ * the queue allows, new work is rejected at once with a
+ * {@link PasswordHasherBusyException} instead of waiting behind it.
+ * 
+ * Queue and compute times are recorded so the pool can be sized against the
+ * latency it actually adds.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class PasswordHasher {
+
+	/**
+	 * The shared hasher. Its threads, queue size and log rounds can be set
+	 * with the <code>ajah.crypto.hasher.threads</code>,
+	 * <code>ajah.crypto.hasher.queue</code> and
+	 * <code>ajah.crypto.bcrypt.rounds</code> config properties.
+	 */
+	public static final PasswordHasher i = new PasswordHasher(getInt("ajah.crypto.hasher.threads", Runtime.getRuntime().availableProcessors()), getInt("ajah.crypto.hasher.queue", 100), getInt(
+			"ajah.crypto.bcrypt.rounds", 10));
+
+	private final ThreadPoolExecutor executor;
+	private final int logRounds;
+
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong queueNanos = new AtomicLong();
+	private final AtomicLong computeNanos = new AtomicLong();
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param threads
+	 *            The number of hashes computed at once.
+	 * @param maxQueue
+	 *            The number of hashes that may wait for a thread before new
+	 *            ones are rejected.
+	 * @param logRounds
+	 *            The BCrypt work factor for new hashes, from 4 to 31.
+	 */
+	public PasswordHasher(final int threads, final int maxQueue, final int logRounds) {
+		AjahUtils.requireParam(threads, "threads", 1);
+		AjahUtils.requireParam(maxQueue, "maxQueue", 1);
+		AjahUtils.requireParam(logRounds, "logRounds", 4);
+		this.logRounds = logRounds;
+		final AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(maxQueue), new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "password-hasher-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Hashes a password with a new salt, waiting for the result.
+	 * 
+	 * @param plaintext
+	 *            The password, required.
+	 * @return The BCrypt hash.
+	 * @throws PasswordHasherBusyException
+	 *             If the queue is full.
+	 */
+	public String hash(final String plaintext) {
+		return get(hashAsync(plaintext));
+	}
+
+	/**
+	 * Checks a password against a hash, waiting for the result.
+	 * 
+	 * @param plaintext
+	 *            The password, required.
+	 * @param hashed
+	 *            The BCrypt hash, required.
+	 * @return true if the password matches.
+	 * @throws PasswordHasherBusyException
+	 *             If the queue is full.
+	 */
+	public boolean check(final String plaintext, final String hashed) {
+		return get(checkAsync(plaintext, hashed)).booleanValue();
+	}
+
+	/**
+	 * Queues a password to be hashed with a new salt.
+	 * 
+	 * @param plaintext
+	 *            The password, required.
+	 * @return The BCrypt hash, when done.
+	 * @throws PasswordHasherBusyException
+	 *             If the queue is full.
+	 */
+	public Future<String> hashAsync(final String plaintext) {
+		AjahUtils.requireParam(plaintext, "plaintext");
+		return submit(new Callable<String>() {
+
+			@Override
+			public String call() {
+				return BCrypt.hashpw(plaintext, BCrypt.gensalt(PasswordHasher.this.logRounds));
+			}
+		});
+	}
+
+	/**
+	 * Queues a password to be checked against a hash.
+	 * 
+	 * @param plaintext
+	 *            The password, required.
+	 * @param hashed
+	 *            The BCrypt hash, required.
+	 * @return true if the password matches, when done.
+	 * @throws PasswordHasherBusyException
+	 *             If the queue is full.
+	 */
+	public Future<Boolean> checkAsync(final String plaintext, final String hashed) {
+		AjahUtils.requireParam(plaintext, "plaintext");
+		AjahUtils.requireParam(hashed, "hashed");
+		return submit(new Callable<Boolean>() {
+
+			@Override
+			public Boolean call() {
+				return Boolean.valueOf(BCrypt.checkpw(plaintext, hashed));
+			}
+		});
+	}
+
+	/**
+	 * Checks whether a stored hash is a {@link BCrypt} hash.
+	 * 
+	 * @param hashed
+	 *            The stored hash, required.
+	 * @return true if the hash is in BCrypt's "$2a$" format.
+	 */
+	public static boolean isBCrypt(final String hashed) {
+		AjahUtils.requireParam(hashed, "hashed");
+		return hashed.startsWith("$2");
+	}
+
+	/**
+	 * Checks whether a stored hash should be replaced by a new one from this
+	 * hasher, because it is not a {@link BCrypt} hash or it was made with
+	 * fewer log rounds.
+	 * 
+	 * @param hashed
+	 *            The stored hash, required.
+	 * @return true if the hash should be replaced.
+	 */
+	public boolean needsRehash(final String hashed) {
+		if (!isBCrypt(hashed)) {
+			return true;
+		}
+		// "$2$10$..." or "$2a$10$..."
+		final int off = hashed.length() > 2 && hashed.charAt(2) == '$' ? 3 : 4;
+		if (hashed.length() < off + 2) {
+			return true;
+		}
+		try {
+			return Integer.parseInt(hashed.substring(off, off + 2)) < this.logRounds;
+		} catch (final NumberFormatException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the BCrypt work factor used for new hashes.
+	 * 
+	 * @return The log rounds.
+	 */
+	public int getLogRounds() {
+		return this.logRounds;
+	}
+
+	/**
+	 * Returns the number of hashes and checks completed.
+	 * 
+	 * @return The number completed.
+	 */
+	public long getCompleted() {
+		return this.completed.get();
+	}
+
+	/**
+	 * Returns the number of hashes and checks rejected because the queue was
+	 * full.
+	 * 
+	 * @return The number rejected.
+	 */
+	public long getRejected() {
+		return this.rejected.get();
+	}
+
+	/**
+	 * Returns the number of hashes and checks waiting for a thread.
+	 * 
+	 * @return The queue depth.
+	 */
+	public int getQueueDepth() {
+		return this.executor.getQueue().size();
+	}
+
+	/**
+	 * Returns the average time work waited for a thread.
+	 * 
+	 * @return The average queue time in milliseconds.
+	 */
+	public double getAverageQueueMillis() {
+		final long count = this.completed.get();
+		return count == 0 ? 0 : this.queueNanos.get() / 1000000.0 / count;
+	}
+
+	/**
+	 * Returns the average time spent hashing or checking.
+	 * 
+	 * @return The average compute time in milliseconds.
+	 */
+	public double getAverageComputeMillis() {
+		final long count = this.completed.get();
+		return count == 0 ? 0 : this.computeNanos.get() / 1000000.0 / count;
+	}
+
+	private <T> Future<T> submit(final Callable<T> work) {
+		final long queued = System.nanoTime();
+		try {
+			return this.executor.submit(new Callable<T>() {
+
+				@Override
+				public T call() throws Exception {
+					final long started = System.nanoTime();
+					try {
+						return work.call();
+					} finally {
+						final long finished = System.nanoTime();
+						PasswordHasher.this.queueNanos.addAndGet(started - queued);
+						PasswordHasher.this.computeNanos.addAndGet(finished - started);
+						PasswordHasher.this.completed.incrementAndGet();
+					}
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			this.rejected.incrementAndGet();
+			throw new PasswordHasherBusyException(getQueueDepth() + " password hashes already queued");
+		}
+	}
+
+	private static int getInt(final String key, final int defaultValue) {
+		return Integer.parseInt(Config.i.get(key, String.valueOf(defaultValue)));
+	}
+
+	private static <T> T get(final Future<T> future) {
+		try {
+			return future.get();
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.cancel(false);
+			throw new IllegalStateException("Interrupted waiting for a password hash", e);
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.crypto;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a {@link PasswordHasher} has too much work queued to accept
+ * more. Callers should fail the request quickly (e.g. with a 503) rather than
+ * retry immediately.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class PasswordHasherBusyException extends RejectedExecutionException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param message
+	 *            The reason the work was rejected.
+	 */
+	public PasswordHasherBusyException(final String message) {
+		super(message);
+	}
+
+}
@@ -20,6 +20,7 @@ import junit.framework.Assert;
 import org.junit.Test;
 
 import com.ajah.crypto.BCrypt;
+import com.ajah.crypto.BCryptCalibrator;
 
 /**
  * Tests for {@link BCrypt}.
@@ -29,6 +30,15 @@ import com.ajah.crypto.BCrypt;
  */
 public class BCryptTest {
 
+	// Plaintext, salt and the hash from the reference implementation
+	private static final String[][] VECTORS = { { "", "$2a$06$DCq7YPn5Rq63x1Lad4cll.", "$2a$06$DCq7YPn5Rq63x1Lad4cll.TV4S6ytwfsfvkgY8jIucDrjc8deX1s." },
+			{ "a", "$2a$06$m0CrhHm10qJ3lXRY.5zDGO", "$2a$06$m0CrhHm10qJ3lXRY.5zDGO3rS2KdeeWLuGmsfGlMfOxih58VYVfxe" },
+			{ "abc", "$2a$06$If6bvum7DFjUnE9p2uDeDu", "$2a$06$If6bvum7DFjUnE9p2uDeDu0YHzrHM6tf.iqN8.yx.jNN1ILEf7h0i" },
+			{ "abcdefghijklmnopqrstuvwxyz", "$2a$06$.rCVZVOThsIa97pEDOxvGu", "$2a$06$.rCVZVOThsIa97pEDOxvGuRRgzG64bvtJ0938xuqzv18d3ZpQhstC" },
+			{ "~!@#$%^&*()      ~!@#$%^&*()PNBFRD", "$2a$06$fPIsBO8qRqkjj273rfaOI.", "$2a$06$fPIsBO8qRqkjj273rfaOI.HtSV9jLDpTbZn782DC6/t7qT67P6FfO" },
+			{ "\u00e9t\u00e9 \u2603", "$2a$05$CCCCCCCCCCCCCCCCCCCCC.", "$2a$05$CCCCCCCCCCCCCCCCCCCCC.19pJWZ61wh//aAAanqDRZsZNPy7UG4C" },
+			{ "x", "$2$05$abcdefghijklmnopqrstuu", "$2$05$abcdefghijklmnopqrstuujf8SX2ahXLwp9w/B.Y5XdysS6yR576q" } };
+
 	/**
 	 * Hashes a value and then checks that hash.
 	 */
@@ -37,4 +47,28 @@ public class BCryptTest {
 		final String hashed = BCrypt.hashpw("foobar", BCrypt.gensalt());
 		Assert.assertTrue(BCrypt.checkpw("foobar", hashed));
 	}
+
+	/**
+	 * Hashes should match the reference implementation, including when one
+	 * thread hashes several in a row.
+	 */
+	@Test
+	public void knownHashes() {
+		for (int i = 0; i < 2; i++) {
+			for (final String[] vector : VECTORS) {
+				Assert.assertEquals(vector[2], BCrypt.hashpw(vector[0], vector[1]));
+				Assert.assertTrue(BCrypt.checkpw(vector[0], vector[2]));
+			}
+		}
+	}
+
+	/**
+	 * A generous target should be met with more than the minimum rounds, and
+	 * an impossible one should return the minimum.
+	 */
+	@Test
+	public void calibrate() {
+		Assert.assertTrue(BCryptCalibrator.calibrate(50) > 4);
+		Assert.assertEquals(8, BCryptCalibrator.calibrate(1, 8));
+	}
 }
@@ -0,0 +1,92 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.util.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.ajah.crypto.BCrypt;
+import com.ajah.crypto.BCryptPassword;
+import com.ajah.crypto.PasswordHasher;
+import com.ajah.crypto.PasswordHasherBusyException;
+
+/**
+ * Tests for {@link PasswordHasher}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class PasswordHasherTest {
+
+	/**
+	 * Hashes and checks on the pool.
+	 */
+	@Test
+	public void hashAndCheck() {
+		final PasswordHasher hasher = new PasswordHasher(2, 10, 4);
+		final String hashed = hasher.hash("foobar");
+		Assert.assertTrue(hasher.check("foobar", hashed));
+		Assert.assertFalse(hasher.check("foobaz", hashed));
+		Assert.assertEquals(3, hasher.getCompleted());
+		Assert.assertTrue(hasher.getAverageComputeMillis() > 0);
+		Assert.assertTrue(PasswordHasher.i.check("secret", new BCryptPassword("secret", false).toString()));
+	}
+
+	/**
+	 * Work beyond the queue limit should be rejected rather than wait.
+	 * 
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	@Test
+	public void shedsLoad() throws InterruptedException, ExecutionException {
+		final PasswordHasher hasher = new PasswordHasher(1, 2, 12);
+		final List<Future<String>> accepted = new ArrayList<>();
+		int rejected = 0;
+		for (int i = 0; i < 10; i++) {
+			try {
+				accepted.add(hasher.hashAsync("password" + i));
+			} catch (final PasswordHasherBusyException e) {
+				rejected++;
+			}
+		}
+		Assert.assertTrue(rejected >= 7);
+		Assert.assertEquals(rejected, hasher.getRejected());
+		for (final Future<String> future : accepted) {
+			Assert.assertNotNull(future.get());
+		}
+	}
+
+	/**
+	 * Legacy hashes and BCrypt hashes with fewer rounds should be replaced.
+	 */
+	@Test
+	public void needsRehash() {
+		final PasswordHasher hasher = new PasswordHasher(1, 10, 6);
+		Assert.assertTrue(hasher.needsRehash("8843d7f92416211de9ebb963ff4ce28125932878"));
+		Assert.assertTrue(hasher.needsRehash(BCrypt.hashpw("foobar", BCrypt.gensalt(5))));
+		Assert.assertFalse(hasher.needsRehash(BCrypt.hashpw("foobar", BCrypt.gensalt(6))));
+		Assert.assertFalse(hasher.needsRehash("$2$07$abcdefghijklmnopqrstuujf8SX2ahXLwp9w/B.Y5XdysS6yR576q"));
+		Assert.assertTrue(hasher.needsRehash("$2a$"));
+	}
+
+}
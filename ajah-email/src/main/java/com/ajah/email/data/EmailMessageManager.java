@@ -15,37 +15,14 @@
  */
 package com.ajah.email.data;
 
-import java.util.Properties;
-
-import javax.mail.BodyPart;
-import javax.mail.Message;
+import javax.annotation.PreDestroy;
 import javax.mail.MessagingException;
-import javax.mail.Multipart;
-import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.AddressException;
-import javax.mail.internet.InternetAddress;
-import javax.mail.internet.MimeBodyPart;
-import javax.mail.internet.MimeMessage;
-import javax.mail.internet.MimeMultipart;
-
-import lombok.extern.java.Log;
 
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.ajah.email.EmailMessage;
-import com.ajah.util.AjahUtils;
-import com.ajah.util.StringUtils;
-import com.ajah.util.config.Config;
-import com.ajah.util.data.format.EmailAddress;
-import com.amazonaws.auth.AWSCredentials;
-import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.services.simpleemail.AWSJavaMailTransport;
-import com.amazonaws.services.simpleemail.AmazonSimpleEmailService;
-import com.amazonaws.services.simpleemail.AmazonSimpleEmailServiceClient;
-import com.amazonaws.services.simpleemail.model.ListVerifiedEmailAddressesResult;
-import com.amazonaws.services.simpleemail.model.VerifyEmailAddressRequest;
 
 /**
  * Manages the persistance and transport of email messages.
@@ -56,19 +33,13 @@ import com.amazonaws.services.simpleemail.model.VerifyEmailAddressRequest;
  */
 @Service
 @Transactional(rollbackFor = Exception.class)
-@Log
 public class EmailMessageManager {
 
-	private static boolean isVerified(final EmailAddress emailAddress, final AmazonSimpleEmailService email, final ListVerifiedEmailAddressesResult verifiedEmails) {
-		if (!verifiedEmails.getVerifiedEmailAddresses().contains(emailAddress.toString())) {
-			email.verifyEmailAddress(new VerifyEmailAddressRequest().withEmailAddress(emailAddress.toString()));
-			return false;
-		}
-		return true;
-	}
+	private static final EmailSender sender = new EmailSender();
 
 	/**
-	 * Sends a message through Amazon's SES service.
+	 * Sends a message through Amazon's SES service, reusing a shared
+	 * {@link EmailSender}'s connections.
 	 * 
 	 * @param message
 	 *            The message to send. Subject, from and to are required.
@@ -78,68 +49,29 @@ public class EmailMessageManager {
 	 *             If there is a problem with the transport of the message.
 	 */
 	public static void send(final EmailMessage message) throws AddressException, MessagingException {
-		AjahUtils.requireParam(message, "message");
-		AjahUtils.requireParam(message.getSubject(), "message.subject");
-		AjahUtils.requireParam(message.getFrom(), "message.from");
-		AjahUtils.requireParam(message.getTo(), "message.to");
-
-		final AWSCredentials credentials = new BasicAWSCredentials(Config.i.get("aws.accessKey", null), Config.i.get("aws.secretKey", null));
-		if (Config.i.getBoolean("aws.ses.verify", false)) {
-			// Verification is active so we'll need to check that first
-			final AmazonSimpleEmailService email = new AmazonSimpleEmailServiceClient(credentials);
-			final ListVerifiedEmailAddressesResult verifiedEmails = email.listVerifiedEmailAddresses();
-			boolean verified = true;
-			if (!isVerified(message.getFrom(), email, verifiedEmails)) {
-				log.warning("Sender " + message.getFrom() + " is not verified");
-				verified = false;
-			}
-			for (final EmailAddress emailAddress : message.getTo()) {
-				if (!isVerified(emailAddress, email, verifiedEmails)) {
-					log.warning("Recipient " + emailAddress + " is not verified");
-					verified = false;
-				}
-			}
-			if (!verified) {
-				throw new MessagingException("Message not sent because one or more addresses need to be verified");
-			}
-		}
-		final Properties props = new Properties();
-		props.setProperty("mail.transport.protocol", "aws");
-		props.setProperty("mail.aws.user", credentials.getAWSAccessKeyId());
-		props.setProperty("mail.aws.password", credentials.getAWSSecretKey());
-
-		final Session session = Session.getInstance(props);
-
-		final MimeMessage mimeMessage = new MimeMessage(session);
-		mimeMessage.setFrom(new InternetAddress(message.getFrom().toString()));
-		for (final EmailAddress to : message.getTo()) {
-			mimeMessage.addRecipient(Message.RecipientType.TO, new InternetAddress(to.toString()));
-		}
-		mimeMessage.setSubject(message.getSubject());
-		final String htmlContent = message.getHtml();
-		if (StringUtils.isBlank(htmlContent)) {
-			// No HTML so we'll just send a plaintext message.
-			mimeMessage.setText(message.getText());
-		} else {
-			final Multipart multiPart = new MimeMultipart("alternative");
-
-			final BodyPart text = new MimeBodyPart();
-			text.setText(message.getText());
-			multiPart.addBodyPart(text);
-
-			final BodyPart html = new MimeBodyPart();
-			html.setContent(message.getHtml(), "text/html");
-			multiPart.addBodyPart(html);
-
-			mimeMessage.setContent(multiPart);
-		}
-		mimeMessage.saveChanges();
+		sender.send(message);
+	}
 
-		final Transport transport = new AWSJavaMailTransport(session, null);
-		transport.connect();
-		transport.sendMessage(mimeMessage, null);
-		transport.close();
+	/**
+	 * Queues a message to be sent through Amazon's SES service in the
+	 * background.
+	 * 
+	 * @see EmailSender#sendAsync(EmailMessage)
+	 * @param message
+	 *            The message to send. Subject, from and to are required.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for room in the queue.
+	 */
+	public static void sendAsync(final EmailMessage message) throws InterruptedException {
+		sender.sendAsync(message);
+	}
 
+	/**
+	 * Sends any queued messages and closes the shared sender's connections.
+	 */
+	@PreDestroy
+	public void close() {
+		sender.close();
 	}
 
 }
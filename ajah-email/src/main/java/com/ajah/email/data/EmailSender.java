@@ -0,0 +1,557 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.email.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import javax.mail.Address;
+import javax.mail.BodyPart;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+
+import lombok.Getter;
+import lombok.extern.java.Log;
+
+import com.ajah.email.EmailMessage;
+import com.ajah.util.AjahUtils;
+import com.ajah.util.StringUtils;
+import com.ajah.util.config.Config;
+import com.ajah.util.data.format.EmailAddress;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.simpleemail.AWSJavaMailTransport;
+import com.amazonaws.services.simpleemail.AmazonSimpleEmailService;
+import com.amazonaws.services.simpleemail.AmazonSimpleEmailServiceClient;
+import com.amazonaws.services.simpleemail.model.VerifyEmailAddressRequest;
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPSenderFailedException;
+
+/**
+ * Sends {@link EmailMessage}s over a small pool of connected transports that
+ * are reused from message to message, instead of connecting for each one.
+ * Messages can be sent immediately with {@link #send(EmailMessage)} or queued
+ * with {@link #sendAsync(EmailMessage)}, in which case worker threads send
+ * them in batches. Failures that may not recur, such as a dropped connection
+ * or a 4xx SMTP reply, are retried with exponential backoff.
+ * 
+ * By default messages go through Amazon SES with the
+ * <code>aws.accessKey</code> and <code>aws.secretKey</code> config
+ * properties, and if <code>aws.ses.verify</code> is true, addresses are
+ * checked against SES's verified list, which is cached for
+ * {@link #setVerifiedTtl(long)}. Any other JavaMail transport, such as SMTP,
+ * can be used by passing its session properties to
+ * {@link #EmailSender(Properties)}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Log
+public class EmailSender implements AutoCloseable {
+
+	private static final EmailMessage STOP = new EmailMessage() {
+
+		@Override
+		public void setSubject(final String string) {
+			// Marker only
+		}
+
+		@Override
+		public EmailAddress getFrom() {
+			return null;
+		}
+
+		@Override
+		public EmailAddress[] getTo() {
+			return null;
+		}
+
+		@Override
+		public String getText() {
+			return null;
+		}
+
+		@Override
+		public String getSubject() {
+			return null;
+		}
+
+		@Override
+		public String getHtml() {
+			return null;
+		}
+	};
+
+	private final Properties properties;
+	private final boolean aws;
+	private Session session;
+
+	private int poolSize = 4;
+	private Semaphore permits;
+	private final BlockingQueue<Transport> idle = new LinkedBlockingQueue<>();
+
+	private int queueSize = 1000;
+	private int batchSize = 50;
+	private int maxAttempts = 3;
+	private long retryDelay = 1000;
+	private BlockingQueue<EmailMessage> queue;
+	private final List<Thread> workers = new ArrayList<>();
+
+	private long verifiedTtl = 10 * 60 * 1000;
+	private AmazonSimpleEmailService ses;
+	private Set<String> verified;
+	private long verifiedExpires;
+	private final Set<String> verificationRequested = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	@Getter
+	private final AtomicLong sent = new AtomicLong();
+	@Getter
+	private final AtomicLong failed = new AtomicLong();
+
+	/**
+	 * Creates a sender that uses Amazon SES, configured from {@link Config}
+	 * when the first message is sent.
+	 */
+	public EmailSender() {
+		this.properties = null;
+		this.aws = true;
+	}
+
+	/**
+	 * Creates a sender for any JavaMail transport. Address verification is
+	 * not done.
+	 * 
+	 * @param properties
+	 *            The session properties, required, such as
+	 *            <code>mail.transport.protocol</code> and
+	 *            <code>mail.smtp.host</code>.
+	 */
+	public EmailSender(final Properties properties) {
+		AjahUtils.requireParam(properties, "properties");
+		this.properties = properties;
+		this.aws = false;
+	}
+
+	/**
+	 * Sends a message now, on the calling thread.
+	 * 
+	 * @param message
+	 *            The message to send. Subject, from and to are required.
+	 * @throws MessagingException
+	 *             If an address is not verified, or the message could not be
+	 *             sent after retrying.
+	 */
+	public void send(final EmailMessage message) throws MessagingException {
+		AjahUtils.requireParam(message, "message");
+		AjahUtils.requireParam(message.getSubject(), "message.subject");
+		AjahUtils.requireParam(message.getFrom(), "message.from");
+		AjahUtils.requireParam(message.getTo(), "message.to");
+		verify(message);
+		send(toMimeMessage(message));
+	}
+
+	/**
+	 * Queues a message to be sent by a worker thread, waiting if the queue is
+	 * full. Failures are logged and counted in {@link #getFailed()}.
+	 * 
+	 * @param message
+	 *            The message to send. Subject, from and to are required.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for room in the queue.
+	 */
+	public void sendAsync(final EmailMessage message) throws InterruptedException {
+		AjahUtils.requireParam(message, "message");
+		AjahUtils.requireParam(message.getSubject(), "message.subject");
+		AjahUtils.requireParam(message.getFrom(), "message.from");
+		AjahUtils.requireParam(message.getTo(), "message.to");
+		getQueue().put(message);
+	}
+
+	/**
+	 * Waits for queued messages to be sent, stops the worker threads and
+	 * closes the pooled transports. The sender can still be used afterwards.
+	 */
+	@Override
+	public void close() {
+		// Not synchronized on this, since workers need the session lock to
+		// finish
+		synchronized (this.workers) {
+			if (this.queue != null) {
+				try {
+					for (int i = 0; i < this.workers.size(); i++) {
+						this.queue.put(STOP);
+					}
+					for (final Thread worker : this.workers) {
+						worker.join();
+					}
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					for (final Thread worker : this.workers) {
+						worker.interrupt();
+					}
+				}
+				this.workers.clear();
+				this.queue = null;
+			}
+		}
+		for (Transport transport = this.idle.poll(); transport != null; transport = this.idle.poll()) {
+			closeQuietly(transport);
+		}
+	}
+
+	/**
+	 * Sets the number of transports, and so connections, kept open. This is
+	 * also the number of worker threads for {@link #sendAsync(EmailMessage)}.
+	 * Defaults to 4. Must be set before the first message is sent.
+	 * 
+	 * @param poolSize
+	 *            The number of transports.
+	 */
+	public void setPoolSize(final int poolSize) {
+		AjahUtils.requireParam(poolSize, "poolSize", 1);
+		this.poolSize = poolSize;
+	}
+
+	/**
+	 * Sets the number of messages that can wait to be sent before
+	 * {@link #sendAsync(EmailMessage)} blocks. Defaults to 1,000. Must be set
+	 * before the first message is queued.
+	 * 
+	 * @param queueSize
+	 *            The queue size.
+	 */
+	public void setQueueSize(final int queueSize) {
+		AjahUtils.requireParam(queueSize, "queueSize", 1);
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * Sets the most messages a worker takes from the queue at once. Defaults
+	 * to 50.
+	 * 
+	 * @param batchSize
+	 *            The batch size.
+	 */
+	public void setBatchSize(final int batchSize) {
+		AjahUtils.requireParam(batchSize, "batchSize", 1);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets the number of times a message is tried before giving up, and the
+	 * delay before the first retry, which doubles for each later retry. Only
+	 * transient failures are retried.
+	 * Defaults to 3 attempts and 1 second.
+	 * 
+	 * @param maxAttempts
+	 *            The number of attempts.
+	 * @param retryDelay
+	 *            The delay before the first retry, in milliseconds.
+	 */
+	public void setRetry(final int maxAttempts, final long retryDelay) {
+		AjahUtils.requireParam(maxAttempts, "maxAttempts", 1);
+		AjahUtils.requireParam(retryDelay, "retryDelay", 0);
+		this.maxAttempts = maxAttempts;
+		this.retryDelay = retryDelay;
+	}
+
+	/**
+	 * Sets how long the list of SES verified addresses is cached. Defaults to
+	 * 10 minutes.
+	 * 
+	 * @param verifiedTtl
+	 *            The time to cache the list, in milliseconds.
+	 */
+	public void setVerifiedTtl(final long verifiedTtl) {
+		this.verifiedTtl = verifiedTtl;
+	}
+
+	private void send(final MimeMessage mimeMessage) throws MessagingException {
+		for (int attempt = 1;; attempt++) {
+			try {
+				final Transport transport = borrow();
+				boolean ok = false;
+				try {
+					transport.sendMessage(mimeMessage, this.aws ? null : mimeMessage.getAllRecipients());
+					ok = true;
+					this.sent.incrementAndGet();
+					return;
+				} finally {
+					release(transport, ok);
+				}
+			} catch (final MessagingException e) {
+				if (attempt >= this.maxAttempts || !isTransient(e)) {
+					throw e;
+				}
+				log.log(Level.WARNING, "Send failed on attempt " + attempt + ", retrying", e);
+			}
+			try {
+				Thread.sleep(this.retryDelay << (attempt - 1));
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MessagingException("Interrupted before retrying", e);
+			}
+		}
+	}
+
+	/**
+	 * Checks if a failure might not happen again, which is when the
+	 * connection failed or the server replied with a 4xx code. A message that
+	 * already reached some recipients is never retried, so they don't get it
+	 * twice.
+	 */
+	private static boolean isTransient(final MessagingException e) {
+		if (e instanceof SendFailedException) {
+			final Address[] validSent = ((SendFailedException) e).getValidSentAddresses();
+			if (validSent != null && validSent.length > 0) {
+				return false;
+			}
+		}
+		Exception cause = e;
+		while (cause instanceof MessagingException) {
+			if (cause instanceof SMTPSendFailedException) {
+				return ((SMTPSendFailedException) cause).getReturnCode() / 100 == 4;
+			}
+			if (cause instanceof SMTPAddressFailedException) {
+				return ((SMTPAddressFailedException) cause).getReturnCode() / 100 == 4;
+			}
+			if (cause instanceof SMTPSenderFailedException) {
+				return ((SMTPSenderFailedException) cause).getReturnCode() / 100 == 4;
+			}
+			cause = ((MessagingException) cause).getNextException();
+		}
+		return cause instanceof IOException;
+	}
+
+	private MimeMessage toMimeMessage(final EmailMessage message) throws MessagingException {
+		final MimeMessage mimeMessage = new MimeMessage(getSession());
+		mimeMessage.setFrom(new InternetAddress(message.getFrom().toString()));
+		for (final EmailAddress to : message.getTo()) {
+			mimeMessage.addRecipient(Message.RecipientType.TO, new InternetAddress(to.toString()));
+		}
+		mimeMessage.setSubject(message.getSubject());
+		final String htmlContent = message.getHtml();
+		if (StringUtils.isBlank(htmlContent)) {
+			// No HTML so we'll just send a plaintext message.
+			mimeMessage.setText(message.getText());
+		} else {
+			final Multipart multiPart = new MimeMultipart("alternative");
+
+			final BodyPart text = new MimeBodyPart();
+			text.setText(message.getText());
+			multiPart.addBodyPart(text);
+
+			final BodyPart html = new MimeBodyPart();
+			html.setContent(message.getHtml(), "text/html");
+			multiPart.addBodyPart(html);
+
+			mimeMessage.setContent(multiPart);
+		}
+		mimeMessage.saveChanges();
+		return mimeMessage;
+	}
+
+	private synchronized Session getSession() {
+		if (this.session == null) {
+			if (this.aws) {
+				final Properties props = new Properties();
+				props.setProperty("mail.transport.protocol", "aws");
+				props.setProperty("mail.aws.user", Config.i.get("aws.accessKey", null));
+				props.setProperty("mail.aws.password", Config.i.get("aws.secretKey", null));
+				this.session = Session.getInstance(props);
+			} else {
+				this.session = Session.getInstance(this.properties);
+			}
+			this.permits = new Semaphore(this.poolSize);
+		}
+		return this.session;
+	}
+
+	private Transport borrow() throws MessagingException {
+		final Session mailSession = getSession();
+		try {
+			this.permits.acquire();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("Interrupted waiting for a transport", e);
+		}
+		try {
+			Transport transport = this.idle.poll();
+			if (transport == null) {
+				transport = this.aws ? new AWSJavaMailTransport(mailSession, null) : mailSession.getTransport();
+			}
+			if (!transport.isConnected()) {
+				transport.connect();
+			}
+			return transport;
+		} catch (final MessagingException | RuntimeException e) {
+			this.permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a transport to the pool, or closes it if it failed, since the
+	 * connection may be broken.
+	 */
+	private void release(final Transport transport, final boolean ok) {
+		if (ok) {
+			this.idle.offer(transport);
+		} else {
+			closeQuietly(transport);
+		}
+		this.permits.release();
+	}
+
+	private static void closeQuietly(final Transport transport) {
+		try {
+			transport.close();
+		} catch (final MessagingException e) {
+			log.log(Level.FINE, e.getMessage(), e);
+		}
+	}
+
+	private BlockingQueue<EmailMessage> getQueue() {
+		synchronized (this.workers) {
+			if (this.queue == null) {
+				final BlockingQueue<EmailMessage> messages = new ArrayBlockingQueue<>(this.queueSize);
+				for (int i = 0; i < this.poolSize; i++) {
+					final Thread worker = new Thread(new Runnable() {
+
+						@Override
+						public void run() {
+							drain(messages);
+						}
+					}, "email-sender-" + i);
+					worker.setDaemon(true);
+					worker.start();
+					this.workers.add(worker);
+				}
+				this.queue = messages;
+			}
+			return this.queue;
+		}
+	}
+
+	private void drain(final BlockingQueue<EmailMessage> messages) {
+		final List<EmailMessage> batch = new ArrayList<>(this.batchSize);
+		try {
+			while (true) {
+				batch.add(messages.take());
+				messages.drainTo(batch, this.batchSize - 1);
+				for (final EmailMessage message : batch) {
+					if (message == STOP) {
+						// Put back any STOPs meant for other workers
+						for (final EmailMessage rest : batch.subList(batch.indexOf(message) + 1, batch.size())) {
+							if (rest == STOP) {
+								messages.put(rest);
+							} else {
+								sendQuietly(rest);
+							}
+						}
+						return;
+					}
+					sendQuietly(message);
+				}
+				batch.clear();
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void sendQuietly(final EmailMessage message) {
+		try {
+			send(message);
+		} catch (final MessagingException | RuntimeException e) {
+			this.failed.incrementAndGet();
+			log.log(Level.SEVERE, "Could not send \"" + message.getSubject() + "\" to " + message.getTo()[0], e);
+		}
+	}
+
+	private void verify(final EmailMessage message) throws MessagingException {
+		if (!this.aws || !Config.i.getBoolean("aws.ses.verify", false)) {
+			return;
+		}
+		boolean allVerified = true;
+		if (!isVerified(message.getFrom())) {
+			log.warning("Sender " + message.getFrom() + " is not verified");
+			allVerified = false;
+		}
+		for (final EmailAddress emailAddress : message.getTo()) {
+			if (!isVerified(emailAddress)) {
+				log.warning("Recipient " + emailAddress + " is not verified");
+				allVerified = false;
+			}
+		}
+		if (!allVerified) {
+			throw new MessagingException("Message not sent because one or more addresses need to be verified");
+		}
+	}
+
+	/**
+	 * Checks an address against the cached verified list, asking SES to send
+	 * a verification request the first time an unverified address is seen
+	 * while the list is cached.
+	 */
+	private boolean isVerified(final EmailAddress emailAddress) {
+		if (getVerified().contains(emailAddress.toString())) {
+			return true;
+		}
+		if (this.verificationRequested.add(emailAddress.toString())) {
+			getSes().verifyEmailAddress(new VerifyEmailAddressRequest().withEmailAddress(emailAddress.toString()));
+		}
+		return false;
+	}
+
+	private synchronized Set<String> getVerified() {
+		if (this.verified == null || System.currentTimeMillis() > this.verifiedExpires) {
+			this.verified = new HashSet<>(getSes().listVerifiedEmailAddresses().getVerifiedEmailAddresses());
+			this.verifiedExpires = System.currentTimeMillis() + this.verifiedTtl;
+			this.verificationRequested.clear();
+		}
+		return this.verified;
+	}
+
+	private synchronized AmazonSimpleEmailService getSes() {
+		if (this.ses == null) {
+			this.ses = new AmazonSimpleEmailServiceClient(new BasicAWSCredentials(Config.i.get("aws.accessKey", null), Config.i.get("aws.secretKey", null)));
+		}
+		return this.ses;
+	}
+
+}
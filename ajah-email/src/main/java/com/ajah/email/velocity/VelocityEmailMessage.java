@@ -15,17 +15,11 @@
  */
 package com.ajah.email.velocity;
 
-import java.io.StringWriter;
 import java.util.HashMap;
 import java.util.Map;
 
 import lombok.Data;
 
-import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
-import org.apache.velocity.runtime.RuntimeConstants;
-import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
-
 import com.ajah.email.EmailMessage;
 import com.ajah.util.StringUtils;
 import com.ajah.util.data.format.EmailAddress;
@@ -47,10 +41,11 @@ public class VelocityEmailMessage implements EmailMessage {
 	private String subject;
 	private String textTemplate;
 	private String htmlTemplate;
-	private VelocityEngine velocityEngine = new VelocityEngine();
+	private VelocityRenderer renderer = VelocityRenderer.i;
 
 	/**
-	 * Constructs the message and initializes the {@link VelocityEngine}.
+	 * Constructs the message. Templates are rendered with the shared
+	 * {@link VelocityRenderer#i} unless another renderer is set.
 	 * 
 	 * @param from
 	 *            The From address
@@ -60,16 +55,12 @@ public class VelocityEmailMessage implements EmailMessage {
 	public VelocityEmailMessage(final EmailAddress from, final EmailAddress[] to) {
 		this.from = from;
 		this.to = to;
-		this.velocityEngine.setProperty(RuntimeConstants.RESOURCE_LOADER, "classpath");
-		this.velocityEngine.setProperty("classpath.resource.loader.class", ClasspathResourceLoader.class.getName());
-		this.velocityEngine.init();
 	}
 
 	/**
 	 * Constructs the message from the HTML template.
 	 * 
-	 * @see VelocityEngine#mergeTemplate(String, String,
-	 *      org.apache.velocity.context.Context, java.io.Writer)
+	 * @see VelocityRenderer#render(String, Map)
 	 * @see com.ajah.email.EmailMessage#getHtml()
 	 * @return The output of the merged velocity template, if the text template
 	 *         is null, will return null.
@@ -79,18 +70,13 @@ public class VelocityEmailMessage implements EmailMessage {
 		if (StringUtils.isBlank(this.htmlTemplate)) {
 			return null;
 		}
-		final VelocityContext context = new VelocityContext(this.model);
-		final StringWriter w = new StringWriter();
-		this.velocityEngine.mergeTemplate(this.htmlTemplate, "UTF-8", context, w);
-		return w.toString();
-
+		return this.renderer.render(this.htmlTemplate, this.model);
 	}
 
 	/**
 	 * Constructs the message from the text template.
 	 * 
-	 * @see VelocityEngine#mergeTemplate(String, String,
-	 *      org.apache.velocity.context.Context, java.io.Writer)
+	 * @see VelocityRenderer#render(String, Map)
 	 * @see com.ajah.email.EmailMessage#getText()
 	 * @return The output of the merged velocity template, if the text template
 	 *         is null, will return null.
@@ -100,11 +86,7 @@ public class VelocityEmailMessage implements EmailMessage {
 		if (StringUtils.isBlank(this.textTemplate)) {
 			return null;
 		}
-		final VelocityContext context = new VelocityContext(this.model);
-		final StringWriter w = new StringWriter();
-		this.velocityEngine.mergeTemplate(this.textTemplate, "UTF-8", context, w);
-		return w.toString();
-
+		return this.renderer.render(this.textTemplate, this.model);
 	}
 
 }
@@ -0,0 +1,240 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.email.velocity;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import lombok.extern.java.Log;
+
+import org.apache.velocity.Template;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
+
+import com.ajah.cache.LruCache;
+import com.ajah.util.AjahUtils;
+
+/**
+ * Renders Velocity templates with one shared {@link VelocityEngine} and keeps
+ * parsed {@link Template}s in memory, so a template is loaded and parsed once
+ * rather than every time a message is rendered. Parsed templates are safe to
+ * merge from many threads at once, which
+ * {@link #renderAll(String, List)} uses to render one template against many
+ * models in parallel.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Log
+public class VelocityRenderer {
+
+	private static class CachedTemplate {
+
+		final Template template;
+		volatile long checked;
+
+		CachedTemplate(final Template template, final long checked) {
+			this.template = template;
+			this.checked = checked;
+		}
+
+	}
+
+	/**
+	 * A shared renderer that loads templates from the classpath.
+	 */
+	public static final VelocityRenderer i = new VelocityRenderer(createClasspathEngine(), 500);
+
+	private static final String ENCODING = "UTF-8";
+
+	private final VelocityEngine engine;
+	private final LruCache<String, CachedTemplate> templates;
+	private long checkInterval = 0;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Creates a renderer.
+	 * 
+	 * @param engine
+	 *            The engine, already initialized, required.
+	 * @param maxTemplates
+	 *            The maximum number of parsed templates to keep.
+	 */
+	public VelocityRenderer(final VelocityEngine engine, final int maxTemplates) {
+		AjahUtils.requireParam(engine, "engine");
+		this.engine = engine;
+		this.templates = new LruCache<>(maxTemplates);
+	}
+
+	/**
+	 * Creates and initializes an engine that loads templates from the
+	 * classpath.
+	 * 
+	 * @return The engine.
+	 */
+	public static VelocityEngine createClasspathEngine() {
+		final VelocityEngine velocityEngine = new VelocityEngine();
+		velocityEngine.setProperty(RuntimeConstants.RESOURCE_LOADER, "classpath");
+		velocityEngine.setProperty("classpath.resource.loader.class", ClasspathResourceLoader.class.getName());
+		velocityEngine.init();
+		return velocityEngine;
+	}
+
+	/**
+	 * Returns the parsed template, loading it if it is not cached or, if a
+	 * check interval is set, if its source has changed since it was loaded.
+	 * 
+	 * @param name
+	 *            The template name, required.
+	 * @return The parsed template.
+	 * @throws org.apache.velocity.exception.ResourceNotFoundException
+	 *             If the template could not be found.
+	 * @throws org.apache.velocity.exception.ParseErrorException
+	 *             If the template could not be parsed.
+	 */
+	public Template getTemplate(final String name) {
+		AjahUtils.requireParam(name, "name");
+		final CachedTemplate cached = this.templates.get(name);
+		final long now = System.currentTimeMillis();
+		if (cached != null) {
+			if (this.checkInterval <= 0 || now - cached.checked < this.checkInterval) {
+				return cached.template;
+			}
+			cached.checked = now;
+			if (!cached.template.isSourceModified()) {
+				return cached.template;
+			}
+			log.fine("Reloading modified template " + name);
+		}
+		// Two threads may both parse a new template, which is harmless
+		final Template template = this.engine.getTemplate(name, ENCODING);
+		this.templates.put(name, new CachedTemplate(template, now));
+		return template;
+	}
+
+	/**
+	 * Renders a template.
+	 * 
+	 * @param name
+	 *            The template name, required.
+	 * @param model
+	 *            The values available to the template, may be null.
+	 * @return The rendered template.
+	 */
+	public String render(final String name, final Map<String, Object> model) {
+		return merge(getTemplate(name), model);
+	}
+
+	/**
+	 * Renders one template against many models in parallel. The template is
+	 * parsed once. Since every result is held in memory, very large runs
+	 * should be passed in chunks.
+	 * 
+	 * @param name
+	 *            The template name, required.
+	 * @param models
+	 *            The models, required.
+	 * @return The rendered templates, in the same order as the models.
+	 */
+	public List<String> renderAll(final String name, final List<Map<String, Object>> models) {
+		AjahUtils.requireParam(models, "models");
+		final Template template = getTemplate(name);
+		final String[] results = new String[models.size()];
+		final int workers = Math.min(this.threads, models.size());
+		if (workers <= 1) {
+			for (int j = 0; j < results.length; j++) {
+				results[j] = merge(template, models.get(j));
+			}
+			return Arrays.asList(results);
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			final List<Future<Void>> futures = new ArrayList<>(workers);
+			final int chunk = (results.length + workers - 1) / workers;
+			for (int start = 0; start < results.length; start += chunk) {
+				final int from = start;
+				final int to = Math.min(start + chunk, results.length);
+				futures.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						for (int j = from; j < to; j++) {
+							results[j] = merge(template, models.get(j));
+						}
+						return null;
+					}
+				}));
+			}
+			for (final Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Sets how often a cached template is checked for changes to its source.
+	 * Defaults to 0, which never checks.
+	 * 
+	 * @param checkInterval
+	 *            The interval in milliseconds, or 0 to never check.
+	 */
+	public void setCheckInterval(final long checkInterval) {
+		this.checkInterval = checkInterval;
+	}
+
+	/**
+	 * Sets the number of threads {@link #renderAll(String, List)} uses.
+	 * Defaults to the number of processors.
+	 * 
+	 * @param threads
+	 *            The number of threads.
+	 */
+	public void setThreads(final int threads) {
+		AjahUtils.requireParam(threads, "threads", 1);
+		this.threads = threads;
+	}
+
+	private static String merge(final Template template, final Map<String, Object> model) {
+		final StringWriter w = new StringWriter();
+		template.merge(new VelocityContext(model), w);
+		return w.toString();
+	}
+
+}
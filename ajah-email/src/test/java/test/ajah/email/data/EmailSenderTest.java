@@ -0,0 +1,208 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.email.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.MessagingException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ajah.email.data.EmailSender;
+import com.ajah.email.velocity.VelocityEmailMessage;
+import com.ajah.util.data.format.EmailAddress;
+
+/**
+ * Tests {@link EmailSender} against a minimal local SMTP server.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class EmailSenderTest {
+
+	private ServerSocket server;
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicInteger messages = new AtomicInteger();
+	private final Queue<String> dataReplies = new ConcurrentLinkedQueue<>();
+	private EmailSender sender;
+
+	/**
+	 * Starts the SMTP server and a sender pointed at it.
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setUp() throws IOException {
+		this.server = new ServerSocket(0);
+		final Thread acceptor = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final Socket socket = EmailSenderTest.this.server.accept();
+						EmailSenderTest.this.connections.incrementAndGet();
+						final Thread session = new Thread(new Runnable() {
+
+							@Override
+							public void run() {
+								smtp(socket);
+							}
+						});
+						session.setDaemon(true);
+						session.start();
+					}
+				} catch (final IOException e) {
+					// Server closed
+				}
+			}
+		});
+		acceptor.setDaemon(true);
+		acceptor.start();
+
+		final Properties props = new Properties();
+		props.setProperty("mail.transport.protocol", "smtp");
+		props.setProperty("mail.smtp.host", "localhost");
+		props.setProperty("mail.smtp.port", String.valueOf(this.server.getLocalPort()));
+		this.sender = new EmailSender(props);
+		this.sender.setPoolSize(2);
+	}
+
+	/**
+	 * Stops the sender and the server.
+	 * 
+	 * @throws IOException
+	 */
+	@After
+	public void tearDown() throws IOException {
+		this.sender.close();
+		this.server.close();
+	}
+
+	private void smtp(final Socket socket) {
+		try (final Socket s = socket;
+				final BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), "US-ASCII"));
+				final PrintWriter out = new PrintWriter(s.getOutputStream(), true)) {
+			out.print("220 localhost ESMTP\r\n");
+			out.flush();
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				final String command = line.length() < 4 ? line : line.substring(0, 4).toUpperCase();
+				if ("DATA".equals(command)) {
+					out.print("354 go ahead\r\n");
+					out.flush();
+					for (String data = in.readLine(); data != null && !".".equals(data); data = in.readLine()) {
+						// Discard the message
+					}
+					this.messages.incrementAndGet();
+					final String reply = this.dataReplies.poll();
+					out.print(reply == null ? "250 OK\r\n" : reply + "\r\n");
+				} else if ("QUIT".equals(command)) {
+					out.print("221 bye\r\n");
+					out.flush();
+					return;
+				} else {
+					out.print("250 OK\r\n");
+				}
+				out.flush();
+			}
+		} catch (final IOException e) {
+			// Connection dropped
+		}
+	}
+
+	private static VelocityEmailMessage message(final int i) {
+		final VelocityEmailMessage message = new VelocityEmailMessage(new EmailAddress("nobody@nobody.com"), new EmailAddress[] { new EmailAddress("someone@somewhere.com") });
+		message.setSubject("Message " + i);
+		message.setTextTemplate("/templates/email/simple.txt.vm");
+		return message;
+	}
+
+	/**
+	 * Messages sent one after another should share a connection.
+	 * 
+	 * @throws MessagingException
+	 */
+	@Test
+	public void reuseConnection() throws MessagingException {
+		for (int i = 0; i < 5; i++) {
+			this.sender.send(message(i));
+		}
+		Assert.assertEquals(5, this.messages.get());
+		Assert.assertEquals(1, this.connections.get());
+		Assert.assertEquals(5, this.sender.getSent().get());
+	}
+
+	/**
+	 * Queued messages should all be sent by close, over no more connections
+	 * than the pool size.
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void sendAsync() throws InterruptedException {
+		for (int i = 0; i < 20; i++) {
+			this.sender.sendAsync(message(i));
+		}
+		this.sender.close();
+		Assert.assertEquals(20, this.messages.get());
+		Assert.assertTrue(this.connections.get() <= 2);
+		Assert.assertEquals(0, this.sender.getFailed().get());
+	}
+
+	/**
+	 * A 4xx reply should be retried.
+	 * 
+	 * @throws MessagingException
+	 */
+	@Test
+	public void retryTransientFailure() throws MessagingException {
+		this.sender.setRetry(3, 0);
+		this.dataReplies.add("451 try again later");
+		this.sender.send(message(0));
+		Assert.assertEquals(2, this.messages.get());
+		Assert.assertEquals(1, this.sender.getSent().get());
+	}
+
+	/**
+	 * A 5xx reply should not be retried.
+	 */
+	@Test
+	public void permanentFailure() {
+		this.sender.setRetry(3, 0);
+		this.dataReplies.add("554 rejected");
+		try {
+			this.sender.send(message(0));
+			Assert.fail("Expected the send to fail");
+		} catch (final MessagingException e) {
+			// Expected
+		}
+		Assert.assertEquals(1, this.messages.get());
+		Assert.assertEquals(0, this.sender.getSent().get());
+	}
+
+}
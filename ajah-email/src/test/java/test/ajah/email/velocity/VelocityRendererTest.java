@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.email.velocity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.email.velocity.VelocityRenderer;
+
+/**
+ * Tests {@link VelocityRenderer}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class VelocityRendererTest {
+
+	/**
+	 * A template should be parsed once and reused.
+	 */
+	@Test
+	public void cachesTemplate() {
+		final VelocityRenderer renderer = new VelocityRenderer(VelocityRenderer.createClasspathEngine(), 10);
+		Assert.assertSame(renderer.getTemplate("/templates/email/simple.txt.vm"), renderer.getTemplate("/templates/email/simple.txt.vm"));
+		Assert.assertEquals("HELLO", renderer.render("/templates/email/simple.txt.vm", null));
+	}
+
+	/**
+	 * Bulk rendering should return each model's output in order.
+	 */
+	@Test
+	public void renderAll() {
+		final VelocityRenderer renderer = new VelocityRenderer(VelocityRenderer.createClasspathEngine(), 10);
+		renderer.setThreads(4);
+		final List<Map<String, Object>> models = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			final Map<String, Object> model = new HashMap<>();
+			model.put("name", "user" + i);
+			model.put("count", Integer.valueOf(i));
+			models.add(model);
+		}
+		final List<String> results = renderer.renderAll("/templates/email/digest.txt.vm", models);
+		Assert.assertEquals(1000, results.size());
+		Assert.assertEquals("Hello user0, you have 0 new items.", results.get(0));
+		Assert.assertEquals("Hello user999, you have 999 new items.", results.get(999));
+	}
+
+}
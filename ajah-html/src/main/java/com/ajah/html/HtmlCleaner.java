@@ -0,0 +1,91 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.html;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.safety.Cleaner;
+import org.jsoup.safety.Whitelist;
+
+import com.ajah.cache.LruCache;
+import com.ajah.util.AjahUtils;
+import com.ajah.util.data.HashUtils;
+
+/**
+ * Removes unsafe markup from HTML fragments, like
+ * {@link Jsoup#clean(String, Whitelist)} but with the {@link Whitelist} and
+ * {@link Cleaner} built once and reused, and results remembered by the SHA-1
+ * of their input, since feeds and mail repeat the same fragments constantly.
+ * 
+ * Instances are thread-safe. Use the shared instances where they fit rather
+ * than creating new ones, as each keeps its own cache.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class HtmlCleaner {
+
+	/**
+	 * Allows only simple text formatting, see {@link Whitelist#simpleText()}.
+	 */
+	public static final HtmlCleaner SIMPLE_TEXT = new HtmlCleaner(Whitelist.simpleText(), 10000);
+
+	/**
+	 * Allows text formatting, links and lists, see {@link Whitelist#basic()}.
+	 */
+	public static final HtmlCleaner BASIC = new HtmlCleaner(Whitelist.basic(), 10000);
+
+	private final Cleaner cleaner;
+	private final LruCache<String, String> cache;
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param whitelist
+	 *            The markup to allow, required. It must not be changed after
+	 *            this cleaner is created.
+	 * @param cacheSize
+	 *            The number of results to remember, must be 1 or greater.
+	 */
+	public HtmlCleaner(final Whitelist whitelist, final int cacheSize) {
+		AjahUtils.requireParam(whitelist, "whitelist");
+		this.cleaner = new Cleaner(whitelist);
+		this.cache = new LruCache<>(cacheSize);
+	}
+
+	/**
+	 * Cleans an HTML fragment.
+	 * 
+	 * @param html
+	 *            The fragment to clean, may be null.
+	 * @return The fragment with only allowed markup, or null if the fragment
+	 *         was null.
+	 */
+	public String clean(final String html) {
+		if (html == null) {
+			return null;
+		}
+		final String key = HashUtils.sha1Hex(html);
+		String clean = this.cache.get(key);
+		if (clean == null) {
+			final Document dirty = Jsoup.parseBodyFragment(html, "");
+			clean = this.cleaner.clean(dirty).body().html();
+			this.cache.put(key, clean);
+		}
+		return clean;
+	}
+
+}
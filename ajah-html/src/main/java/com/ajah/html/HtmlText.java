@@ -0,0 +1,167 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.html;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jsoup.nodes.Entities;
+
+/**
+ * Extracts the readable text from HTML in a single pass without building a
+ * DOM. Tags are dropped, block-level tags become spaces, the contents of
+ * script, style and head elements are skipped, entities are decoded and
+ * whitespace is collapsed. The result is close to what a full parse followed
+ * by <code>body().text()</code> gives, at a fraction of the cost, but it will
+ * not repair badly broken markup the way a parser would.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class HtmlText {
+
+	private static final Set<String> BLOCK_TAGS = new HashSet<>(Arrays.asList("address", "article", "aside", "blockquote", "br", "dd", "div", "dl", "dt", "fieldset",
+			"figcaption", "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "li", "ol", "option", "p", "pre", "section", "table", "tbody",
+			"td", "tfoot", "th", "thead", "tr", "ul"));
+
+	private static final Set<String> SKIPPED_TAGS = new HashSet<>(Arrays.asList("head", "script", "style", "title"));
+
+	/**
+	 * Extracts the text from HTML.
+	 * 
+	 * @param html
+	 *            The HTML, may be null.
+	 * @return The text, with whitespace collapsed and trimmed, or null if the
+	 *         HTML was null.
+	 */
+	public static String toText(final String html) {
+		if (html == null) {
+			return null;
+		}
+		return strip(html);
+	}
+
+	private static String strip(final String html) {
+		final int length = html.length();
+		final StringBuilder text = new StringBuilder(length / 2);
+		boolean space = false;
+		int i = 0;
+		while (i < length) {
+			final char c = html.charAt(i);
+			if (c == '<') {
+				if (html.startsWith("<!--", i)) {
+					final int end = html.indexOf("-->", i + 4);
+					i = end < 0 ? length : end + 3;
+					continue;
+				}
+				final int end = html.indexOf('>', i);
+				if (end < 0 || !isTagStart(html, i + 1)) {
+					// Not a tag, just a bracket in the text
+					space = append(text, c, space);
+					i++;
+					continue;
+				}
+				final boolean closing = html.charAt(i + 1) == '/';
+				final boolean selfClosing = html.charAt(end - 1) == '/';
+				final String tag = getTagName(html, i + 1, end);
+				if (BLOCK_TAGS.contains(tag)) {
+					space = true;
+				}
+				i = end + 1;
+				if (!closing && !selfClosing && SKIPPED_TAGS.contains(tag)) {
+					final int close = indexOfIgnoreCase(html, "</" + tag, i);
+					i = close < 0 ? length : close;
+					space = true;
+				}
+			} else if (c == '&') {
+				final int end = html.indexOf(';', i);
+				final Character decoded = end > 0 && end - i <= 10 ? decode(html.substring(i + 1, end)) : null;
+				if (decoded == null) {
+					space = append(text, c, space);
+					i++;
+				} else {
+					space = append(text, decoded.charValue(), space);
+					i = end + 1;
+				}
+			} else {
+				space = append(text, c, space);
+				i++;
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Appends a character, collapsing whitespace.
+	 * 
+	 * @return true if a space is pending.
+	 */
+	private static boolean append(final StringBuilder text, final char c, final boolean space) {
+		if (Character.isWhitespace(c) || c == ' ') {
+			return true;
+		}
+		if (space && text.length() > 0) {
+			text.append(' ');
+		}
+		text.append(c);
+		return false;
+	}
+
+	private static Character decode(final String entity) {
+		if (entity.startsWith("#")) {
+			try {
+				final int codePoint = entity.length() > 1 && (entity.charAt(1) == 'x' || entity.charAt(1) == 'X') ? Integer.parseInt(entity.substring(2), 16) : Integer
+						.parseInt(entity.substring(1));
+				return codePoint > 0 && codePoint <= Character.MAX_VALUE ? Character.valueOf((char) codePoint) : null;
+			} catch (final NumberFormatException e) {
+				return null;
+			}
+		}
+		return Entities.isNamedEntity(entity) ? Entities.getCharacterByName(entity) : null;
+	}
+
+	private static String getTagName(final String html, final int start, final int end) {
+		int i = start;
+		if (i < end && html.charAt(i) == '/') {
+			i++;
+		}
+		final int nameStart = i;
+		while (i < end && Character.isLetterOrDigit(html.charAt(i))) {
+			i++;
+		}
+		return html.substring(nameStart, i).toLowerCase();
+	}
+
+	private static boolean isTagStart(final String html, final int index) {
+		if (index >= html.length()) {
+			return false;
+		}
+		final char c = html.charAt(index);
+		return Character.isLetter(c) || c == '/' || c == '!' || c == '?';
+	}
+
+	private static int indexOfIgnoreCase(final String string, final String search, final int from) {
+		final int max = string.length() - search.length();
+		for (int i = from; i <= max; i++) {
+			if (string.regionMatches(true, i, search, 0, search.length())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.html;
+
+import org.jsoup.Jsoup;
+import org.jsoup.safety.Whitelist;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.html.HtmlCleaner;
+import com.ajah.html.HtmlText;
+
+/**
+ * Tests {@link HtmlText} and {@link HtmlCleaner}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class HtmlTextTest {
+
+	private static final String HTML = "<html><head><title>Ignored</title><style>p { color: red; }</style></head>"
+			+ "<body><h1>Hello&nbsp;world</h1><p>Fish &amp; chips,\n  <b>hot</b>ly served &#8212; 3 &lt; 4</p><!-- <p>hidden</p> -->"
+			+ "<script type=\"text/javascript\">var x = '<p>no</p>';</script><ul><li>one</li><li>two<br/>three</li></ul></body></html>";
+
+	/**
+	 * Text should match what a full parse gives.
+	 */
+	@Test
+	public void toText() {
+		Assert.assertEquals("Hello world Fish & chips, hotly served — 3 < 4 one two three", HtmlText.toText(HTML));
+		Assert.assertEquals(Jsoup.parse(HTML).body().text().replace(' ', ' '), HtmlText.toText(HTML));
+		Assert.assertEquals("a < b and c > d", HtmlText.toText("a < b and c > d"));
+		Assert.assertNull(HtmlText.toText(null));
+	}
+
+	/**
+	 * Cleaning should match {@link Jsoup#clean(String, Whitelist)}.
+	 */
+	@Test
+	public void clean() {
+		final String html = "<p onclick=\"evil()\"><b>Bold</b> <a href=\"http://example.com/\">link</a><script>evil()</script></p>";
+		Assert.assertEquals(Jsoup.clean(html, Whitelist.simpleText()), HtmlCleaner.SIMPLE_TEXT.clean(html));
+		Assert.assertEquals(Jsoup.clean(html, Whitelist.basic()), HtmlCleaner.BASIC.clean(html));
+		// Again, from the cache
+		Assert.assertEquals(Jsoup.clean(html, Whitelist.basic()), HtmlCleaner.BASIC.clean(html));
+		Assert.assertNull(HtmlCleaner.SIMPLE_TEXT.clean(null));
+	}
+
+}
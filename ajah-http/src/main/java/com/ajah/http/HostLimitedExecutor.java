@@ -0,0 +1,163 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.http;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import lombok.extern.java.Log;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * Wraps an {@link Executor} so that no more than a fixed number of jobs for
+ * any one host are running at once. Jobs over the limit wait in a per-host
+ * queue instead of occupying a thread, so a slow host can't tie up the whole
+ * pool. If the executor rejects a queued job, the job is cancelled if it is
+ * a {@link Future}, so anything waiting on it finds out.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Log
+public class HostLimitedExecutor {
+
+	private static class HostQueue {
+		int active;
+		final Queue<Runnable> pending = new ArrayDeque<>();
+	}
+
+	private final Executor executor;
+	private final int maxPerHost;
+	private final Map<String, HostQueue> hosts = new HashMap<>();
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param executor
+	 *            The executor that will run the jobs, required.
+	 * @param maxPerHost
+	 *            The maximum number of concurrent jobs per host, must be 1 or
+	 *            greater.
+	 */
+	public HostLimitedExecutor(final Executor executor, final int maxPerHost) {
+		AjahUtils.requireParam(executor, "executor");
+		AjahUtils.requireParam(maxPerHost, "maxPerHost", 1);
+		this.executor = executor;
+		this.maxPerHost = maxPerHost;
+	}
+
+	/**
+	 * Runs a job now if the host is under its limit, otherwise queues it until
+	 * a job for the same host completes.
+	 * 
+	 * @param host
+	 *            The host the job will contact. Null is treated as a single
+	 *            anonymous host.
+	 * @param runnable
+	 *            The job to run, required.
+	 * @throws RejectedExecutionException
+	 *             If the executor would not accept the job.
+	 */
+	public void execute(final String host, final Runnable runnable) {
+		AjahUtils.requireParam(runnable, "runnable");
+		final String key = host == null ? "" : host.toLowerCase();
+		synchronized (this.hosts) {
+			HostQueue queue = this.hosts.get(key);
+			if (queue == null) {
+				queue = new HostQueue();
+				this.hosts.put(key, queue);
+			}
+			if (queue.active >= this.maxPerHost) {
+				queue.pending.add(runnable);
+				return;
+			}
+			queue.active++;
+		}
+		try {
+			dispatch(key, runnable);
+		} catch (final RejectedExecutionException e) {
+			// Give up the slot, handing it to any job queued meanwhile
+			complete(key);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of jobs waiting for a slot, across all hosts.
+	 * 
+	 * @return The number of queued jobs.
+	 */
+	public int getPendingCount() {
+		int count = 0;
+		synchronized (this.hosts) {
+			for (final HostQueue queue : this.hosts.values()) {
+				count += queue.pending.size();
+			}
+		}
+		return count;
+	}
+
+	private void dispatch(final String key, final Runnable runnable) {
+		this.executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					runnable.run();
+				} finally {
+					complete(key);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Hands a finished job's slot to the next queued job for the host, or
+	 * frees it if there are none.
+	 */
+	private void complete(final String key) {
+		while (true) {
+			final Runnable next;
+			synchronized (this.hosts) {
+				final HostQueue queue = this.hosts.get(key);
+				next = queue.pending.poll();
+				if (next == null) {
+					queue.active--;
+					if (queue.active == 0) {
+						this.hosts.remove(key);
+					}
+					return;
+				}
+			}
+			try {
+				dispatch(key, next);
+				return;
+			} catch (final RejectedExecutionException e) {
+				log.warning("Executor rejected a queued job for " + key + ": " + e.getMessage());
+				if (next instanceof Future) {
+					((Future<?>) next).cancel(false);
+				}
+			}
+		}
+	}
+
+}
@@ -16,8 +16,17 @@
 package com.ajah.http;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import lombok.extern.java.Log;
@@ -27,13 +36,21 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.conn.params.ConnManagerPNames;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.HttpParams;
 import org.apache.http.util.EntityUtils;
 
 import com.ajah.http.err.BadRequestException;
 import com.ajah.http.err.HttpException;
 import com.ajah.http.err.NotFoundException;
 import com.ajah.http.err.UnexpectedResponseCode;
+import com.ajah.util.AjahUtils;
+import com.ajah.util.config.Config;
 
 /**
  * Offers a simple interface to HTTP client operations with sensible default
@@ -46,6 +63,40 @@ import com.ajah.http.err.UnexpectedResponseCode;
 @Log
 public class Http {
 
+	private static final HttpClient client;
+
+	private static final HostLimitedExecutor asyncExecutor;
+
+	static {
+		final int maxPerHost = AjahUtils.safeInt(Config.i.get("ajah.http.max-per-host"), 4);
+		final ThreadSafeClientConnManager connectionManager = new ThreadSafeClientConnManager();
+		connectionManager.setMaxTotal(AjahUtils.safeInt(Config.i.get("ajah.http.max-connections"), 200));
+		connectionManager.setDefaultMaxPerRoute(maxPerHost);
+		final DefaultHttpClient defaultClient = new DefaultHttpClient(connectionManager);
+		// Without timeouts a single hung host would hold its threads and
+		// pooled connections forever
+		final HttpParams params = defaultClient.getParams();
+		params.setIntParameter(CoreConnectionPNames.CONNECTION_TIMEOUT, AjahUtils.safeInt(Config.i.get("ajah.http.connect-timeout"), 10000));
+		params.setIntParameter(CoreConnectionPNames.SO_TIMEOUT, AjahUtils.safeInt(Config.i.get("ajah.http.socket-timeout"), 30000));
+		params.setLongParameter(ConnManagerPNames.TIMEOUT, AjahUtils.safeInt(Config.i.get("ajah.http.pool-timeout"), 30000));
+		// Ask for gzip/deflate and transparently decompress what comes back
+		defaultClient.addRequestInterceptor(new RequestAcceptEncoding());
+		defaultClient.addResponseInterceptor(new ResponseContentEncoding());
+		client = defaultClient;
+		final ThreadFactory threadFactory = new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "ajah-http-" + this.count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		asyncExecutor = new HostLimitedExecutor(Executors.newFixedThreadPool(AjahUtils.safeInt(Config.i.get("ajah.http.async.threads"), 16), threadFactory), maxPerHost);
+	}
+
 	private static String get(final String url) throws IOException, HttpException {
 		URI uri;
 		try {
@@ -110,14 +161,137 @@ public class Http {
 		return EntityUtils.toByteArray(internalGet(uri));
 	}
 
+	/**
+	 * Fetch a URI and return its response body as a stream, so large
+	 * responses can be processed without being held in memory. The caller
+	 * must close the stream to release the connection; closing it before the
+	 * end reads and discards the rest of the body.
+	 * 
+	 * @param uri
+	 *            The URI to fetch.
+	 * @return The response body as a stream.
+	 * @throws IOException
+	 *             If the response could not be completed.
+	 * @throws UnexpectedResponseCode
+	 *             If an unexpected/illegal response status is issued.
+	 * @throws NotFoundException
+	 *             If the resource could not be found at the URI (404).
+	 */
+	public static InputStream getStream(final URI uri) throws IOException, NotFoundException, UnexpectedResponseCode {
+		return internalGet(uri).getContent();
+	}
+
+	/**
+	 * Fetches a URI on the shared async pool and returns its response as a
+	 * String. No more than <code>ajah.http.max-per-host</code> fetches run
+	 * against the same host at once; the rest wait in a queue without holding
+	 * a thread.
+	 * 
+	 * @param uri
+	 *            The URI to fetch, required.
+	 * @return A future of the response body as a String.
+	 * @see #get(URI)
+	 */
+	public static Future<String> getAsync(final URI uri) {
+		return getAsync(uri, null);
+	}
+
+	/**
+	 * Fetches a URI on the shared async pool and returns its response as a
+	 * String.
+	 * 
+	 * @param uri
+	 *            The URI to fetch, required.
+	 * @param callback
+	 *            Notified when the fetch completes or fails, may be null.
+	 * @return A future of the response body as a String.
+	 * @see #getAsync(URI)
+	 */
+	public static Future<String> getAsync(final URI uri, final HttpCallback<String> callback) {
+		return submit(uri, new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				return get(uri);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Fetches a URI on the shared async pool and returns its response as a
+	 * byte array.
+	 * 
+	 * @param uri
+	 *            The URI to fetch, required.
+	 * @param callback
+	 *            Notified when the fetch completes or fails, may be null.
+	 * @return A future of the response body as a byte array.
+	 * @see #getAsync(URI)
+	 */
+	public static Future<byte[]> getBytesAsync(final URI uri, final HttpCallback<byte[]> callback) {
+		return submit(uri, new Callable<byte[]>() {
+
+			@Override
+			public byte[] call() throws Exception {
+				return getBytes(uri);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Runs a job on the shared async pool, subject to the per-host limit of
+	 * the URI it will fetch. This is useful for wrappers (such as caches) that
+	 * need to do some work around the fetch itself.
+	 * 
+	 * @param <T>
+	 *            The type of the job's result.
+	 * @param uri
+	 *            The URI the job will fetch, required.
+	 * @param job
+	 *            The job to run, required.
+	 * @param callback
+	 *            Notified when the job completes or fails, may be null.
+	 * @return A future of the job's result.
+	 */
+	public static <T> Future<T> submit(final URI uri, final Callable<T> job, final HttpCallback<T> callback) {
+		AjahUtils.requireParam(uri, "uri");
+		AjahUtils.requireParam(job, "job");
+		// The callback runs from done(), once the result is set, so it may
+		// call get() on the future
+		final FutureTask<T> task = new FutureTask<T>(job) {
+
+			@Override
+			protected void done() {
+				if (callback == null) {
+					return;
+				}
+				final T result;
+				try {
+					result = get();
+				} catch (final ExecutionException e) {
+					callback.failed(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+					return;
+				} catch (final CancellationException | InterruptedException e) {
+					callback.failed(e);
+					return;
+				}
+				callback.completed(result);
+			}
+		};
+		asyncExecutor.execute(uri.getHost(), task);
+		return task;
+	}
+
 	private static HttpEntity internalGet(final URI uri) throws IOException, ClientProtocolException, NotFoundException, UnexpectedResponseCode {
-		final HttpClient httpclient = new DefaultHttpClient();
 		final HttpGet httpget = new HttpGet(uri);
-		final HttpResponse response = httpclient.execute(httpget);
+		final HttpResponse response = client.execute(httpget);
 		if (response.getStatusLine().getStatusCode() == 200) {
 			final HttpEntity entity = response.getEntity();
 			return entity;
-		} else if (response.getStatusLine().getStatusCode() == 404) {
+		}
+		// Release the pooled connection before bailing out
+		EntityUtils.consume(response.getEntity());
+		if (response.getStatusLine().getStatusCode() == 404) {
 			throw new NotFoundException(response.getStatusLine().getStatusCode() + " - " + response.getStatusLine().getReasonPhrase());
 		} else {
 			throw new UnexpectedResponseCode(response.getStatusLine().getStatusCode() + " - " + response.getStatusLine().getReasonPhrase());
@@ -0,0 +1,45 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.http;
+
+/**
+ * Receives the outcome of an asynchronous fetch, on the thread that performed
+ * it.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ * @param <T>
+ *            The type of the response body.
+ */
+public interface HttpCallback<T> {
+
+	/**
+	 * Called when the fetch completed successfully.
+	 * 
+	 * @param result
+	 *            The response body.
+	 */
+	void completed(final T result);
+
+	/**
+	 * Called when the fetch could not be completed.
+	 * 
+	 * @param e
+	 *            The cause of the failure.
+	 */
+	void failed(final Exception e);
+
+}
@@ -20,21 +20,26 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import lombok.extern.java.Log;
 
 import com.ajah.crypto.SHA;
 import com.ajah.http.Http;
+import com.ajah.http.HttpCallback;
 import com.ajah.http.err.NotFoundException;
 import com.ajah.http.err.UnexpectedResponseCode;
 import com.ajah.util.config.Config;
 import com.ajah.util.date.DateUtils;
+import com.ajah.util.io.CompressionUtils;
 import com.ajah.util.io.file.FileHashUtils;
 import com.ajah.util.io.file.FileUtils;
 
 /**
- * Disk-based implementation of HttpCache.
+ * Disk-based implementation of HttpCache. Responses are stored gzipped unless
+ * they are already in a compressed format.
  * 
  * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
  *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
@@ -44,6 +49,13 @@ import com.ajah.util.io.file.FileUtils;
 @Log
 public class DiskCache implements HttpCache {
 
+	private static final String GZIP_SUFFIX = ".gz";
+
+	/**
+	 * Below this size the gzip header and trailer aren't worth it.
+	 */
+	private static final int MIN_COMPRESS_SIZE = 256;
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -83,14 +95,16 @@ public class DiskCache implements HttpCache {
 		// IDEA Store expires header, check last-modified
 		final String path = FileHashUtils.getHashedFileName(SHA.sha1Hex(uri.toString()), 3, 2);
 		final File cacheDir = new File(Config.i.get("ajah.http.cache.dir", "/tmp/ajah-http-cache"));
-		final File f = new File(cacheDir, path);
+		final File raw = new File(cacheDir, path);
+		final File gzipped = new File(cacheDir, path + GZIP_SUFFIX);
+		final File f = gzipped.exists() ? gzipped : raw;
 		log.finest("Cache location: " + f.getAbsolutePath());
 
 		byte[] data = null;
 		if (f.exists()) {
 			if (maxAge == Long.MAX_VALUE) {
 				log.finest("Indefinite caching enabled; getting " + uri);
-				return FileUtils.readFileAsBytes(f);
+				return read(f);
 			} else if (maxAge > 0) {
 				long mod = f.lastModified();
 				if (log.isLoggable(Level.FINEST)) {
@@ -99,7 +113,7 @@ public class DiskCache implements HttpCache {
 				}
 				if (mod + maxAge > System.currentTimeMillis()) {
 					log.fine("Cache hit for " + uri + " (expires in " + DateUtils.formatInterval(System.currentTimeMillis() - mod) + ")");
-					return FileUtils.readFileAsBytes(f);
+					return read(f);
 				}
 				log.fine("Cache expired; getting " + uri);
 			}
@@ -109,10 +123,43 @@ public class DiskCache implements HttpCache {
 		}
 
 		data = Http.getBytes(uri);
-		FileUtils.write(f, data);
+		write(raw, gzipped, data);
 		return data;
 	}
 
+	private static byte[] read(final File f) throws IOException {
+		final byte[] data = FileUtils.readFileAsBytes(f);
+		if (f.getName().endsWith(GZIP_SUFFIX)) {
+			return CompressionUtils.gunzip(data);
+		}
+		return data;
+	}
+
+	/**
+	 * Stores text-like content gzipped, and content that is already in a
+	 * compressed format (images, archives) as-is. Only one of the two files
+	 * exists for any URI.
+	 */
+	private static void write(final File raw, final File gzipped, final byte[] data) throws IOException {
+		if (data.length >= MIN_COMPRESS_SIZE && !CompressionUtils.isCompressedFormat(data)) {
+			final byte[] compressed = CompressionUtils.gzip(data);
+			if (compressed.length < data.length) {
+				if (log.isLoggable(Level.FINEST)) {
+					log.finest("Compressed " + data.length + " bytes to " + compressed.length);
+				}
+				FileUtils.write(gzipped, compressed);
+				if (raw.exists()) {
+					raw.delete();
+				}
+				return;
+			}
+		}
+		FileUtils.write(raw, data);
+		if (gzipped.exists()) {
+			gzipped.delete();
+		}
+	}
+
 	/**
 	 * Fetches a URI as a string, with a cache expiration time.
 	 * 
@@ -146,4 +193,38 @@ public class DiskCache implements HttpCache {
 		return getBytes(uri, Long.MAX_VALUE);
 	}
 
+	/**
+	 * Calls {@link #getBytesAsync(URI, long, HttpCallback)} with
+	 * {@link Long#MAX_VALUE} for a maxAge.
+	 * 
+	 * @see com.ajah.http.cache.HttpCache#getBytesAsync(URI, HttpCallback)
+	 */
+	@Override
+	public Future<byte[]> getBytesAsync(final URI uri, final HttpCallback<byte[]> callback) {
+		return getBytesAsync(uri, Long.MAX_VALUE, callback);
+	}
+
+	/**
+	 * Asynchronous version of {@link #getBytes(URI, long)}.
+	 * 
+	 * @param uri
+	 *            The URI to fetch.
+	 * @param maxAge
+	 *            The maximum age of the cached copy to return. Use -1 to force
+	 *            a fresh fetch.
+	 * @param callback
+	 *            Notified when the content is available or the fetch fails,
+	 *            may be null.
+	 * @return A future of the content from cache or as fetched.
+	 */
+	public static Future<byte[]> getBytesAsync(final URI uri, final long maxAge, final HttpCallback<byte[]> callback) {
+		return Http.submit(uri, new Callable<byte[]>() {
+
+			@Override
+			public byte[] call() throws Exception {
+				return getBytes(uri, maxAge);
+			}
+		}, callback);
+	}
+
 }
@@ -18,8 +18,10 @@ package com.ajah.http.cache;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.Future;
 
 import com.ajah.http.Http;
+import com.ajah.http.HttpCallback;
 import com.ajah.http.err.NotFoundException;
 import com.ajah.http.err.UnexpectedResponseCode;
 
@@ -85,5 +87,20 @@ public interface HttpCache {
 	 * @see com.ajah.http.cache.HttpCache#getBytes(java.net.URI)
 	 */
 	public byte[] getBytes(final String uri) throws IOException, NotFoundException, UnexpectedResponseCode, URISyntaxException;
-	
+
+	/**
+	 * Asynchronous version of {@link #getBytes(URI)}. Any fetch required is
+	 * subject to the per-host limits of
+	 * {@link Http#submit(URI, java.util.concurrent.Callable, HttpCallback)}.
+	 * 
+	 * @param uri
+	 *            The URI to fetch
+	 * @param callback
+	 *            Notified when the response is available or the fetch fails,
+	 *            may be null.
+	 * @return A future of the response of the URI, either from cache or from a
+	 *         fresh request.
+	 */
+	public Future<byte[]> getBytesAsync(final URI uri, final HttpCallback<byte[]> callback);
+
 }
@@ -18,8 +18,10 @@ package com.ajah.http.cache;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.Future;
 
 import com.ajah.http.Http;
+import com.ajah.http.HttpCallback;
 import com.ajah.http.err.NotFoundException;
 import com.ajah.http.err.UnexpectedResponseCode;
 
@@ -59,4 +61,12 @@ public class NoopCache implements HttpCache {
 		return Http.getBytes(uri);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Future<byte[]> getBytesAsync(final URI uri, final HttpCallback<byte[]> callback) {
+		return Http.getBytesAsync(uri, callback);
+	}
+
 }
@@ -0,0 +1,176 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.http;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.http.HostLimitedExecutor;
+
+/**
+ * Tests {@link HostLimitedExecutor}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class HostLimitedExecutorTest {
+
+	/**
+	 * No more than maxPerHost jobs for a host, whatever its case, should run
+	 * at once, and every job should eventually run.
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void limitPerHost() throws InterruptedException {
+		final ExecutorService pool = Executors.newFixedThreadPool(8);
+		final HostLimitedExecutor executor = new HostLimitedExecutor(pool, 2);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final AtomicInteger other = new AtomicInteger();
+		final CountDownLatch finished = new CountDownLatch(14);
+		for (int i = 0; i < 10; i++) {
+			executor.execute(i % 2 == 0 ? "example.com" : "EXAMPLE.com", new Runnable() {
+
+				@Override
+				public void run() {
+					final int now = running.incrementAndGet();
+					synchronized (maxRunning) {
+						maxRunning.set(Math.max(maxRunning.get(), now));
+					}
+					sleep(20);
+					running.decrementAndGet();
+					finished.countDown();
+				}
+			});
+		}
+		for (int i = 0; i < 4; i++) {
+			executor.execute("other.com", new Runnable() {
+
+				@Override
+				public void run() {
+					other.incrementAndGet();
+					finished.countDown();
+				}
+			});
+		}
+		Assert.assertTrue(finished.await(10, TimeUnit.SECONDS));
+		pool.shutdown();
+		Assert.assertEquals(2, maxRunning.get());
+		Assert.assertEquals(4, other.get());
+		Assert.assertEquals(0, executor.getPendingCount());
+	}
+
+	/**
+	 * A rejected job should not keep its slot.
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void rejectedReleasesSlot() throws InterruptedException {
+		final AtomicBoolean reject = new AtomicBoolean(true);
+		final HostLimitedExecutor executor = new HostLimitedExecutor(new Executor() {
+
+			@Override
+			public void execute(final Runnable command) {
+				if (reject.getAndSet(false)) {
+					throw new RejectedExecutionException("Full");
+				}
+				new Thread(command).start();
+			}
+		}, 1);
+		try {
+			executor.execute("example.com", new Runnable() {
+
+				@Override
+				public void run() {
+					Assert.fail("Rejected job ran");
+				}
+			});
+			Assert.fail("Expected the job to be rejected");
+		} catch (final RejectedExecutionException e) {
+			// Expected
+		}
+		final CountDownLatch ran = new CountDownLatch(1);
+		executor.execute("example.com", new Runnable() {
+
+			@Override
+			public void run() {
+				ran.countDown();
+			}
+		});
+		Assert.assertTrue(ran.await(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * A queued job the executor rejects should be cancelled rather than lost.
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void rejectedQueuedJobCancelled() throws InterruptedException {
+		final ExecutorService pool = Executors.newSingleThreadExecutor();
+		final HostLimitedExecutor executor = new HostLimitedExecutor(pool, 1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		executor.execute("example.com", new Runnable() {
+
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		final FutureTask<Void> queued = new FutureTask<>(new Runnable() {
+
+			@Override
+			public void run() {
+				// Never runs
+			}
+		}, null);
+		executor.execute("example.com", queued);
+		Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(1, executor.getPendingCount());
+		pool.shutdown();
+		release.countDown();
+		Assert.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+		Assert.assertTrue(queued.isCancelled());
+		Assert.assertEquals(0, executor.getPendingCount());
+	}
+
+	static void sleep(final long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
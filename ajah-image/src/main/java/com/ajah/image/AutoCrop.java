@@ -16,15 +16,15 @@
 
 package com.ajah.image;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.logging.Logger;
 
-import javax.imageio.ImageIO;
-
 /**
  * Automatically crops extraneous space from an image.
  * 
@@ -48,87 +48,74 @@ public class AutoCrop {
 	 *             If the image could not be read.
 	 */
 	public static BufferedImage autoCrop(final BufferedImage image, final int fuzziness) throws IOException {
-		final Color color = new Color(image.getRGB(0, 0));
-		boolean stop = false;
-		int cropTop = 0;
-		for (int y = 0; y < image.getHeight(); y++) {
-			for (int x = 0; x < image.getWidth(); x++) {
-				if (!ColorUtils.match(color, image.getRGB(x, y), fuzziness)) {
-					stop = true;
-					break;
-				}
-			}
-			if (stop) {
-				if (y > 0) {
-					cropTop = y - 1;
-				}
-				break;
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		final int[] pixels = Pixels.getRgb(image);
+		final int color = pixels[0];
+
+		final int top = TileExecutor.i.findFirst(0, height, new TileExecutor.IndexTest() {
+
+			@Override
+			public boolean test(final int y) {
+				return !rowMatches(pixels, y * width, width, color, fuzziness);
 			}
-		}
+		});
+		final int cropTop = top > 0 ? top - 1 : 0;
 
 		log.finest("Cropping top " + cropTop + " rows");
 
-		stop = false;
-		int cropBot = image.getHeight();
-		for (int y = (image.getHeight() - 1); y >= 0; y--) {
-			for (int x = 0; x < image.getWidth(); x++) {
-				if (!ColorUtils.match(color, image.getRGB(x, y), fuzziness)) {
-					stop = true;
-					break;
-				}
-			}
-			if (stop) {
-				if (y < image.getHeight()) {
-					cropBot = y + 1;
-				}
-				break;
+		final int bottom = TileExecutor.i.findLast(0, height, new TileExecutor.IndexTest() {
+
+			@Override
+			public boolean test(final int y) {
+				return !rowMatches(pixels, y * width, width, color, fuzziness);
 			}
-		}
+		});
+		final int cropBot = bottom >= 0 ? bottom + 1 : height;
 
-		log.finest("Cropping bottom " + (image.getHeight() - cropBot) + " rows");
+		log.finest("Cropping bottom " + (height - cropBot) + " rows");
 
-		stop = false;
-		int cropLeft = 0;
-		for (int x = 0; x < image.getWidth(); x++) {
-			for (int y = 0; y < image.getHeight(); y++) {
-				if (!ColorUtils.match(color, image.getRGB(x, y), fuzziness)) {
-					stop = true;
-					break;
-				}
-			}
-			if (stop) {
-				if (x > 0) {
-					cropLeft = x - 1;
-				}
-				break;
+		// Only the rows left after cropping the top and bottom need checking
+		// for the columns
+		final TileExecutor.IndexTest column = new TileExecutor.IndexTest() {
+
+			@Override
+			public boolean test(final int x) {
+				return !columnMatches(pixels, x, width, cropTop, cropBot, color, fuzziness);
 			}
-		}
+		};
+		final int left = TileExecutor.i.findFirst(0, width, column);
+		final int cropLeft = left > 0 ? left - 1 : 0;
 
 		log.finest("Cropping left " + cropLeft + " rows");
 
-		stop = false;
-		int cropRight = 0;
-		for (int x = (image.getWidth() - 1); x >= 0; x--) {
-			for (int y = 0; y < image.getHeight(); y++) {
-				if (!ColorUtils.match(color, image.getRGB(x, y), fuzziness)) {
-					stop = true;
-					break;
-				}
-			}
-			if (stop) {
-				if (x < image.getWidth()) {
-					cropRight = x + 1;
-				}
-				break;
-			}
-		}
+		final int right = TileExecutor.i.findLast(0, width, column);
+		final int cropRight = right >= 0 ? right + 1 : 0;
 
-		log.finest("Cropping right " + (image.getWidth() - cropRight) + " rows");
+		log.finest("Cropping right " + (width - cropRight) + " rows");
 
 		final BufferedImage cropped = image.getSubimage(cropLeft, cropTop, cropRight - cropLeft, cropBot - cropTop);
 		return cropped;
 	}
 
+	private static boolean rowMatches(final int[] pixels, final int offset, final int width, final int color, final int fuzziness) {
+		for (int i = offset; i < offset + width; i++) {
+			if (!ColorUtils.match(color, pixels[i], fuzziness)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean columnMatches(final int[] pixels, final int x, final int width, final int top, final int bottom, final int color, final int fuzziness) {
+		for (int i = top * width + x; i < bottom * width; i += width) {
+			if (!ColorUtils.match(color, pixels[i], fuzziness)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Crops an image based on the value of the top left pixel.
 	 * 
@@ -142,11 +129,56 @@ public class AutoCrop {
 	 *             If the image could not be read.
 	 */
 	public static byte[] autoCrop(final byte[] data, final int fuzziness) throws IOException {
-		final BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
-		final BufferedImage cropped = autoCrop(image, fuzziness);
-		final ByteArrayOutputStream out = new ByteArrayOutputStream();
-		ImageIO.write(cropped, "png", out);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+		autoCrop(new ByteArrayInputStream(data), out, fuzziness, ImageFormat.PNG, -1);
 		return out.toByteArray();
 	}
 
+	/**
+	 * Crops an image based on the value of the top left pixel, streaming it
+	 * through pooled readers and writers.
+	 * 
+	 * @see ImageCodec
+	 * @param in
+	 *            The image data. The stream is not closed.
+	 * @param out
+	 *            Where to write the cropped image. The stream is not closed.
+	 * @param fuzziness
+	 *            The fuzziness allowed for minor deviations (~5 is
+	 *            recommended).
+	 * @param format
+	 *            The format to write.
+	 * @param quality
+	 *            The compression quality from 0 to 1, or a negative number
+	 *            for the default.
+	 * @throws IOException
+	 *             If the image could not be read or written.
+	 */
+	public static void autoCrop(final InputStream in, final OutputStream out, final int fuzziness, final ImageFormat format, final float quality) throws IOException {
+		ImageCodec.write(autoCrop(ImageCodec.read(in), fuzziness), format, quality, out);
+	}
+
+	/**
+	 * Crops an image file based on the value of the top left pixel.
+	 * 
+	 * @param source
+	 *            The image file.
+	 * @param target
+	 *            The file to write the cropped image to. It is replaced if it
+	 *            exists, and may be the source.
+	 * @param fuzziness
+	 *            The fuzziness allowed for minor deviations (~5 is
+	 *            recommended).
+	 * @param format
+	 *            The format to write.
+	 * @param quality
+	 *            The compression quality from 0 to 1, or a negative number
+	 *            for the default.
+	 * @throws IOException
+	 *             If the image could not be read or written.
+	 */
+	public static void autoCrop(final Path source, final Path target, final int fuzziness, final ImageFormat format, final float quality) throws IOException {
+		ImageCodec.write(autoCrop(ImageCodec.read(source, 0, 0), fuzziness), format, quality, target);
+	}
+
 }
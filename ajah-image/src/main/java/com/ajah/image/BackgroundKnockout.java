@@ -20,7 +20,6 @@ import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 
-import com.jhlabs.image.BoxBlurFilter;
 import com.jhlabs.image.DespeckleFilter;
 import com.jhlabs.image.SmartBlurFilter;
 import com.jhlabs.image.ThresholdFilter;
@@ -33,9 +32,9 @@ import com.jhlabs.image.ThresholdFilter;
  */
 public class BackgroundKnockout {
 
-	private static final int UNKNOWN = 0;
-	private static final int KNOCK = 1;
-	private static final int SOURCE = 2;
+	private static final byte UNKNOWN = 0;
+	private static final byte KNOCK = 1;
+	private static final byte SOURCE = 2;
 
 	/**
 	 * Knocks out the background with a transparent (0 alpha) one.
@@ -69,55 +68,69 @@ public class BackgroundKnockout {
 		final ThresholdFilter filter = new ThresholdFilter();
 		final BufferedImage knocked = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
 		new DespeckleFilter().filter(image, knocked);
-		new BoxBlurFilter().filter(knocked, knocked);
+		ParallelFilters.boxBlur(knocked, knocked, 0, 0, 1);
 		new SmartBlurFilter().filter(knocked, knocked);
-		filter.filter(knocked, knocked);
+		ParallelFilters.filter(filter, knocked, knocked);
 		new SmartBlurFilter().filter(knocked, knocked);
-		filter.filter(knocked, knocked);
-		final int[][] mask = new int[image.getWidth()][image.getHeight()];
+		ParallelFilters.filter(filter, knocked, knocked);
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		final int[] pixels = Pixels.getArgb(knocked);
+		final byte[] mask = new byte[width * height];
 		// Initialize the mask
-		for (int x = 0; x < image.getWidth(); x++) {
-			for (int y = 0; y < image.getHeight(); y++) {
-				if (knocked.getRGB(x, y) != -1) {
-					mask[x][y] = SOURCE;
+		TileExecutor.i.forEachBand(height, new TileExecutor.Band() {
+
+			@Override
+			public void process(final int from, final int to) {
+				for (int i = from * width; i < to * width; i++) {
+					if (pixels[i] != -1) {
+						mask[i] = SOURCE;
+					}
 				}
 			}
-		}
+		});
 
-		long changed = 0;
-		do {
-			changed = 0;
-			for (int x = 0; x < image.getWidth(); x++) {
-				for (int y = 0; y < image.getHeight(); y++) {
-					if (mask[x][y] == UNKNOWN) {
-						for (int x2 = x - 1; x2 <= (x + 1); x2++) {
-							for (int y2 = y - 1; y2 <= (y + 1); y2++) {
-								if (x2 >= 0 && y2 >= 0 && x2 < mask.length && y2 < mask[x2].length) {
-									if (mask[x2][y2] == KNOCK || x2 == 0 || y2 == 0 || x2 == mask.length - 1 || y2 == mask[x2].length - 1) {
-										// Do we have a neighbor that is a
-										// knock, or are we on the edge?
-										mask[x][y] = KNOCK;
-										changed++;
-									}
-								}
-							}
-						}
+		// Flood fill from the edges. Anything within a pixel of the edge, or
+		// touching a knocked out pixel, is knocked out unless it's source.
+		final int[] queue = new int[mask.length];
+		int tail = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final int i = y * width + x;
+				if (mask[i] == UNKNOWN && (x <= 1 || y <= 1 || x >= width - 2 || y >= height - 2)) {
+					mask[i] = KNOCK;
+					queue[tail++] = i;
+				}
+			}
+		}
+		for (int head = 0; head < tail; head++) {
+			final int i = queue[head];
+			final int x = i % width;
+			final int y = i / width;
+			for (int y2 = Math.max(y - 1, 0); y2 <= Math.min(y + 1, height - 1); y2++) {
+				for (int x2 = Math.max(x - 1, 0); x2 <= Math.min(x + 1, width - 1); x2++) {
+					final int j = y2 * width + x2;
+					if (mask[j] == UNKNOWN) {
+						mask[j] = KNOCK;
+						queue[tail++] = j;
 					}
 				}
 			}
-			// Keep looping until we haven't changed anything.
-		} while (changed > 0);
+		}
 
 		// Write to the new image
-		for (int x = 0; x < image.getWidth(); x++) {
-			for (int y = 0; y < image.getHeight(); y++) {
-				if (mask[x][y] == KNOCK) {
-					knocked.setRGB(x, y, knockoutColor.getRGB());
-				} else {
-					knocked.setRGB(x, y, image.getRGB(x, y));
+		final int[] source = Pixels.getArgb(image);
+		final int knockoutRgb = knockoutColor.getRGB();
+		TileExecutor.i.forEachBand(height, new TileExecutor.Band() {
+
+			@Override
+			public void process(final int from, final int to) {
+				for (int i = from * width; i < to * width; i++) {
+					pixels[i] = mask[i] == KNOCK ? knockoutRgb : source[i];
 				}
 			}
-		}
+		});
+		Pixels.setArgb(knocked, pixels);
 		return knocked;
 	}
 
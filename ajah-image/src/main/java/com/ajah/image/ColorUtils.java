@@ -63,9 +63,43 @@ public class ColorUtils {
 	 *         otherwise false.
 	 */
 	public static boolean match(final Color color, final int rgb, final int fuzzy) {
-		final Color test = new Color(rgb, true);
-		final int distance = getMaxDistance(color, test);
-		return distance < fuzzy;
+		return match(color.getRGB(), rgb, fuzzy);
+	}
+
+	/**
+	 * Returns the largest absolute difference between the red, green and blue
+	 * values of two packed RGB values. Alpha is ignored.
+	 * 
+	 * @param first
+	 *            The first RGB value to test.
+	 * @param second
+	 *            The second RGB value to test.
+	 * @return The largest absolute difference between the red, green and blue
+	 *         values, will be a value between 0 and 255.
+	 */
+	public static int getMaxDistance(final int first, final int second) {
+		final int red = Math.abs(((first >> 16) & 0xff) - ((second >> 16) & 0xff));
+		final int green = Math.abs(((first >> 8) & 0xff) - ((second >> 8) & 0xff));
+		final int blue = Math.abs((first & 0xff) - (second & 0xff));
+		return Math.max(red, Math.max(green, blue));
+	}
+
+	/**
+	 * Determines if two packed RGB values are within a certain allowed
+	 * distance of each other, without allocating {@link Color}s.
+	 * 
+	 * @param rgb
+	 *            The RGB value to match against.
+	 * @param test
+	 *            The RGB value to test.
+	 * @param fuzzy
+	 *            The fuzziness of the match, i.e. the largest allowed
+	 *            {@link #getMaxDistance(int, int)}.
+	 * @return true if the two values are within the fuzziness allowance,
+	 *         otherwise false.
+	 */
+	public static boolean match(final int rgb, final int test, final int fuzzy) {
+		return getMaxDistance(rgb, test) < fuzzy;
 	}
 
 }
@@ -0,0 +1,217 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import lombok.Getter;
+import lombok.extern.java.Log;
+
+import com.ajah.util.AjahUtils;
+import com.ajah.util.data.BlobStore;
+import com.ajah.util.data.HashUtils;
+
+/**
+ * Produces resized and cropped derivatives of images and caches them by
+ * content, so each derivative is only generated once. The cache key is a hash
+ * of the source image's hash, the {@link DerivativeSpec} and the quality, if
+ * one is set, and derivatives are kept in a local {@link BlobStore}
+ * (typically a {@link com.ajah.util.io.file.FileBlobStore}) and optionally a
+ * shared remote one (such as an S3BlobStore), which is checked before
+ * generating. Requests
+ * for a derivative that is already being generated wait for that result
+ * instead of generating it again.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Log
+public class DerivativeService {
+
+	private final BlobStore local;
+	private BlobStore remote;
+	private float quality = -1;
+	private final ConcurrentMap<String, FutureTask<byte[]>> pending = new ConcurrentHashMap<>();
+
+	@Getter
+	private final AtomicLong generated = new AtomicLong();
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param local
+	 *            The store derivatives are cached in, required.
+	 */
+	public DerivativeService(final BlobStore local) {
+		AjahUtils.requireParam(local, "local");
+		this.local = local;
+	}
+
+	/**
+	 * Sets a second, usually shared, store that is checked when a derivative
+	 * is not in the local store, and that new derivatives are also written to.
+	 * 
+	 * @param remote
+	 *            The remote store, may be null.
+	 */
+	public void setRemote(final BlobStore remote) {
+		this.remote = remote;
+	}
+
+	/**
+	 * Sets the compression quality derivatives are encoded with, for formats
+	 * that have one. Derivatives cached at another quality are not reused.
+	 * 
+	 * @param quality
+	 *            The quality from 0 to 1, or a negative number for the
+	 *            writer's default, which is the default.
+	 */
+	public void setQuality(final float quality) {
+		this.quality = quality;
+	}
+
+	/**
+	 * Returns a derivative of an image, generating it if it is not cached.
+	 * 
+	 * @param source
+	 *            The source image data, required.
+	 * @param spec
+	 *            The derivative to produce, required.
+	 * @return The encoded derivative.
+	 * @throws IOException
+	 *             If the source could not be decoded, or the derivative could
+	 *             not be encoded or stored.
+	 */
+	public byte[] get(final byte[] source, final DerivativeSpec spec) throws IOException {
+		AjahUtils.requireParam(source, "source");
+		return get(HashUtils.sha1Hex(source), new Callable<byte[]>() {
+
+			@Override
+			public byte[] call() {
+				return source;
+			}
+		}, spec);
+	}
+
+	/**
+	 * Returns a derivative of an image, generating it if it is not cached.
+	 * The source is only loaded if the derivative has to be generated.
+	 * 
+	 * @param sourceHash
+	 *            A hash of the source image, such as its SHA-1, required.
+	 * @param source
+	 *            Loads the source image data, required.
+	 * @param spec
+	 *            The derivative to produce, required.
+	 * @return The encoded derivative.
+	 * @throws IOException
+	 *             If the source could not be loaded or decoded, or the
+	 *             derivative could not be encoded or stored.
+	 */
+	public byte[] get(final String sourceHash, final Callable<byte[]> source, final DerivativeSpec spec) throws IOException {
+		AjahUtils.requireParam(sourceHash, "sourceHash");
+		AjahUtils.requireParam(source, "source");
+		AjahUtils.requireParam(spec, "spec");
+		// Read once so the key matches the quality the derivative is encoded at
+		final float encodeQuality = this.quality;
+		final String key = HashUtils.sha1Hex(sourceHash + "/" + spec.getKey() + (encodeQuality < 0 ? "" : "/q" + encodeQuality));
+		final byte[] cached = this.local.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		final FutureTask<byte[]> task = new FutureTask<>(new Callable<byte[]>() {
+
+			@Override
+			public byte[] call() throws Exception {
+				return load(key, source, spec, encodeQuality);
+			}
+		});
+		final FutureTask<byte[]> existing = this.pending.putIfAbsent(key, task);
+		if (existing == null) {
+			try {
+				task.run();
+			} finally {
+				this.pending.remove(key, task);
+			}
+		}
+		try {
+			return (existing == null ? task : existing).get();
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+
+	private byte[] load(final String key, final Callable<byte[]> source, final DerivativeSpec spec, final float encodeQuality) throws Exception {
+		// Another request may have just finished generating it
+		final byte[] cached = this.local.get(key);
+		if (cached != null) {
+			return cached;
+		}
+		if (this.remote != null) {
+			try {
+				final byte[] data = this.remote.get(key);
+				if (data != null) {
+					this.local.put(key, data);
+					return data;
+				}
+			} catch (final IOException e) {
+				log.log(Level.WARNING, "Remote derivative store failed, generating " + key, e);
+			}
+		}
+		final byte[] data = generate(source.call(), spec, encodeQuality);
+		this.generated.incrementAndGet();
+		this.local.put(key, data);
+		if (this.remote != null) {
+			try {
+				this.remote.put(key, data);
+			} catch (final IOException e) {
+				log.log(Level.WARNING, "Could not store derivative " + key + " remotely", e);
+			}
+		}
+		return data;
+	}
+
+	private static byte[] generate(final byte[] source, final DerivativeSpec spec, final float encodeQuality) throws IOException {
+		// Subsampling while decoding saves most of the work for large sources
+		final BufferedImage image = ImageCodec.read(new ByteArrayInputStream(source), spec.getWidth(), spec.getHeight());
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageCodec.write(ImageScaler.derive(image, spec), spec.getFormat(), encodeQuality, out);
+		return out.toByteArray();
+	}
+
+}
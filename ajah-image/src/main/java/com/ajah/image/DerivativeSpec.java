@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.image;
+
+import lombok.Data;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * Describes a derivative of an image: the box it must fit, whether it is
+ * cropped to fill that box, and the format it is encoded in.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Data
+public class DerivativeSpec {
+
+	private final int width;
+	private final int height;
+	private final boolean crop;
+	private final ImageFormat format;
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param width
+	 *            The maximum width.
+	 * @param height
+	 *            The maximum height.
+	 * @param crop
+	 *            If true, the image is scaled to cover the box and the excess
+	 *            is cropped from the center, so the result is exactly this
+	 *            size. If false, it is scaled to fit within the box.
+	 * @param format
+	 *            The format to encode the derivative in, required.
+	 */
+	public DerivativeSpec(final int width, final int height, final boolean crop, final ImageFormat format) {
+		AjahUtils.requireParam(width, "width", 1);
+		AjahUtils.requireParam(height, "height", 1);
+		AjahUtils.requireParam(format, "format");
+		this.width = width;
+		this.height = height;
+		this.crop = crop;
+		this.format = format;
+	}
+
+	/**
+	 * Returns a short string that identifies this spec, for use in cache
+	 * keys.
+	 * 
+	 * @return The key, such as "200x150c.jpg".
+	 */
+	public String getKey() {
+		return this.width + "x" + this.height + (this.crop ? "c" : "") + "." + this.format.getSuffix();
+	}
+
+}
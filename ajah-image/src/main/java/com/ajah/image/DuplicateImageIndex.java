@@ -0,0 +1,125 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.image;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.ajah.util.AjahUtils;
+import com.ajah.util.data.HammingBkTree;
+
+/**
+ * Finds previously seen images that look the same as a new one, even if they
+ * have been resized or recompressed, by keeping their
+ * {@link ImageHash#pHash(BufferedImage)}es in a {@link HammingBkTree}. Lookups
+ * may run concurrently with each other.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ * @param <T>
+ *            The type of value (such as an id) stored with each image.
+ */
+public class DuplicateImageIndex<T> {
+
+	private final HammingBkTree<T> tree = new HammingBkTree<>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final int maxDistance;
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param maxDistance
+	 *            The greatest number of differing hash bits for two images to
+	 *            be considered duplicates. Around 8 works well for pHash.
+	 */
+	public DuplicateImageIndex(final int maxDistance) {
+		AjahUtils.requireParam(maxDistance, "maxDistance", 0);
+		this.maxDistance = maxDistance;
+	}
+
+	/**
+	 * Adds an image by its hash.
+	 * 
+	 * @param hash
+	 *            The image's {@link ImageHash#pHash(BufferedImage)}.
+	 * @param value
+	 *            The value to return when it is matched, required.
+	 */
+	public void add(final long hash, final T value) {
+		this.lock.writeLock().lock();
+		try {
+			this.tree.add(hash, value);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds images that are duplicates of one with a given hash.
+	 * 
+	 * @param hash
+	 *            The image's {@link ImageHash#pHash(BufferedImage)}.
+	 * @return The values of matching images, closest first. May be empty but
+	 *         not null.
+	 */
+	public List<T> find(final long hash) {
+		this.lock.readLock().lock();
+		try {
+			return this.tree.find(hash, this.maxDistance);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Finds duplicates of an image and then adds it, as at ingest.
+	 * 
+	 * @param image
+	 *            The image, required.
+	 * @param value
+	 *            The value to store with it, required.
+	 * @return The values of images it duplicates, closest first. May be empty
+	 *         but not null.
+	 */
+	public List<T> findAndAdd(final BufferedImage image, final T value) {
+		final long hash = ImageHash.pHash(image);
+		this.lock.writeLock().lock();
+		try {
+			final List<T> duplicates = this.tree.find(hash, this.maxDistance);
+			this.tree.add(hash, value);
+			return duplicates;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of images in the index.
+	 * 
+	 * @return The number of images in the index.
+	 */
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.tree.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+}
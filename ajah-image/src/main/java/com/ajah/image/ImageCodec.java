@@ -0,0 +1,318 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.image;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * Decodes and encodes images through pooled {@link ImageReader}s and
+ * {@link ImageWriter}s, one pool per format, instead of looking up and
+ * creating new ones for every image as {@link ImageIO#read(InputStream)} and
+ * {@link ImageIO#write(java.awt.image.RenderedImage, String, OutputStream)}
+ * do. Streams are wrapped without a disk cache, and decoding can subsample
+ * large sources when only a smaller image is needed. Formats other than
+ * {@link ImageFormat}'s are still read, through whichever reader ImageIO
+ * finds, but their readers are not pooled.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class ImageCodec {
+
+	private static final int MAX_IDLE = 16;
+
+	private static final Map<ImageFormat, Queue<ImageReader>> readers = new ConcurrentHashMap<>();
+	private static final Map<ImageFormat, Queue<ImageWriter>> writers = new ConcurrentHashMap<>();
+
+	static {
+		for (final ImageFormat format : ImageFormat.values()) {
+			readers.put(format, new ConcurrentLinkedQueue<ImageReader>());
+			writers.put(format, new ConcurrentLinkedQueue<ImageWriter>());
+		}
+	}
+
+	/**
+	 * Decodes an image.
+	 * 
+	 * @param in
+	 *            The image data, required. The stream is not closed.
+	 * @return The image.
+	 * @throws IOException
+	 *             If the image could not be decoded.
+	 */
+	public static BufferedImage read(final InputStream in) throws IOException {
+		return read(in, 0, 0);
+	}
+
+	/**
+	 * Decodes an image, skipping rows and columns if the image is much larger
+	 * than needed. The result is at least twice the requested size in both
+	 * dimensions (or the full image), so it can still be scaled down smoothly
+	 * afterwards.
+	 * 
+	 * @param in
+	 *            The image data, required. The stream is not closed.
+	 * @param width
+	 *            The width that will be needed, or 0 to decode every pixel.
+	 * @param height
+	 *            The height that will be needed, or 0 to decode every pixel.
+	 * @return The image.
+	 * @throws IOException
+	 *             If the image could not be decoded.
+	 */
+	public static BufferedImage read(final InputStream in, final int width, final int height) throws IOException {
+		AjahUtils.requireParam(in, "in");
+		try (final ImageInputStream iis = new MemoryCacheImageInputStream(in)) {
+			return read(iis, width, height);
+		}
+	}
+
+	/**
+	 * Decodes an image file, optionally subsampling it as
+	 * {@link #read(InputStream, int, int)} does.
+	 * 
+	 * @param path
+	 *            The image file, required.
+	 * @param width
+	 *            The width that will be needed, or 0 to decode every pixel.
+	 * @param height
+	 *            The height that will be needed, or 0 to decode every pixel.
+	 * @return The image.
+	 * @throws IOException
+	 *             If the file could not be read or decoded.
+	 */
+	public static BufferedImage read(final Path path, final int width, final int height) throws IOException {
+		AjahUtils.requireParam(path, "path");
+		try (final ImageInputStream iis = new FileImageInputStream(path.toFile())) {
+			return read(iis, width, height);
+		}
+	}
+
+	/**
+	 * Encodes an image.
+	 * 
+	 * @param image
+	 *            The image, required. Transparency is dropped for formats
+	 *            that do not support it.
+	 * @param format
+	 *            The format, required.
+	 * @param quality
+	 *            The compression quality from 0 to 1, or a negative number
+	 *            for the writer's default. Ignored by formats without a
+	 *            quality setting.
+	 * @param out
+	 *            Where to write the image, required. The stream is not
+	 *            closed.
+	 * @throws IOException
+	 *             If the image could not be encoded or written.
+	 */
+	public static void write(final BufferedImage image, final ImageFormat format, final float quality, final OutputStream out) throws IOException {
+		AjahUtils.requireParam(image, "image");
+		AjahUtils.requireParam(format, "format");
+		AjahUtils.requireParam(out, "out");
+		final ImageWriter writer = borrowWriter(format);
+		boolean ok = false;
+		try (final ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+			writer.setOutput(ios);
+			final ImageWriteParam param = writer.getDefaultWriteParam();
+			if (quality >= 0 && param.canWriteCompressed()) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				if (param.getCompressionType() == null && param.getCompressionTypes() != null) {
+					param.setCompressionType(param.getCompressionTypes()[0]);
+				}
+				param.setCompressionQuality(quality);
+			}
+			writer.write(null, new IIOImage(format == ImageFormat.JPG ? toOpaque(image) : image, null, null), param);
+			ok = true;
+		} finally {
+			release(writers.get(format), writer, ok);
+		}
+	}
+
+	/**
+	 * Encodes an image to a file.
+	 * 
+	 * @see #write(BufferedImage, ImageFormat, float, OutputStream)
+	 * @param image
+	 *            The image, required.
+	 * @param format
+	 *            The format, required.
+	 * @param quality
+	 *            The compression quality from 0 to 1, or a negative number
+	 *            for the writer's default.
+	 * @param path
+	 *            The file to write, required. It is replaced if it exists.
+	 * @throws IOException
+	 *             If the image could not be encoded or written.
+	 */
+	public static void write(final BufferedImage image, final ImageFormat format, final float quality, final Path path) throws IOException {
+		AjahUtils.requireParam(path, "path");
+		try (final OutputStream out = Files.newOutputStream(path)) {
+			write(image, format, quality, out);
+		}
+	}
+
+	private static BufferedImage read(final ImageInputStream iis, final int width, final int height) throws IOException {
+		final ImageFormat format = detect(iis);
+		if (format == null) {
+			final Iterator<ImageReader> found = ImageIO.getImageReaders(iis);
+			if (!found.hasNext()) {
+				throw new IOException("Unsupported image format");
+			}
+			final ImageReader reader = found.next();
+			try {
+				return read(reader, iis, width, height);
+			} finally {
+				reader.dispose();
+			}
+		}
+		final ImageReader reader = borrowReader(format);
+		boolean ok = false;
+		try {
+			final BufferedImage image = read(reader, iis, width, height);
+			ok = true;
+			return image;
+		} finally {
+			release(readers.get(format), reader, ok);
+		}
+	}
+
+	private static BufferedImage read(final ImageReader reader, final ImageInputStream iis, final int width, final int height) throws IOException {
+		reader.setInput(iis, true, true);
+		final ImageReadParam param = reader.getDefaultReadParam();
+		if (width > 0 && height > 0) {
+			final int factor = Math.min(reader.getWidth(0) / (width * 2), reader.getHeight(0) / (height * 2));
+			if (factor > 1) {
+				param.setSourceSubsampling(factor, factor, 0, 0);
+			}
+		}
+		return reader.read(0, param);
+	}
+
+	/**
+	 * Identifies the format from the first bytes, so no readers have to be
+	 * created to find out.
+	 * 
+	 * @return The format, or null if it isn't one of ours.
+	 */
+	private static ImageFormat detect(final ImageInputStream iis) throws IOException {
+		final byte[] magic = new byte[4];
+		iis.mark();
+		try {
+			if (iis.read(magic) < magic.length) {
+				return null;
+			}
+		} finally {
+			iis.reset();
+		}
+		if ((magic[0] & 0xff) == 0x89 && magic[1] == 'P' && magic[2] == 'N' && magic[3] == 'G') {
+			return ImageFormat.PNG;
+		}
+		if (magic[0] == 'G' && magic[1] == 'I' && magic[2] == 'F' && magic[3] == '8') {
+			return ImageFormat.GIF;
+		}
+		if ((magic[0] & 0xff) == 0xff && (magic[1] & 0xff) == 0xd8) {
+			return ImageFormat.JPG;
+		}
+		return null;
+	}
+
+	private static ImageReader borrowReader(final ImageFormat format) throws IOException {
+		final ImageReader reader = readers.get(format).poll();
+		if (reader != null) {
+			return reader;
+		}
+		final Iterator<ImageReader> found = ImageIO.getImageReadersBySuffix(format.getSuffix());
+		if (!found.hasNext()) {
+			throw new IOException("No reader for " + format);
+		}
+		return found.next();
+	}
+
+	private static ImageWriter borrowWriter(final ImageFormat format) throws IOException {
+		final ImageWriter writer = writers.get(format).poll();
+		if (writer != null) {
+			return writer;
+		}
+		final Iterator<ImageWriter> found = ImageIO.getImageWritersBySuffix(format.getSuffix());
+		if (!found.hasNext()) {
+			throw new IOException("No writer for " + format);
+		}
+		return found.next();
+	}
+
+	/**
+	 * Returns a reader to its pool, or disposes of it if it failed or the
+	 * pool is full.
+	 */
+	private static void release(final Queue<ImageReader> pool, final ImageReader reader, final boolean ok) {
+		reader.reset();
+		if (ok && pool.size() < MAX_IDLE) {
+			pool.offer(reader);
+		} else {
+			reader.dispose();
+		}
+	}
+
+	private static void release(final Queue<ImageWriter> pool, final ImageWriter writer, final boolean ok) {
+		writer.reset();
+		if (ok && pool.size() < MAX_IDLE) {
+			pool.offer(writer);
+		} else {
+			writer.dispose();
+		}
+	}
+
+	private static BufferedImage toOpaque(final BufferedImage image) {
+		if (!image.getColorModel().hasAlpha()) {
+			return image;
+		}
+		final BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = opaque.createGraphics();
+		try {
+			g.drawImage(image, 0, 0, null);
+		} finally {
+			g.dispose();
+		}
+		return opaque;
+	}
+
+}
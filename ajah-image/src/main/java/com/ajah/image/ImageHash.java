@@ -0,0 +1,142 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.image;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * Perceptual hashes of images. Unlike a hash of the file, these change little
+ * when an image is resized or recompressed, so near-duplicates can be found by
+ * comparing hashes with {@link #distance(long, long)}.
+ * 
+ * Both hashes shrink the image with {@link ImageScaler} and then work on the
+ * raster's int array.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class ImageHash {
+
+	private static final int DCT_SIZE = 32;
+	private static final double[][] COSINES = new double[8][DCT_SIZE];
+
+	static {
+		for (int u = 0; u < COSINES.length; u++) {
+			for (int x = 0; x < DCT_SIZE; x++) {
+				COSINES[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * DCT_SIZE));
+			}
+		}
+	}
+
+	/**
+	 * Computes a difference hash. The image is shrunk to 9x8 and each bit
+	 * records whether a pixel is brighter than its right neighbor. This is
+	 * very cheap and good at finding resized copies.
+	 * 
+	 * @param image
+	 *            The image, required.
+	 * @return The hash.
+	 */
+	public static long dHash(final BufferedImage image) {
+		AjahUtils.requireParam(image, "image");
+		final int[] gray = gray(ImageScaler.scale(image, 9, 8, true));
+		long hash = 0;
+		for (int y = 0; y < 8; y++) {
+			for (int x = 0; x < 8; x++) {
+				hash <<= 1;
+				if (gray[y * 9 + x] > gray[y * 9 + x + 1]) {
+					hash |= 1;
+				}
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Computes a DCT hash. The image is shrunk to 32x32, the lowest 8x8
+	 * frequencies are taken from its discrete cosine transform, and each bit
+	 * records whether a frequency is above the median of all but the first,
+	 * which is the average and would skew it. This holds up better than {@link #dHash(BufferedImage)} to
+	 * recompression and small edits.
+	 * 
+	 * @param image
+	 *            The image, required.
+	 * @return The hash.
+	 */
+	public static long pHash(final BufferedImage image) {
+		AjahUtils.requireParam(image, "image");
+		final int[] gray = gray(ImageScaler.scale(image, DCT_SIZE, DCT_SIZE, true));
+		// Rows first, keeping only the frequencies we need
+		final double[][] rows = new double[DCT_SIZE][COSINES.length];
+		for (int y = 0; y < DCT_SIZE; y++) {
+			for (int u = 0; u < COSINES.length; u++) {
+				double sum = 0;
+				for (int x = 0; x < DCT_SIZE; x++) {
+					sum += COSINES[u][x] * gray[y * DCT_SIZE + x];
+				}
+				rows[y][u] = sum;
+			}
+		}
+		final double[] coefficients = new double[64];
+		for (int v = 0; v < COSINES.length; v++) {
+			for (int u = 0; u < COSINES.length; u++) {
+				double sum = 0;
+				for (int y = 0; y < DCT_SIZE; y++) {
+					sum += COSINES[v][y] * rows[y][u];
+				}
+				coefficients[v * 8 + u] = sum;
+			}
+		}
+		final double[] sorted = Arrays.copyOfRange(coefficients, 1, coefficients.length);
+		Arrays.sort(sorted);
+		final double median = sorted[sorted.length / 2];
+		long hash = 0;
+		for (final double coefficient : coefficients) {
+			hash <<= 1;
+			if (coefficient > median) {
+				hash |= 1;
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the number of bits that differ between two hashes.
+	 * 
+	 * @param first
+	 *            The first hash.
+	 * @param second
+	 *            The second hash.
+	 * @return The Hamming distance, from 0 to 64.
+	 */
+	public static int distance(final long first, final long second) {
+		return Long.bitCount(first ^ second);
+	}
+
+	private static int[] gray(final BufferedImage image) {
+		final int[] pixels = Pixels.getRgb(image);
+		final int[] gray = new int[pixels.length];
+		for (int i = 0; i < pixels.length; i++) {
+			final int rgb = pixels[i];
+			gray[i] = (((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 + (rgb & 0xff) * 114) / 1000;
+		}
+		return gray;
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.image;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * Scales images down with good quality at low cost. Rather than one bicubic
+ * pass over a large image, which is slow, or one bilinear pass, which skips
+ * most of the source pixels and aliases badly, the image is halved with
+ * bilinear passes until it is within a factor of two of the target and then
+ * scaled the rest of the way with a bicubic pass.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class ImageScaler {
+
+	/**
+	 * Scales an image to exactly the given size.
+	 * 
+	 * @param image
+	 *            The image to scale, required.
+	 * @param width
+	 *            The target width.
+	 * @param height
+	 *            The target height.
+	 * @param opaque
+	 *            If true the result has no alpha channel, as JPEG requires.
+	 * @return The scaled image.
+	 */
+	public static BufferedImage scale(final BufferedImage image, final int width, final int height, final boolean opaque) {
+		AjahUtils.requireParam(image, "image");
+		AjahUtils.requireParam(width, "width", 1);
+		AjahUtils.requireParam(height, "height", 1);
+		final int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+		BufferedImage current = image;
+		int currentWidth = image.getWidth();
+		int currentHeight = image.getHeight();
+		while (currentWidth / 2 >= width && currentHeight / 2 >= height) {
+			currentWidth /= 2;
+			currentHeight /= 2;
+			current = draw(current, currentWidth, currentHeight, type, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		}
+		if (current != image && currentWidth == width && currentHeight == height) {
+			return current;
+		}
+		return draw(current, width, height, type, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+	}
+
+	/**
+	 * Produces a derivative of an image according to a spec. Images are only
+	 * ever scaled down; one smaller than the spec keeps its size, though it
+	 * is still cropped to the spec's aspect ratio if the spec crops.
+	 * 
+	 * @param image
+	 *            The source image, required.
+	 * @param spec
+	 *            The spec, required.
+	 * @return The derivative image.
+	 */
+	public static BufferedImage derive(final BufferedImage image, final DerivativeSpec spec) {
+		AjahUtils.requireParam(image, "image");
+		AjahUtils.requireParam(spec, "spec");
+		final boolean opaque = spec.getFormat() == ImageFormat.JPG;
+		final double widthRatio = (double) spec.getWidth() / image.getWidth();
+		final double heightRatio = (double) spec.getHeight() / image.getHeight();
+		if (!spec.isCrop()) {
+			final double ratio = Math.min(1, Math.min(widthRatio, heightRatio));
+			return scale(image, Math.max(1, (int) Math.round(image.getWidth() * ratio)), Math.max(1, (int) Math.round(image.getHeight() * ratio)), opaque);
+		}
+		// Crop the source to the target's aspect ratio first, so only the
+		// pixels we keep are scaled
+		final double ratio = Math.max(widthRatio, heightRatio);
+		final int cropWidth = Math.min(image.getWidth(), Math.max(1, (int) Math.round(spec.getWidth() / ratio)));
+		final int cropHeight = Math.min(image.getHeight(), Math.max(1, (int) Math.round(spec.getHeight() / ratio)));
+		final BufferedImage cropped = image.getSubimage((image.getWidth() - cropWidth) / 2, (image.getHeight() - cropHeight) / 2, cropWidth, cropHeight);
+		if (ratio >= 1) {
+			return scale(cropped, cropWidth, cropHeight, opaque);
+		}
+		return scale(cropped, spec.getWidth(), spec.getHeight(), opaque);
+	}
+
+	private static BufferedImage draw(final BufferedImage image, final int width, final int height, final int type, final Object interpolation) {
+		final BufferedImage scaled = new BufferedImage(width, height, type);
+		final Graphics2D g = scaled.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return scaled;
+	}
+
+}
@@ -17,15 +17,18 @@ package com.ajah.image;
  */
 
 import java.awt.Color;
-import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.Iterator;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
+import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 import com.ajah.util.AjahUtils;
 
@@ -58,7 +61,8 @@ public class ImageUtils {
 	}
 
 	/**
-	 * Extracts some simple information about an image.
+	 * Extracts some simple information about an image. Only the headers are
+	 * read; the image is not decoded.
 	 * 
 	 * @param data
 	 *            The image data.
@@ -68,21 +72,69 @@ public class ImageUtils {
 	 */
 	public static ImageInfo getInfo(final byte[] data) throws IOException {
 		AjahUtils.requireParam(data, "data");
-		final BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
-		if (image == null) {
-			throw new IllegalArgumentException("An image could not be constructed from the data");
+		final ImageInfo info = getInfo(new ByteArrayInputStream(data));
+		info.setSize(data.length);
+		return info;
+	}
+
+	/**
+	 * Extracts some simple information about an image from a stream, reading
+	 * only as far as the headers. Nothing is spooled to disk, so this is
+	 * suitable for checking large uploads before accepting them.
+	 * 
+	 * @param in
+	 *            The image data. The stream is not closed.
+	 * @return The image info bean. The size is not known.
+	 * @throws IOException
+	 *             If the image could not be analyzed.
+	 */
+	public static ImageInfo getInfo(final InputStream in) throws IOException {
+		AjahUtils.requireParam(in, "in");
+		try (final ImageInputStream iis = new MemoryCacheImageInputStream(in)) {
+			return getInfo(iis);
+		}
+	}
+
+	/**
+	 * Extracts some simple information about an image file, reading only its
+	 * headers.
+	 * 
+	 * @param path
+	 *            The image file.
+	 * @return The image info bean.
+	 * @throws IOException
+	 *             If the file could not be read or analyzed.
+	 */
+	public static ImageInfo getInfo(final Path path) throws IOException {
+		AjahUtils.requireParam(path, "path");
+		try (final ImageInputStream iis = new FileImageInputStream(path.toFile())) {
+			final ImageInfo info = getInfo(iis);
+			info.setSize(iis.length());
+			return info;
 		}
-		final ImageInfo info = new ImageInfo();
-		info.setHeight(image.getHeight());
-		info.setWidth(image.getWidth());
-		final ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(data));
+	}
+
+	private static ImageInfo getInfo(final ImageInputStream iis) throws IOException {
 		final Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
-		if (readers.hasNext()) {
-			info.setFormat(ImageFormat.from(readers.next().getFormatName()));
-		} else {
-			log.warning("No readers found for image");
+		if (!readers.hasNext()) {
+			throw new IllegalArgumentException("An image could not be constructed from the data");
+		}
+		final ImageReader reader = readers.next();
+		try {
+			reader.setInput(iis, true, true);
+			final ImageInfo info = new ImageInfo();
+			// These only read as far as the header (IHDR, logical screen
+			// descriptor, SOF marker)
+			info.setWidth(reader.getWidth(0));
+			info.setHeight(reader.getHeight(0));
+			info.setFormat(ImageFormat.from(reader.getFormatName()));
+			if (info.getFormat() == null) {
+				log.warning("Unsupported image format " + reader.getFormatName());
+			}
+			return info;
+		} finally {
+			reader.dispose();
 		}
-		return info;
 	}
 
 }
@@ -0,0 +1,184 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+
+import com.jhlabs.image.BoxBlurFilter;
+import com.jhlabs.image.PointFilter;
+
+/**
+ * Parallel versions of common filters, run in bands on a {@link TileExecutor}.
+ * Their output is identical to the equivalent serial JH Labs filter.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class ParallelFilters {
+
+	/**
+	 * Applies a per-pixel filter, such as a
+	 * {@link com.jhlabs.image.ThresholdFilter}, using
+	 * {@link TileExecutor#i}. The filter's
+	 * {@link PointFilter#filterRGB(int, int, int)} must be safe to call from
+	 * several threads, which is true of filters that only read their settings.
+	 * 
+	 * @param filter
+	 *            The filter.
+	 * @param src
+	 *            The source image.
+	 * @param dst
+	 *            The destination image, which may be the source. If null, a
+	 *            compatible image is created.
+	 * @return The destination image.
+	 */
+	public static BufferedImage filter(final PointFilter filter, final BufferedImage src, final BufferedImage dst) {
+		final int width = src.getWidth();
+		final int height = src.getHeight();
+		final BufferedImage out = dst == null ? createCompatible(src) : dst;
+		filter.setDimensions(width, height);
+		if (isIntRaster(src)) {
+			// Like PointFilter, work directly on the rows of int rasters
+			final WritableRaster srcRaster = src.getRaster();
+			final WritableRaster dstRaster = out.getRaster();
+			TileExecutor.i.forEachBand(height, new TileExecutor.Band() {
+
+				@Override
+				public void process(final int from, final int to) {
+					final int[] row = new int[width];
+					for (int y = from; y < to; y++) {
+						srcRaster.getDataElements(0, y, width, 1, row);
+						for (int x = 0; x < width; x++) {
+							row[x] = filter.filterRGB(x, y, row[x]);
+						}
+						dstRaster.setDataElements(0, y, width, 1, row);
+					}
+				}
+			});
+		} else {
+			final int[] pixels = src.getRGB(0, 0, width, height, null, 0, width);
+			TileExecutor.i.forEachBand(height, new TileExecutor.Band() {
+
+				@Override
+				public void process(final int from, final int to) {
+					for (int y = from; y < to; y++) {
+						for (int x = 0, i = y * width; x < width; x++, i++) {
+							pixels[i] = filter.filterRGB(x, y, pixels[i]);
+						}
+					}
+				}
+			});
+			out.setRGB(0, 0, width, height, pixels, 0, width);
+		}
+		return out;
+	}
+
+	/**
+	 * Blurs an image the same way as {@link BoxBlurFilter}, using
+	 * {@link TileExecutor#i}.
+	 * 
+	 * @param src
+	 *            The source image.
+	 * @param dst
+	 *            The destination image, which may be the source. If null, a
+	 *            compatible image is created.
+	 * @param hRadius
+	 *            The horizontal radius.
+	 * @param vRadius
+	 *            The vertical radius.
+	 * @param iterations
+	 *            The number of times to blur.
+	 * @return The destination image.
+	 */
+	public static BufferedImage boxBlur(final BufferedImage src, final BufferedImage dst, final int hRadius, final int vRadius, final int iterations) {
+		final int width = src.getWidth();
+		final int height = src.getHeight();
+		final BufferedImage out = dst == null ? createCompatible(src) : dst;
+		final int[] inPixels = new int[width * height];
+		final int[] outPixels = new int[width * height];
+		if (isIntRaster(src)) {
+			src.getRaster().getDataElements(0, 0, width, height, inPixels);
+		} else {
+			src.getRGB(0, 0, width, height, inPixels, 0, width);
+		}
+		for (int i = 0; i < iterations; i++) {
+			blur(inPixels, outPixels, width, height, hRadius);
+			blur(outPixels, inPixels, height, width, vRadius);
+		}
+		if (isIntRaster(out)) {
+			out.getRaster().setDataElements(0, 0, width, height, inPixels);
+		} else {
+			out.setRGB(0, 0, width, height, inPixels, 0, width);
+		}
+		return out;
+	}
+
+	/**
+	 * Blurs each row of <code>in</code> and writes it as a column of
+	 * <code>out</code>, as {@link BoxBlurFilter#blur(int[], int[], int, int, int)}
+	 * does, with the rows split into bands.
+	 */
+	private static void blur(final int[] in, final int[] out, final int width, final int height, final int radius) {
+		final int widthMinus1 = width - 1;
+		final int tableSize = 2 * radius + 1;
+		final int[] divide = new int[256 * tableSize];
+		for (int i = 0; i < divide.length; i++) {
+			divide[i] = i / tableSize;
+		}
+		TileExecutor.i.forEachBand(height, new TileExecutor.Band() {
+
+			@Override
+			public void process(final int from, final int to) {
+				for (int y = from; y < to; y++) {
+					final int inIndex = y * width;
+					int outIndex = y;
+					int ta = 0, tr = 0, tg = 0, tb = 0;
+					for (int i = -radius; i <= radius; i++) {
+						final int rgb = in[inIndex + Math.min(Math.max(i, 0), widthMinus1)];
+						ta += (rgb >> 24) & 0xff;
+						tr += (rgb >> 16) & 0xff;
+						tg += (rgb >> 8) & 0xff;
+						tb += rgb & 0xff;
+					}
+					for (int x = 0; x < width; x++) {
+						out[outIndex] = (divide[ta] << 24) | (divide[tr] << 16) | (divide[tg] << 8) | divide[tb];
+						final int i1 = Math.min(x + radius + 1, widthMinus1);
+						final int i2 = Math.max(x - radius, 0);
+						final int rgb1 = in[inIndex + i1];
+						final int rgb2 = in[inIndex + i2];
+						ta += ((rgb1 >> 24) & 0xff) - ((rgb2 >> 24) & 0xff);
+						tr += ((rgb1 & 0xff0000) - (rgb2 & 0xff0000)) >> 16;
+						tg += ((rgb1 & 0xff00) - (rgb2 & 0xff00)) >> 8;
+						tb += (rgb1 & 0xff) - (rgb2 & 0xff);
+						outIndex += height;
+					}
+				}
+			}
+		});
+	}
+
+	private static boolean isIntRaster(final BufferedImage image) {
+		return image.getType() == BufferedImage.TYPE_INT_ARGB || image.getType() == BufferedImage.TYPE_INT_RGB;
+	}
+
+	private static BufferedImage createCompatible(final BufferedImage src) {
+		final ColorModel colorModel = src.getColorModel();
+		return new BufferedImage(colorModel, colorModel.createCompatibleWritableRaster(src.getWidth(), src.getHeight()), colorModel.isAlphaPremultiplied(), null);
+	}
+
+}
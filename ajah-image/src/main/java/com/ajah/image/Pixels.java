@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Bulk access to an image's pixels as packed ARGB ints, one row after
+ * another, so kernels can work on an <code>int[]</code> instead of calling
+ * {@link BufferedImage#getRGB(int, int)} per pixel.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+final class Pixels {
+
+	private Pixels() {
+		// Utility class
+	}
+
+	/**
+	 * Returns the image's pixels. For an unshared
+	 * {@link BufferedImage#TYPE_INT_ARGB} image this is the backing array
+	 * itself, so writes to it change the image; otherwise it is a copy.
+	 * 
+	 * @param image
+	 *            The image.
+	 * @return The pixels, <code>width * height</code> long.
+	 */
+	static int[] getArgb(final BufferedImage image) {
+		final int[] backing = getBacking(image, BufferedImage.TYPE_INT_ARGB);
+		if (backing != null) {
+			return backing;
+		}
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+	/**
+	 * Returns the image's pixels for reading their color channels only. This
+	 * avoids a copy for {@link BufferedImage#TYPE_INT_RGB} images as well, at
+	 * the cost of the alpha bits being undefined.
+	 * 
+	 * @param image
+	 *            The image.
+	 * @return The pixels, <code>width * height</code> long, which must not be
+	 *         modified.
+	 */
+	static int[] getRgb(final BufferedImage image) {
+		final int[] backing = getBacking(image, image.getType() == BufferedImage.TYPE_INT_RGB ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		if (backing != null) {
+			return backing;
+		}
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+	/**
+	 * Writes pixels to an image, unless they are its backing array, in which
+	 * case they are already there.
+	 * 
+	 * @param image
+	 *            The image.
+	 * @param argb
+	 *            The pixels, <code>width * height</code> long.
+	 */
+	static void setArgb(final BufferedImage image, final int[] argb) {
+		if (argb != getBacking(image, BufferedImage.TYPE_INT_ARGB)) {
+			image.setRGB(0, 0, image.getWidth(), image.getHeight(), argb, 0, image.getWidth());
+		}
+	}
+
+	/**
+	 * Returns the backing array if it holds exactly this image's pixels in
+	 * row order, which is not the case for sub-images or padded rasters.
+	 */
+	private static int[] getBacking(final BufferedImage image, final int type) {
+		if (image.getType() != type) {
+			return null;
+		}
+		final WritableRaster raster = image.getRaster();
+		final DataBuffer buffer = raster.getDataBuffer();
+		if (!(buffer instanceof DataBufferInt) || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+			return null;
+		}
+		final SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+		if (buffer.getNumBanks() != 1 || buffer.getOffset() != 0 || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0 || sampleModel.getScanlineStride() != image.getWidth()) {
+			return null;
+		}
+		final int[] data = ((DataBufferInt) buffer).getData();
+		return data.length == image.getWidth() * image.getHeight() ? data : null;
+	}
+
+}
@@ -0,0 +1,190 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.image;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * Splits image work into bands of rows (or columns) and runs them on a
+ * {@link ForkJoinPool}. Every band covers its own range of indexes, so as long
+ * as a task only writes within its band the result is the same as running it
+ * serially.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class TileExecutor {
+
+	/**
+	 * Work done on one band.
+	 */
+	public interface Band {
+
+		/**
+		 * Processes a band.
+		 * 
+		 * @param from
+		 *            The first index, inclusive.
+		 * @param to
+		 *            The last index, exclusive.
+		 */
+		void process(int from, int to);
+
+	}
+
+	/**
+	 * A test applied to a single row or column.
+	 */
+	public interface IndexTest {
+
+		/**
+		 * Tests an index.
+		 * 
+		 * @param index
+		 *            The index to test.
+		 * @return true if the index is a match.
+		 */
+		boolean test(int index);
+
+	}
+
+	private class BandAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final Band band;
+
+		BandAction(final int from, final int to, final Band band) {
+			this.from = from;
+			this.to = to;
+			this.band = band;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= TileExecutor.this.bandSize) {
+				this.band.process(this.from, this.to);
+				return;
+			}
+			final int mid = (this.from + this.to) >>> 1;
+			invokeAll(new BandAction(this.from, mid, this.band), new BandAction(mid, this.to, this.band));
+		}
+
+	}
+
+	/**
+	 * A shared executor with a thread per processor.
+	 */
+	public static final TileExecutor i = new TileExecutor(Runtime.getRuntime().availableProcessors(), 32);
+
+	private final ForkJoinPool pool;
+	private final int bandSize;
+
+	/**
+	 * Creates an executor.
+	 * 
+	 * @param threads
+	 *            The number of threads.
+	 * @param bandSize
+	 *            The most rows a band is given. Fewer rows than this are
+	 *            processed on the calling thread.
+	 */
+	public TileExecutor(final int threads, final int bandSize) {
+		AjahUtils.requireParam(threads, "threads", 1);
+		AjahUtils.requireParam(bandSize, "bandSize", 1);
+		this.pool = new ForkJoinPool(threads);
+		this.bandSize = bandSize;
+	}
+
+	/**
+	 * Processes indexes 0 to count in parallel bands, returning when all of
+	 * them are done.
+	 * 
+	 * @param count
+	 *            The number of rows or columns.
+	 * @param band
+	 *            The work to do on each band.
+	 */
+	public void forEachBand(final int count, final Band band) {
+		if (count <= this.bandSize) {
+			band.process(0, count);
+		} else {
+			this.pool.invoke(new BandAction(0, count, band));
+		}
+	}
+
+	/**
+	 * Finds the lowest index that passes a test, the same one a serial scan
+	 * from the start would find. Bands past an index that has already been
+	 * found are skipped.
+	 * 
+	 * @param from
+	 *            The first index to test, inclusive.
+	 * @param to
+	 *            The last index to test, exclusive.
+	 * @param test
+	 *            The test.
+	 * @return The lowest matching index, or -1 if none match.
+	 */
+	public int findFirst(final int from, final int to, final IndexTest test) {
+		final AtomicInteger found = new AtomicInteger(Integer.MAX_VALUE);
+		forEachBand(to - from, new Band() {
+
+			@Override
+			public void process(final int bandFrom, final int bandTo) {
+				for (int j = bandFrom; j < bandTo && j < found.get(); j++) {
+					if (test.test(from + j)) {
+						for (int current = found.get(); j < current && !found.compareAndSet(current, j); current = found.get()) {
+							// Retry until we've lowered it or someone else has
+						}
+						return;
+					}
+				}
+			}
+		});
+		return found.get() == Integer.MAX_VALUE ? -1 : from + found.get();
+	}
+
+	/**
+	 * Finds the highest index that passes a test, the same one a serial scan
+	 * from the end would find.
+	 * 
+	 * @param from
+	 *            The first index to test, inclusive.
+	 * @param to
+	 *            The last index to test, exclusive.
+	 * @param test
+	 *            The test.
+	 * @return The highest matching index, or -1 if none match.
+	 */
+	public int findLast(final int from, final int to, final IndexTest test) {
+		final int found = findFirst(from, to, new IndexTest() {
+
+			@Override
+			public boolean test(final int index) {
+				return test.test(to - 1 - (index - from));
+			}
+		});
+		return found < 0 ? -1 : to - 1 - (found - from);
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.ajah.image.AutoCrop;
+import com.ajah.image.BackgroundKnockout;
+
+/**
+ * Tests {@link AutoCrop} and {@link BackgroundKnockout}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class AutoCropTest {
+
+	private static BufferedImage squareOnWhite(final int type) {
+		final BufferedImage image = new BufferedImage(200, 100, type);
+		final Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, 200, 100);
+		g.setColor(Color.BLACK);
+		g.fillRect(50, 20, 60, 40);
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Cropping should leave the square with a one pixel margin on the top and
+	 * left, as it always has.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void crop() throws IOException {
+		for (final int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR }) {
+			final BufferedImage cropped = AutoCrop.autoCrop(squareOnWhite(type), 5);
+			Assert.assertEquals(61, cropped.getWidth());
+			Assert.assertEquals(41, cropped.getHeight());
+			Assert.assertEquals(Color.BLACK.getRGB(), cropped.getRGB(1, 1));
+		}
+	}
+
+	/**
+	 * The background should be replaced and the square left alone.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void knockout() throws IOException {
+		final BufferedImage knocked = BackgroundKnockout.knockout(squareOnWhite(BufferedImage.TYPE_INT_RGB), Color.WHITE, Color.RED);
+		Assert.assertEquals(Color.RED.getRGB(), knocked.getRGB(0, 0));
+		Assert.assertEquals(Color.RED.getRGB(), knocked.getRGB(150, 80));
+		Assert.assertEquals(Color.BLACK.getRGB(), knocked.getRGB(80, 40));
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.ajah.image.DerivativeService;
+import com.ajah.image.DerivativeSpec;
+import com.ajah.image.ImageFormat;
+import com.ajah.image.ImageInfo;
+import com.ajah.image.ImageUtils;
+import com.ajah.util.io.file.FileBlobStore;
+
+/**
+ * Tests {@link DerivativeService}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class DerivativeServiceTest {
+
+	private static byte[] source() throws IOException {
+		final BufferedImage image = new BufferedImage(1600, 1200, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = image.createGraphics();
+		g.setColor(Color.BLUE);
+		g.fillRect(0, 0, 1600, 1200);
+		g.setColor(Color.YELLOW);
+		g.fillOval(400, 300, 800, 600);
+		g.dispose();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Derivatives should have the right size, and concurrent requests for the
+	 * same one should only generate it once.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void derive() throws Exception {
+		final File dir = Files.createTempDirectory("derivatives").toFile();
+		final DerivativeService service = new DerivativeService(new FileBlobStore(dir));
+		final byte[] source = source();
+
+		ImageInfo info = ImageUtils.getInfo(service.get(source, new DerivativeSpec(200, 200, false, ImageFormat.JPG)));
+		Assert.assertEquals(200, info.getWidth());
+		Assert.assertEquals(150, info.getHeight());
+		Assert.assertEquals(ImageFormat.JPG, info.getFormat());
+
+		info = ImageUtils.getInfo(service.get(source, new DerivativeSpec(100, 100, true, ImageFormat.PNG)));
+		Assert.assertEquals(100, info.getWidth());
+		Assert.assertEquals(100, info.getHeight());
+		Assert.assertEquals(2, service.getGenerated().get());
+
+		final DerivativeSpec spec = new DerivativeSpec(64, 64, true, ImageFormat.PNG);
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		final List<Future<byte[]>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(new Callable<byte[]>() {
+
+				@Override
+				public byte[] call() throws IOException {
+					return service.get(source, spec);
+				}
+			}));
+		}
+		for (final Future<byte[]> result : results) {
+			Assert.assertNotNull(result.get());
+		}
+		executor.shutdown();
+		Assert.assertEquals(3, service.getGenerated().get());
+
+		// Cached now
+		service.get(source, spec);
+		Assert.assertEquals(3, service.getGenerated().get());
+
+		// Not cached at another quality
+		service.setQuality(0.5f);
+		service.get(source, new DerivativeSpec(200, 200, false, ImageFormat.JPG));
+		Assert.assertEquals(4, service.getGenerated().get());
+	}
+
+}
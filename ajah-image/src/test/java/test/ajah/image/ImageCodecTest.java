@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.ajah.image.AutoCrop;
+import com.ajah.image.ImageCodec;
+import com.ajah.image.ImageFormat;
+
+/**
+ * Tests {@link ImageCodec}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class ImageCodecTest {
+
+	private static BufferedImage gradient() {
+		final BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = image.createGraphics();
+		for (int x = 0; x < 800; x++) {
+			g.setColor(new Color(x % 256, (x * 7) % 256, 128));
+			g.drawLine(x, 0, x, 599);
+		}
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Images should round trip through each format, and large sources should
+	 * be subsampled when a small result is wanted.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void roundTrip() throws IOException {
+		for (final ImageFormat format : ImageFormat.values()) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageCodec.write(gradient(), format, -1, out);
+			BufferedImage image = ImageCodec.read(new ByteArrayInputStream(out.toByteArray()));
+			Assert.assertEquals(800, image.getWidth());
+			image = ImageCodec.read(new ByteArrayInputStream(out.toByteArray()), 100, 100);
+			Assert.assertEquals(267, image.getWidth());
+			Assert.assertEquals(200, image.getHeight());
+		}
+	}
+
+	/**
+	 * A lower JPEG quality should produce a smaller file.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void quality() throws IOException {
+		final ByteArrayOutputStream high = new ByteArrayOutputStream();
+		ImageCodec.write(gradient(), ImageFormat.JPG, 0.95f, high);
+		final ByteArrayOutputStream low = new ByteArrayOutputStream();
+		ImageCodec.write(gradient(), ImageFormat.JPG, 0.2f, low);
+		Assert.assertTrue(low.size() < high.size());
+	}
+
+	/**
+	 * Formats without a pooled reader should still be read.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void otherFormat() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(gradient(), "bmp", out);
+		final BufferedImage image = ImageCodec.read(new ByteArrayInputStream(out.toByteArray()), 100, 100);
+		Assert.assertEquals(267, image.getWidth());
+	}
+
+	/**
+	 * Cropping should work from stream to stream in another format.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void autoCropStream() throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (final InputStream in = getClass().getResourceAsStream("/test.png")) {
+			AutoCrop.autoCrop(in, out, 5, ImageFormat.JPG, 0.8f);
+		}
+		final BufferedImage image = ImageCodec.read(new ByteArrayInputStream(out.toByteArray()));
+		Assert.assertTrue(image.getWidth() <= 50);
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.ajah.image.DuplicateImageIndex;
+import com.ajah.image.ImageCodec;
+import com.ajah.image.ImageFormat;
+import com.ajah.image.ImageHash;
+import com.ajah.image.ImageScaler;
+
+/**
+ * Tests {@link ImageHash} and {@link DuplicateImageIndex}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class ImageHashTest {
+
+	private static BufferedImage scene(final boolean flip) {
+		final BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g = image.createGraphics();
+		g.setColor(flip ? Color.ORANGE : Color.DARK_GRAY);
+		g.fillRect(0, 0, 640, 480);
+		g.setColor(Color.WHITE);
+		g.fillOval(flip ? 350 : 60, 80, 220, 220);
+		g.setColor(Color.RED);
+		g.fillRect(flip ? 40 : 380, 260, 200, 160);
+		g.dispose();
+		return image;
+	}
+
+	private static BufferedImage recompress(final BufferedImage image) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageCodec.write(ImageScaler.scale(image, 300, 225, true), ImageFormat.JPG, 0.3f, out);
+		return ImageCodec.read(new ByteArrayInputStream(out.toByteArray()));
+	}
+
+	/**
+	 * A resized, recompressed copy should hash close to the original, and a
+	 * different image should not.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void nearDuplicates() throws IOException {
+		final BufferedImage original = scene(false);
+		final BufferedImage copy = recompress(original);
+		final BufferedImage other = scene(true);
+		Assert.assertTrue(ImageHash.distance(ImageHash.dHash(original), ImageHash.dHash(copy)) <= 10);
+		Assert.assertTrue(ImageHash.distance(ImageHash.pHash(original), ImageHash.pHash(copy)) <= 6);
+		Assert.assertTrue(ImageHash.distance(ImageHash.pHash(original), ImageHash.pHash(other)) > 16);
+
+		final DuplicateImageIndex<String> index = new DuplicateImageIndex<>(8);
+		Assert.assertTrue(index.findAndAdd(original, "original").isEmpty());
+		Assert.assertTrue(index.findAndAdd(other, "other").isEmpty());
+		Assert.assertEquals("original", index.findAndAdd(copy, "copy").get(0));
+		Assert.assertEquals(3, index.size());
+	}
+
+}
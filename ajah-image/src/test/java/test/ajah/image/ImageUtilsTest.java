@@ -17,6 +17,10 @@
 package test.ajah.image;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
 import junit.framework.Assert;
 
@@ -73,4 +77,31 @@ public class ImageUtilsTest {
 		Assert.assertEquals(50, info.getWidth());
 		Assert.assertEquals("png", info.getFormat().getSuffix());
 	}
+
+	/**
+	 * Test extracting information from a stream and a file without reading
+	 * the whole image.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testStreamAndPath() throws IOException {
+		try (final InputStream in = getClass().getResourceAsStream("/test.jpg")) {
+			final ImageInfo info = ImageUtils.getInfo(in);
+			Assert.assertEquals(50, info.getWidth());
+			Assert.assertEquals("jpg", info.getFormat().getSuffix());
+		}
+		final Path path = Files.createTempFile("test", ".gif");
+		try {
+			try (final InputStream in = getClass().getResourceAsStream("/test.gif")) {
+				Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+			final ImageInfo info = ImageUtils.getInfo(path);
+			Assert.assertEquals(50, info.getHeight());
+			Assert.assertEquals(Files.size(path), info.getSize());
+			Assert.assertEquals("gif", info.getFormat().getSuffix());
+		} finally {
+			Files.delete(path);
+		}
+	}
 }
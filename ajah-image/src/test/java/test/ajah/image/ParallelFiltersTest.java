@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.image;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.ajah.image.ParallelFilters;
+import com.ajah.image.TileExecutor;
+import com.jhlabs.image.BoxBlurFilter;
+import com.jhlabs.image.ThresholdFilter;
+
+/**
+ * Tests {@link ParallelFilters} and {@link TileExecutor} against their serial
+ * equivalents.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class ParallelFiltersTest {
+
+	private static BufferedImage noise(final int type) {
+		final Random random = new Random(1);
+		final BufferedImage image = new BufferedImage(300, 200, type);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, random.nextInt());
+			}
+		}
+		return image;
+	}
+
+	private static int[] pixels(final BufferedImage image) {
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+	/**
+	 * Blur and threshold should match the serial filters exactly.
+	 */
+	@Test
+	public void sameAsSerial() {
+		for (final int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR }) {
+			final BufferedImage image = noise(type);
+			Assert.assertTrue(Arrays.equals(pixels(new BoxBlurFilter(3, 2, 2).filter(image, null)), pixels(ParallelFilters.boxBlur(image, null, 3, 2, 2))));
+			final ThresholdFilter threshold = new ThresholdFilter();
+			Assert.assertTrue(Arrays.equals(pixels(threshold.filter(image, null)), pixels(ParallelFilters.filter(threshold, image, null))));
+		}
+	}
+
+	/**
+	 * Parallel scans should find the same index as a serial scan.
+	 */
+	@Test
+	public void find() {
+		final TileExecutor executor = new TileExecutor(4, 8);
+		final TileExecutor.IndexTest test = new TileExecutor.IndexTest() {
+
+			@Override
+			public boolean test(final int index) {
+				return index % 97 == 13;
+			}
+		};
+		Assert.assertEquals(13, executor.findFirst(0, 1000, test));
+		Assert.assertEquals(983, executor.findLast(0, 1000, test));
+		Assert.assertEquals(110, executor.findFirst(14, 1000, test));
+		Assert.assertEquals(-1, executor.findFirst(14, 110, test));
+	}
+
+}
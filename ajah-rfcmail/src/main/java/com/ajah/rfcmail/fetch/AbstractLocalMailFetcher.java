@@ -0,0 +1,123 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.rfcmail.fetch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.mail.MessagingException;
+
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import com.ajah.rfcmail.AjahMessageId;
+
+/**
+ * Base class for fetching mail from local files. Messages are parsed and
+ * handled on a pool of {@link #setThreads(int)} threads, so handlers must be
+ * thread-safe. When the pool falls behind, the thread reading the files
+ * handles messages itself until it catches up.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Data
+@EqualsAndHashCode(callSuper = false, exclude = "executor")
+@ToString(exclude = "executor")
+public abstract class AbstractLocalMailFetcher extends AbstractMailFetcher {
+
+	private static final Logger log = Logger.getLogger(AbstractLocalMailFetcher.class.getName());
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	// Only exists while go() is running
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * Starts the handler threads, calls {@link #read()} and waits for every
+	 * message to be handled.
+	 */
+	@Override
+	public void go() throws MessagingException, IOException {
+		this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(this.threads * 4),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		try {
+			read();
+		} finally {
+			this.executor.shutdown();
+			try {
+				while (!this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+					log.info("Waiting for " + this.executor.getQueue().size() + " queued messages");
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.executor.shutdownNow();
+			}
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * Reads every message, passing each to {@link #dispatch(InputStream)}.
+	 * 
+	 * @throws MessagingException
+	 *             If the messages could not be split.
+	 * @throws IOException
+	 *             If the files could not be read.
+	 */
+	protected abstract void read() throws MessagingException, IOException;
+
+	/**
+	 * Parses a message and passes it to the handlers on a pool thread.
+	 * 
+	 * @param in
+	 *            The raw message. If this is a
+	 *            {@link javax.mail.internet.SharedInputStream}, the message's
+	 *            parts will be read from it as needed rather than copied.
+	 */
+	protected void dispatch(final InputStream in) {
+		this.executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					final AjahMimeMessage message = new AjahMimeMessage(in);
+					if (message.getMessageID() != null) {
+						message.setId(new AjahMessageId(message.getMessageID()));
+					}
+					for (final MessageHandler messageHandler : getMessageHandlers()) {
+						log.finest(messageHandler.getClass().getSimpleName() + " handling " + message.getId());
+						messageHandler.handle(message);
+					}
+				} catch (final MessagingException | RuntimeException e) {
+					log.log(Level.SEVERE, e.getMessage(), e);
+				}
+			}
+		});
+	}
+
+}
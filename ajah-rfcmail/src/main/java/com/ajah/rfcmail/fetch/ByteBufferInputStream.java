@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.rfcmail.fetch;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import javax.mail.internet.SharedInputStream;
+
+/**
+ * Reads from a {@link ByteBuffer}, typically a slice of a memory-mapped file.
+ * As a {@link SharedInputStream}, a message parsed from it keeps slices of the
+ * buffer for its parts instead of copying them.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+class ByteBufferInputStream extends InputStream implements SharedInputStream {
+
+	private final ByteBuffer buffer;
+	private int mark;
+
+	ByteBufferInputStream(final ByteBuffer buffer) {
+		this.buffer = buffer.slice();
+	}
+
+	@Override
+	public int available() {
+		return this.buffer.remaining();
+	}
+
+	@Override
+	public long getPosition() {
+		return this.buffer.position();
+	}
+
+	@Override
+	public synchronized void mark(final int readLimit) {
+		this.mark = this.buffer.position();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public InputStream newStream(final long start, final long end) {
+		final ByteBuffer part = this.buffer.duplicate();
+		part.limit(end < 0 ? this.buffer.limit() : (int) end);
+		part.position((int) start);
+		return new ByteBufferInputStream(part);
+	}
+
+	@Override
+	public int read() {
+		return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+	}
+
+	@Override
+	public int read(final byte[] bytes, final int offset, final int length) {
+		if (length == 0) {
+			return 0;
+		}
+		if (!this.buffer.hasRemaining()) {
+			return -1;
+		}
+		final int count = Math.min(length, this.buffer.remaining());
+		this.buffer.get(bytes, offset, count);
+		return count;
+	}
+
+	@Override
+	public synchronized void reset() {
+		this.buffer.position(this.mark);
+	}
+
+	@Override
+	public long skip(final long count) {
+		final int skipped = (int) Math.max(0, Math.min(count, this.buffer.remaining()));
+		this.buffer.position(this.buffer.position() + skipped);
+		return skipped;
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.rfcmail.fetch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * Keeps UID checkpoints in a properties file, one
+ * <code>uidValidity:lastUid</code> entry per folder. The file is rewritten
+ * through a temporary file on every update, so it is never left half written.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class FileUidCheckpointStore implements UidCheckpointStore {
+
+	private final File file;
+	private Properties checkpoints;
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param file
+	 *            The file to keep checkpoints in, required. It will be created
+	 *            if it does not exist.
+	 */
+	public FileUidCheckpointStore(final File file) {
+		AjahUtils.requireParam(file, "file");
+		this.file = file;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized long getLastUid(final String folderName, final long uidValidity) throws IOException {
+		final String checkpoint = load().getProperty(folderName);
+		if (checkpoint == null) {
+			return 0;
+		}
+		final int colon = checkpoint.indexOf(':');
+		if (colon < 0 || Long.parseLong(checkpoint.substring(0, colon)) != uidValidity) {
+			return 0;
+		}
+		return Long.parseLong(checkpoint.substring(colon + 1));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void setLastUid(final String folderName, final long uidValidity, final long lastUid) throws IOException {
+		load().setProperty(folderName, uidValidity + ":" + lastUid);
+		final File temp = new File(this.file.getPath() + ".tmp");
+		try (final OutputStream out = new FileOutputStream(temp)) {
+			this.checkpoints.store(out, "Last UID processed per IMAP folder");
+		}
+		if (!temp.renameTo(this.file)) {
+			// Some platforms won't rename over an existing file
+			this.file.delete();
+			if (!temp.renameTo(this.file)) {
+				throw new IOException("Could not rename " + temp + " to " + this.file);
+			}
+		}
+	}
+
+	private Properties load() throws IOException {
+		if (this.checkpoints == null) {
+			final Properties loaded = new Properties();
+			if (this.file.exists()) {
+				try (final InputStream in = new FileInputStream(this.file)) {
+					loaded.load(in);
+				}
+			}
+			this.checkpoints = loaded;
+		}
+		return this.checkpoints;
+	}
+
+}
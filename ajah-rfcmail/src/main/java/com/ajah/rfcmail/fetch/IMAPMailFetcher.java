@@ -15,8 +15,20 @@
  */
 package com.ajah.rfcmail.fetch;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,16 +38,33 @@ import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.Store;
+import javax.mail.UIDFolder;
 import javax.mail.internet.MimeMessage;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
+import com.ajah.rfcmail.AjahMessageId;
 import com.sun.mail.imap.IMAPFolder;
 
 /**
  * Class for fetching mail from an IMAP server.
  * 
+ * Folders are fetched concurrently, each worker thread holding its own
+ * connection. Within a folder, envelopes and body structure are fetched for a
+ * range of messages at a time rather than one message at a time. If a
+ * {@link UidCheckpointStore} is set, the highest UID processed in each folder
+ * is saved after every range, and later runs only fetch newer messages. If a
+ * message can't be downloaded the folder stops there, so the checkpoint never
+ * passes a message the handlers did not get.
+ * 
+ * Message handlers are called from the worker threads, but only for one
+ * message at a time, so they don't need to be thread-safe. Alternatively, if
+ * a started {@link MessagePipeline} is set, messages are submitted to it
+ * instead and the fetcher's own handlers are not used. The checkpoint then
+ * only advances past messages the pipeline has finished with, and may be
+ * saved by the pipeline's threads after {@link #go()} returns.
+ * 
  * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
  *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
  * 
@@ -49,59 +78,192 @@ public class IMAPMailFetcher extends AbstractMailFetcher {
 	private String username;
 	private String password;
 	private String hostname;
+	private int threads = 4;
+	private int batchSize = 100;
+	private UidCheckpointStore uidCheckpointStore;
+	private MessagePipeline pipeline;
 
 	/**
 	 * Fetches mail from default folder and all child folders.
 	 */
 	@Override
 	public void go() throws MessagingException, IOException {
+		final Queue<String> folderNames = new ConcurrentLinkedQueue<>();
+		final Store store = connect();
+		try {
+			final IMAPFolder defaultFolder = (IMAPFolder) store.getDefaultFolder();
+			log.fine("Default folder is: " + defaultFolder.getFullName());
+			listFolders(defaultFolder, folderNames);
+		} finally {
+			store.close();
+		}
+		log.fine(folderNames.size() + " folders to process");
+		final int workers = Math.max(1, Math.min(this.threads, folderNames.size()));
+		final ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			final List<Future<Void>> results = new ArrayList<>(workers);
+			for (int i = 0; i < workers; i++) {
+				results.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws MessagingException, IOException {
+						processFolders(folderNames);
+						return null;
+					}
+				}));
+			}
+			Exception failure = null;
+			for (final Future<Void> result : results) {
+				try {
+					result.get();
+				} catch (final ExecutionException e) {
+					log.log(Level.SEVERE, e.getCause().getMessage(), e.getCause());
+					if (e.getCause() instanceof Error) {
+						throw (Error) e.getCause();
+					} else if (failure == null) {
+						failure = (Exception) e.getCause();
+					}
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MessagingException("Interrupted", e);
+				}
+			}
+			if (failure instanceof MessagingException) {
+				throw (MessagingException) failure;
+			} else if (failure instanceof IOException) {
+				throw (IOException) failure;
+			} else if (failure != null) {
+				throw new MessagingException(failure.getMessage(), failure);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
 
+	private Store connect() throws MessagingException {
 		final Properties props = System.getProperties();
 		props.setProperty("mail.store.protocol", "imaps");
-
 		final Session session = Session.getDefaultInstance(props, null);
 		final Store store = session.getStore("imaps");
 		store.connect(getHostname(), getUsername(), getPassword());
 		log.fine("Connected to: " + store);
-		final IMAPFolder defaultFolder = (IMAPFolder) store.getDefaultFolder();
-		log.fine("Default folder is: " + defaultFolder.getFullName());
-		processFolder(defaultFolder);
+		return store;
+	}
+
+	private static void listFolders(final Folder folder, final Queue<String> folderNames) throws MessagingException {
+		if ((folder.getType() & Folder.HOLDS_MESSAGES) != 0) {
+			folderNames.add(folder.getFullName());
+		}
+		if ((folder.getType() & Folder.HOLDS_FOLDERS) != 0) {
+			final Folder[] children = folder.list();
+			if (children != null) {
+				for (final Folder child : children) {
+					listFolders(child, folderNames);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Processes folders from the queue until it is empty, on one connection.
+	 */
+	private void processFolders(final Queue<String> folderNames) throws MessagingException, IOException {
+		final Store store = connect();
+		try {
+			for (String folderName = folderNames.poll(); folderName != null; folderName = folderNames.poll()) {
+				processFolder((IMAPFolder) store.getFolder(folderName));
+			}
+		} finally {
+			store.close();
+		}
 	}
 
 	private void processFolder(final IMAPFolder folder) throws MessagingException, IOException {
 		log.fine("Processing folder " + folder.getFullName());
-
 		final long start = System.currentTimeMillis();
-		if ((folder.getType() & Folder.HOLDS_MESSAGES) != 0) {
-			folder.open(Folder.READ_ONLY);
-			// long uidNext = folder.getUIDNext();
-			final Message[] messages = folder.getMessages();
-			log.fine(messages.length + " messages");
+		folder.open(Folder.READ_ONLY);
+		try {
+			final long uidValidity = folder.getUIDValidity();
+			long lastUid = this.uidCheckpointStore == null ? 0 : this.uidCheckpointStore.getLastUid(folder.getFullName(), uidValidity);
+			// n:* always includes the last message, even if it is older than n
+			final Message[] messages = folder.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
+			log.fine(messages.length + " messages after UID " + lastUid);
 			final FetchProfile fp = new FetchProfile();
+			fp.add(UIDFolder.FetchProfileItem.UID);
+			fp.add(FetchProfile.Item.ENVELOPE);
+			fp.add(FetchProfile.Item.CONTENT_INFO);
 			fp.add("Message-Id");
-			folder.fetch(messages, fp);
+			final UidTracker tracker = this.pipeline == null ? null : new UidTracker(this.uidCheckpointStore, folder.getFullName(), uidValidity, lastUid);
 			long messageCount = 0;
-			for (final Message message : messages) {
-				messageCount++;
-				try {
-					for (final MessageHandler messageHandler : getMessageHandlers()) {
-						log.finest(messageHandler.getClass().getSimpleName() + " handling " + ((MimeMessage) message).getMessageID());
-						messageHandler.handle(new AjahMimeMessage(message.getInputStream()));
-						return;
+			try {
+				for (int from = 0; from < messages.length; from += this.batchSize) {
+					final Message[] batch = Arrays.copyOfRange(messages, from, Math.min(messages.length, from + this.batchSize));
+					folder.fetch(batch, fp);
+					for (final Message message : batch) {
+						final long uid = folder.getUID(message);
+						if (uid <= lastUid) {
+							continue;
+						}
+						if (tracker == null) {
+							handle((MimeMessage) message);
+						} else {
+							// If this fails the UID stays outstanding
+							this.pipeline.submit(message, tracker.submitted(uid));
+						}
+						lastUid = uid;
+						messageCount++;
 					}
-				} catch (final MessagingException e) {
-					log.log(Level.SEVERE, e.getMessage(), e);
+					if (tracker == null) {
+						checkpoint(folder.getFullName(), uidValidity, lastUid);
+					} else {
+						tracker.save();
+					}
+				}
+			} catch (final MessagingException | IOException e) {
+				// Keep the messages that were handled before the failure
+				if (tracker == null) {
+					checkpoint(folder.getFullName(), uidValidity, lastUid);
+				}
+				throw e;
+			} finally {
+				if (tracker != null) {
+					tracker.finish();
 				}
 			}
-			log.finest(messageCount + " messages");
+			log.finest("Processed " + messageCount + " messages from " + folder.getFullName() + " in " + (System.currentTimeMillis() - start) + "ms");
+		} finally {
+			folder.close(false);
 		}
-		final long end = System.currentTimeMillis();
-		log.finest("Processed " + folder.getFullName() + " in " + (end - start) + "ms");
-		if ((folder.getType() & Folder.HOLDS_FOLDERS) != 0) {
-			final Folder[] children = folder.list();
-			if (children != null) {
-				for (final Folder child : children) {
-					processFolder((IMAPFolder) child);
+	}
+
+	private void checkpoint(final String folderName, final long uidValidity, final long lastUid) throws IOException {
+		if (this.uidCheckpointStore != null) {
+			this.uidCheckpointStore.setLastUid(folderName, uidValidity, lastUid);
+		}
+	}
+
+	/**
+	 * Downloads a whole message in one request and passes it to every
+	 * handler.
+	 * 
+	 * @throws MessagingException
+	 *             If the message could not be downloaded, e.g. because the
+	 *             connection dropped.
+	 */
+	private void handle(final MimeMessage message) throws MessagingException, IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(message.getSize(), 1024));
+		message.writeTo(out);
+		final AjahMimeMessage ajahMessage = new AjahMimeMessage(new ByteArrayInputStream(out.toByteArray()));
+		if (message.getMessageID() != null) {
+			ajahMessage.setId(new AjahMessageId(message.getMessageID()));
+		}
+		synchronized (this) {
+			for (final MessageHandler messageHandler : getMessageHandlers()) {
+				try {
+					log.finest(messageHandler.getClass().getSimpleName() + " handling " + ajahMessage.getId());
+					messageHandler.handle(ajahMessage);
+				} catch (final MessagingException e) {
+					log.log(Level.SEVERE, e.getMessage(), e);
 				}
 			}
 		}
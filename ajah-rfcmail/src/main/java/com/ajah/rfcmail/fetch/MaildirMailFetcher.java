@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.rfcmail.fetch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.logging.Logger;
+
+import javax.mail.util.SharedByteArrayInputStream;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Fetches mail from a Maildir, including the new and cur folders of any
+ * Maildir++ subfolders (directories starting with a dot).
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class MaildirMailFetcher extends AbstractLocalMailFetcher {
+
+	private static final Logger log = Logger.getLogger(MaildirMailFetcher.class.getName());
+
+	private File directory;
+
+	@Override
+	protected void read() throws IOException {
+		readMaildir(this.directory);
+		final File[] children = this.directory.listFiles();
+		if (children != null) {
+			for (final File child : children) {
+				if (child.isDirectory() && child.getName().startsWith(".") && new File(child, "cur").isDirectory()) {
+					readMaildir(child);
+				}
+			}
+		}
+	}
+
+	private void readMaildir(final File maildir) throws IOException {
+		log.fine("Reading " + maildir);
+		for (final String folder : new String[] { "new", "cur" }) {
+			final File[] files = new File(maildir, folder).listFiles();
+			if (files == null) {
+				continue;
+			}
+			for (final File file : files) {
+				if (file.isFile() && !file.getName().startsWith(".")) {
+					dispatch(new SharedByteArrayInputStream(Files.readAllBytes(file.toPath())));
+				}
+			}
+		}
+	}
+
+}
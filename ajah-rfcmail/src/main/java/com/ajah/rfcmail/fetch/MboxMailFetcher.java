@@ -0,0 +1,148 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.rfcmail.fetch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Fetches mail from an mbox file, or every file in a directory of mbox files.
+ * Files are memory-mapped and split on lines starting with "From ", and each
+ * message is parsed straight from the mapped file without being copied.
+ * Quoted "&gt;From " lines in bodies are left as they are.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+public class MboxMailFetcher extends AbstractLocalMailFetcher {
+
+	private static final Logger log = Logger.getLogger(MboxMailFetcher.class.getName());
+
+	private static final byte[] FROM = { 'F', 'r', 'o', 'm', ' ' };
+
+	private static final int MAX_WINDOW = 1 << 30;
+
+	private File file;
+
+	/**
+	 * Files larger than this are mapped a window at a time, no single message
+	 * may be larger. Defaults to 1GB.
+	 */
+	private int windowSize = MAX_WINDOW;
+
+	@Override
+	protected void read() throws IOException {
+		if (this.file.isDirectory()) {
+			final File[] files = this.file.listFiles();
+			if (files == null) {
+				throw new IOException("Could not list " + this.file);
+			}
+			Arrays.sort(files);
+			for (final File child : files) {
+				if (child.isFile() && !child.isHidden()) {
+					readMbox(child);
+				}
+			}
+		} else {
+			readMbox(this.file);
+		}
+	}
+
+	private void readMbox(final File mbox) throws IOException {
+		log.fine("Reading " + mbox);
+		long messageCount = 0;
+		try (final RandomAccessFile raf = new RandomAccessFile(mbox, "r"); final FileChannel channel = raf.getChannel()) {
+			final long size = channel.size();
+			long position = 0;
+			while (position < size) {
+				final boolean last = size - position <= this.windowSize;
+				final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, last ? size - position : this.windowSize);
+				int start = nextFrom(window, 0);
+				int next = start < 0 ? -1 : nextFrom(window, start + 1);
+				while (next >= 0) {
+					dispatch(window, start, next);
+					messageCount++;
+					start = next;
+					next = nextFrom(window, start + 1);
+				}
+				if (start < 0) {
+					break;
+				}
+				if (last) {
+					dispatch(window, start, window.limit());
+					messageCount++;
+					break;
+				}
+				if (start == 0) {
+					throw new IOException("Message larger than " + this.windowSize + " bytes at " + position + " in " + mbox);
+				}
+				// Map again from the start of the incomplete message
+				position += start;
+			}
+		}
+		log.fine(messageCount + " messages in " + mbox);
+	}
+
+	/**
+	 * Dispatches the message between a "From " line and the next one.
+	 */
+	private void dispatch(final MappedByteBuffer window, final int from, final int end) {
+		int start = from;
+		while (start < end && window.get(start) != '\n') {
+			start++;
+		}
+		final ByteBuffer message = window.duplicate();
+		message.limit(end);
+		message.position(Math.min(start + 1, end));
+		dispatch(new ByteBufferInputStream(message));
+	}
+
+	/**
+	 * Finds the next line starting with "From ".
+	 * 
+	 * @return The offset of the "F", or -1 if there are no more.
+	 */
+	private static int nextFrom(final MappedByteBuffer buffer, final int from) {
+		final int limit = buffer.limit() - FROM.length;
+		for (int i = from; i <= limit; i++) {
+			if (buffer.get(i) == 'F' && (i == 0 || buffer.get(i - 1) == '\n')) {
+				boolean match = true;
+				for (int j = 1; j < FROM.length; j++) {
+					if (buffer.get(i + j) != FROM[j]) {
+						match = false;
+						break;
+					}
+				}
+				if (match) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.rfcmail.fetch;
+
+import javax.mail.MessagingException;
+
+/**
+ * Decides whether a message in a {@link MessagePipeline} should go on to its
+ * handlers, for example to drop spam or messages that were already processed.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public interface MessageClassifier {
+
+	/**
+	 * Classifies a message.
+	 * 
+	 * @param message
+	 *            The message to classify.
+	 * @return {@link MessageHandlerResult#SUCCESS} if the message should be
+	 *         handled, otherwise {@link MessageHandlerResult#SKIPPED} or
+	 *         {@link MessageHandlerResult#ERROR}.
+	 * @throws MessagingException
+	 *             If the message could not be read.
+	 */
+	MessageHandlerResult classify(final AjahMimeMessage message) throws MessagingException;
+
+}
@@ -0,0 +1,379 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.rfcmail.fetch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.util.SharedByteArrayInputStream;
+import javax.mail.util.SharedFileInputStream;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import com.ajah.rfcmail.AjahMessageId;
+import com.ajah.util.AjahUtils;
+
+/**
+ * Processes fetched messages in stages: the fetching thread downloads each
+ * message in {@link #submit(Message)}, then worker threads parse it, classify
+ * it with an optional {@link MessageClassifier}, and pass it to the
+ * {@link MessageHandler}s. Each stage has its own thread count, and stages are
+ * joined by bounded queues, so a slow handler can't stall fetching until the
+ * queues fill, and then fetching slows to match rather than running out of
+ * memory.
+ * 
+ * Messages larger than {@link #setSpoolThreshold(int)} are downloaded to a
+ * temporary file, and their parts are read from that file as handlers need
+ * them rather than held in memory.
+ * 
+ * Call {@link #start()} before submitting messages and {@link #close()} when
+ * done, which waits for queued messages to be handled. If more than one
+ * handler thread is used, handlers must be thread-safe. A callback given to
+ * {@link #submit(Message, Runnable)} is run once the pipeline has finished
+ * with that message, which is when it is safe to record it as processed.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class MessagePipeline implements AutoCloseable {
+
+	private static final Logger log = Logger.getLogger(MessagePipeline.class.getName());
+
+	/**
+	 * A message on its way through the pipeline.
+	 */
+	private static final class Item {
+
+		byte[] data;
+		File spool;
+		SharedFileInputStream spoolIn;
+		AjahMimeMessage message;
+		Runnable done;
+
+	}
+
+	/** Tells a worker its stage has no more input. */
+	private static final Item END = new Item();
+
+	/**
+	 * One worker in a stage, taking items from its queue until it gets
+	 * {@link MessagePipeline#END}.
+	 */
+	private abstract class Stage implements Runnable {
+
+		private final BlockingQueue<Item> in;
+
+		Stage(final BlockingQueue<Item> in) {
+			this.in = in;
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (Item item = this.in.take(); item != END; item = this.in.take()) {
+					try {
+						process(item);
+					} catch (final MessagingException | IOException | RuntimeException e) {
+						log.log(Level.SEVERE, e.getMessage(), e);
+						MessagePipeline.this.failed.incrementAndGet();
+						finish(item);
+					}
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		abstract void process(final Item item) throws MessagingException, IOException, InterruptedException;
+
+	}
+
+	private final List<MessageHandler> messageHandlers = new ArrayList<>();
+
+	@Setter
+	private MessageClassifier classifier;
+	@Setter
+	private int parseThreads = 1;
+	@Setter
+	private int classifyThreads = 1;
+	@Setter
+	private int handleThreads = 1;
+	@Setter
+	private int queueSize = 100;
+	@Setter
+	private File spoolDir;
+
+	private int spoolThreshold = 1024 * 1024;
+
+	@Getter
+	private final AtomicLong handled = new AtomicLong();
+	@Getter
+	private final AtomicLong skipped = new AtomicLong();
+	@Getter
+	private final AtomicLong failed = new AtomicLong();
+
+	private volatile BlockingQueue<Item> parseQueue;
+	private BlockingQueue<Item> classifyQueue;
+	private BlockingQueue<Item> handleQueue;
+	private ExecutorService parsers;
+	private ExecutorService classifiers;
+	private ExecutorService handlers;
+
+	/**
+	 * Adds a handler that will be given every message that passes the
+	 * classifier, in the order handlers are added.
+	 * 
+	 * @param messageHandler
+	 *            The handler to add, required.
+	 */
+	public void addMessageHandler(final MessageHandler messageHandler) {
+		AjahUtils.requireParam(messageHandler, "messageHandler");
+		this.messageHandlers.add(messageHandler);
+	}
+
+	/**
+	 * Sets the size above which messages are downloaded to a temporary file
+	 * instead of memory. Defaults to 1MB.
+	 * 
+	 * @param spoolThreshold
+	 *            The size in bytes.
+	 */
+	public void setSpoolThreshold(final int spoolThreshold) {
+		AjahUtils.requireParam(spoolThreshold, "spoolThreshold", 0);
+		this.spoolThreshold = spoolThreshold;
+	}
+
+	/**
+	 * Starts the worker threads.
+	 */
+	public synchronized void start() {
+		if (this.parsers != null) {
+			throw new IllegalStateException("Already started");
+		}
+		this.parseQueue = new ArrayBlockingQueue<>(this.queueSize);
+		this.classifyQueue = new ArrayBlockingQueue<>(this.queueSize);
+		this.handleQueue = new ArrayBlockingQueue<>(this.queueSize);
+		this.parsers = Executors.newFixedThreadPool(this.parseThreads);
+		for (int i = 0; i < this.parseThreads; i++) {
+			this.parsers.execute(new Stage(this.parseQueue) {
+
+				@Override
+				void process(final Item item) throws MessagingException, IOException, InterruptedException {
+					parse(item);
+					MessagePipeline.this.classifyQueue.put(item);
+				}
+			});
+		}
+		this.classifiers = Executors.newFixedThreadPool(this.classifyThreads);
+		for (int i = 0; i < this.classifyThreads; i++) {
+			this.classifiers.execute(new Stage(this.classifyQueue) {
+
+				@Override
+				void process(final Item item) throws MessagingException, InterruptedException {
+					final MessageHandlerResult result = MessagePipeline.this.classifier == null ? MessageHandlerResult.SUCCESS : MessagePipeline.this.classifier
+							.classify(item.message);
+					if (result == MessageHandlerResult.SUCCESS) {
+						MessagePipeline.this.handleQueue.put(item);
+					} else {
+						log.finest("Classified " + item.message.getId() + " as " + result);
+						MessagePipeline.this.skipped.incrementAndGet();
+						finish(item);
+					}
+				}
+			});
+		}
+		this.handlers = Executors.newFixedThreadPool(this.handleThreads);
+		for (int i = 0; i < this.handleThreads; i++) {
+			this.handlers.execute(new Stage(this.handleQueue) {
+
+				@Override
+				void process(final Item item) {
+					// One handler failing shouldn't keep the message from the rest
+					for (final MessageHandler messageHandler : MessagePipeline.this.messageHandlers) {
+						try {
+							messageHandler.handle(item.message);
+						} catch (final MessagingException | RuntimeException e) {
+							log.log(Level.SEVERE, e.getMessage(), e);
+						}
+					}
+					MessagePipeline.this.handled.incrementAndGet();
+					finish(item);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Downloads a message and queues it to be parsed, waiting if the queue is
+	 * full.
+	 * 
+	 * @param message
+	 *            The message to download, required.
+	 * @throws MessagingException
+	 *             If the message could not be read.
+	 * @throws IOException
+	 *             If the message could not be spooled, or the wait was
+	 *             interrupted.
+	 */
+	public void submit(final Message message) throws MessagingException, IOException {
+		submit(message, null);
+	}
+
+	/**
+	 * Downloads a message and queues it to be parsed, waiting if the queue is
+	 * full.
+	 * 
+	 * @param message
+	 *            The message to download, required.
+	 * @param done
+	 *            Run on a worker thread once the message has been handled,
+	 *            skipped by the classifier or has failed to parse or handle.
+	 *            Not run if this method throws. May be null.
+	 * @throws MessagingException
+	 *             If the message could not be read.
+	 * @throws IOException
+	 *             If the message could not be spooled, or the wait was
+	 *             interrupted.
+	 */
+	public void submit(final Message message, final Runnable done) throws MessagingException, IOException {
+		AjahUtils.requireParam(message, "message");
+		if (this.parseQueue == null) {
+			throw new IllegalStateException("Not started");
+		}
+		final Item item = new Item();
+		item.done = done;
+		if (message.getSize() > this.spoolThreshold) {
+			item.spool = File.createTempFile("ajah-message-", ".eml", this.spoolDir);
+			try (final OutputStream out = new FileOutputStream(item.spool)) {
+				message.writeTo(out);
+			} catch (final MessagingException | IOException e) {
+				item.spool.delete();
+				throw e;
+			}
+		} else {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(message.getSize(), 1024));
+			message.writeTo(out);
+			item.data = out.toByteArray();
+		}
+		try {
+			this.parseQueue.put(item);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			release(item);
+			throw new InterruptedIOException("Interrupted waiting to queue message");
+		}
+	}
+
+	/**
+	 * Waits for all submitted messages to be handled, stops the worker
+	 * threads and closes the handlers.
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.parsers == null) {
+			return;
+		}
+		try {
+			drain(this.parsers, this.parseQueue, this.parseThreads);
+			drain(this.classifiers, this.classifyQueue, this.classifyThreads);
+			drain(this.handlers, this.handleQueue, this.handleThreads);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.parsers.shutdownNow();
+			this.classifiers.shutdownNow();
+			this.handlers.shutdownNow();
+		}
+		this.parsers = null;
+		this.parseQueue = null;
+		for (final MessageHandler messageHandler : this.messageHandlers) {
+			messageHandler.close();
+		}
+		log.fine("Pipeline closed: " + this.handled + " handled, " + this.skipped + " skipped, " + this.failed + " failed");
+	}
+
+	private static void drain(final ExecutorService stage, final BlockingQueue<Item> queue, final int threads) throws InterruptedException {
+		for (int i = 0; i < threads; i++) {
+			queue.put(END);
+		}
+		stage.shutdown();
+		while (!stage.awaitTermination(1, TimeUnit.MINUTES)) {
+			log.info("Waiting for " + queue.size() + " queued messages");
+		}
+	}
+
+	private static void parse(final Item item) throws MessagingException, IOException {
+		if (item.spool != null) {
+			// A shared stream lets parts be read from the file when needed
+			item.spoolIn = new SharedFileInputStream(item.spool);
+			item.message = new AjahMimeMessage(item.spoolIn);
+		} else {
+			item.message = new AjahMimeMessage(new SharedByteArrayInputStream(item.data));
+			item.data = null;
+		}
+		if (item.message.getMessageID() != null) {
+			item.message.setId(new AjahMessageId(item.message.getMessageID()));
+		}
+	}
+
+	/**
+	 * Releases an item and runs its callback.
+	 */
+	private static void finish(final Item item) {
+		release(item);
+		if (item.done != null) {
+			try {
+				item.done.run();
+			} catch (final RuntimeException e) {
+				log.log(Level.WARNING, e.getMessage(), e);
+			}
+		}
+	}
+
+	private static void release(final Item item) {
+		if (item.spoolIn != null) {
+			try {
+				item.spoolIn.close();
+			} catch (final IOException e) {
+				log.log(Level.WARNING, e.getMessage(), e);
+			}
+			item.spoolIn = null;
+		}
+		if (item.spool != null) {
+			if (!item.spool.delete()) {
+				log.warning("Could not delete " + item.spool);
+			}
+			item.spool = null;
+		}
+	}
+
+}
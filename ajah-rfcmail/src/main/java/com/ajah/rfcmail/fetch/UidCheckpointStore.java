@@ -0,0 +1,59 @@
+/*
+ *  Copyright 2011 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.rfcmail.fetch;
+
+import java.io.IOException;
+
+/**
+ * Remembers the highest UID processed in each folder, so a fetch can resume
+ * where the last one stopped. A checkpoint is only valid for the folder's
+ * UIDVALIDITY at the time it was stored; if the server changes that value,
+ * its UIDs have been reassigned and the folder must be fetched again.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public interface UidCheckpointStore {
+
+	/**
+	 * Returns the highest UID processed in a folder.
+	 * 
+	 * @param folderName
+	 *            The full name of the folder.
+	 * @param uidValidity
+	 *            The folder's current UIDVALIDITY.
+	 * @return The highest UID processed, or 0 if the folder has not been
+	 *         processed with this UIDVALIDITY.
+	 * @throws IOException
+	 *             If the checkpoint could not be read.
+	 */
+	long getLastUid(final String folderName, final long uidValidity) throws IOException;
+
+	/**
+	 * Records the highest UID processed in a folder.
+	 * 
+	 * @param folderName
+	 *            The full name of the folder.
+	 * @param uidValidity
+	 *            The folder's current UIDVALIDITY.
+	 * @param lastUid
+	 *            The highest UID processed.
+	 * @throws IOException
+	 *             If the checkpoint could not be written.
+	 */
+	void setLastUid(final String folderName, final long uidValidity, final long lastUid) throws IOException;
+
+}
@@ -0,0 +1,125 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.rfcmail.fetch;
+
+import java.io.IOException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tracks which UIDs from one folder have been submitted to a
+ * {@link MessagePipeline} and are still in it, so the checkpoint is never
+ * past a message that has not been handled. UIDs are submitted in increasing
+ * order, so everything below the lowest outstanding UID is done.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class UidTracker {
+
+	private static final Logger log = Logger.getLogger(UidTracker.class.getName());
+
+	private final UidCheckpointStore uidCheckpointStore;
+	private final String folderName;
+	private final long uidValidity;
+	private final SortedSet<Long> outstanding = new TreeSet<>();
+	private long lastSubmitted;
+	private long lastSaved;
+	private boolean finished;
+
+	/**
+	 * Creates a tracker for one pass over a folder.
+	 * 
+	 * @param uidCheckpointStore
+	 *            Where the checkpoint is saved, may be null to only track.
+	 * @param folderName
+	 *            The full name of the folder.
+	 * @param uidValidity
+	 *            The folder's current UIDVALIDITY.
+	 * @param lastUid
+	 *            The checkpoint the pass started from.
+	 */
+	public UidTracker(final UidCheckpointStore uidCheckpointStore, final String folderName, final long uidValidity, final long lastUid) {
+		this.uidCheckpointStore = uidCheckpointStore;
+		this.folderName = folderName;
+		this.uidValidity = uidValidity;
+		this.lastSubmitted = lastUid;
+		this.lastSaved = lastUid;
+	}
+
+	/**
+	 * Records that a message is about to be submitted.
+	 * 
+	 * @param uid
+	 *            The message's UID, higher than any submitted before.
+	 * @return The callback to give the pipeline, which marks the UID done.
+	 */
+	public synchronized Runnable submitted(final long uid) {
+		this.outstanding.add(Long.valueOf(uid));
+		this.lastSubmitted = uid;
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				done(uid);
+			}
+		};
+	}
+
+	synchronized void done(final long uid) {
+		this.outstanding.remove(Long.valueOf(uid));
+		if (this.finished) {
+			saveQuietly();
+		}
+	}
+
+	/**
+	 * Called when nothing more will be submitted, after which the checkpoint
+	 * is saved as each message finishes.
+	 */
+	public synchronized void finish() {
+		this.finished = true;
+		saveQuietly();
+	}
+
+	/**
+	 * Saves the checkpoint, if it has moved, at the UID below the lowest one
+	 * still outstanding.
+	 * 
+	 * @throws IOException
+	 *             If the checkpoint could not be written.
+	 */
+	public synchronized void save() throws IOException {
+		final long lastUid = this.outstanding.isEmpty() ? this.lastSubmitted : this.outstanding.first().longValue() - 1;
+		if (lastUid > this.lastSaved) {
+			if (this.uidCheckpointStore != null) {
+				this.uidCheckpointStore.setLastUid(this.folderName, this.uidValidity, lastUid);
+			}
+			this.lastSaved = lastUid;
+		}
+	}
+
+	private void saveQuietly() {
+		try {
+			save();
+		} catch (final IOException e) {
+			log.log(Level.SEVERE, "Could not save checkpoint for " + this.folderName, e);
+		}
+	}
+
+}
@@ -23,9 +23,7 @@ import javax.mail.BodyPart;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-
+import com.ajah.html.HtmlText;
 import com.ajah.rfcmail.fetch.AjahMimeMessage;
 import com.ajah.util.StringUtils;
 import com.ajah.util.net.AjahMimeType;
@@ -136,9 +134,7 @@ public class MessageUtils {
 	}
 
 	private static String getHTMLAsText(final String html) {
-		final Document doc = Jsoup.parse(html);
-		final String text = doc.body().text();
-		return text;
+		return HtmlText.toText(html);
 	}
 
 	/**
@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.rfcmail.fetch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.rfcmail.fetch.AjahMimeMessage;
+import com.ajah.rfcmail.fetch.MboxMailFetcher;
+import com.ajah.rfcmail.fetch.MessageHandler;
+import com.ajah.rfcmail.fetch.MessageHandlerResponse;
+import com.ajah.rfcmail.fetch.MessageHandlerResult;
+
+/**
+ * Tests splitting mbox files and reading messages from the mapped file.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class MboxMailFetcherTest {
+
+	private static final String MBOX = "From alice@example.com Mon Jan  2 10:00:00 2012\n" + "Subject: one\n" + "\n" + "First body\n"
+			+ ">From the quoted line\n" + "Not From a new message\n" + "\n" + "From bob@example.com Mon Jan  2 11:00:00 2012\n" + "Subject: two\n" + "\n"
+			+ "Second body, which is long enough to cross a small window\n" + "\n" + "From carol@example.com Mon Jan  2 12:00:00 2012\n"
+			+ "Subject: three\n" + "\n" + "Third body";
+
+	private static final String MULTIPART = "From dave@example.com Mon Jan  2 13:00:00 2012\n" + "Subject: parts\n" + "MIME-Version: 1.0\n"
+			+ "Content-Type: multipart/mixed; boundary=\"XYZ\"\n" + "\n" + "Preamble\n" + "--XYZ\n" + "Content-Type: text/plain\n" + "\n" + "Part one\n"
+			+ "--XYZ\n" + "Content-Type: text/plain\n" + "\n" + "Part two\n" + "--XYZ--\n" + "\n" + "From erin@example.com Mon Jan  2 14:00:00 2012\n"
+			+ "Subject: after\n" + "\n" + "After body\n";
+
+	/**
+	 * Messages at the start and end of the file are split off, and "From"
+	 * that doesn't start a line doesn't start a message.
+	 * 
+	 * @throws Exception
+	 *             If the test fails.
+	 */
+	@Test
+	public void split() throws Exception {
+		final Map<String, String> bodies = fetch(MBOX, 0);
+		Assert.assertEquals(3, bodies.size());
+		Assert.assertEquals("First body\n>From the quoted line\nNot From a new message\n\n", bodies.get("one"));
+		Assert.assertEquals("Second body, which is long enough to cross a small window\n\n", bodies.get("two"));
+		Assert.assertEquals("Third body", bodies.get("three"));
+	}
+
+	/**
+	 * A message that crosses the end of a window is read whole from the next
+	 * one.
+	 * 
+	 * @throws Exception
+	 *             If the test fails.
+	 */
+	@Test
+	public void windowBoundary() throws Exception {
+		final int windowSize = MBOX.indexOf("Second body") + 10;
+		final Map<String, String> bodies = fetch(MBOX, windowSize);
+		Assert.assertEquals(3, bodies.size());
+		Assert.assertEquals("First body\n>From the quoted line\nNot From a new message\n\n", bodies.get("one"));
+		Assert.assertEquals("Second body, which is long enough to cross a small window\n\n", bodies.get("two"));
+		Assert.assertEquals("Third body", bodies.get("three"));
+	}
+
+	/**
+	 * A message larger than a window can't be read.
+	 * 
+	 * @throws Exception
+	 *             If the test fails.
+	 */
+	@Test(expected = IOException.class)
+	public void messageLargerThanWindow() throws Exception {
+		fetch(MBOX, 20);
+	}
+
+	/**
+	 * The parts of a multipart message are read from slices of the mapped
+	 * file, which must line up with the part boundaries.
+	 * 
+	 * @throws Exception
+	 *             If the test fails.
+	 */
+	@Test
+	public void multipart() throws Exception {
+		final Map<String, String> bodies = fetch(MULTIPART, 0);
+		Assert.assertEquals(2, bodies.size());
+		Assert.assertEquals("Part one|Part two|", bodies.get("parts"));
+		Assert.assertEquals("After body\n", bodies.get("after"));
+	}
+
+	private static Map<String, String> fetch(final String mbox, final int windowSize) throws Exception {
+		final File file = File.createTempFile("mbox", ".txt");
+		file.deleteOnExit();
+		try (final OutputStream out = new FileOutputStream(file)) {
+			out.write(mbox.getBytes(Charset.forName("US-ASCII")));
+		}
+		final Map<String, String> bodies = new ConcurrentHashMap<>();
+		try (final MboxMailFetcher fetcher = new MboxMailFetcher()) {
+			fetcher.setFile(file);
+			if (windowSize > 0) {
+				fetcher.setWindowSize(windowSize);
+			}
+			fetcher.addMessageHandler(new MessageHandler() {
+
+				@Override
+				public MessageHandlerResponse handle(final AjahMimeMessage message) throws MessagingException {
+					try {
+						bodies.put(message.getSubject(), toString(message.getContent()));
+					} catch (final IOException e) {
+						throw new MessagingException(e.getMessage(), e);
+					}
+					return new MessageHandlerResponse(message, MessageHandlerResult.SUCCESS);
+				}
+
+				private String toString(final Object content) throws MessagingException, IOException {
+					if (content instanceof Multipart) {
+						final Multipart multipart = (Multipart) content;
+						final StringBuilder parts = new StringBuilder();
+						for (int i = 0; i < multipart.getCount(); i++) {
+							parts.append(toString(multipart.getBodyPart(i).getContent())).append('|');
+						}
+						return parts.toString();
+					}
+					return (String) content;
+				}
+
+				@Override
+				public void addHandler(final MessageHandlerResult result, final MessageHandler messageHandler) {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public void close() {
+					// Nothing to close
+				}
+			});
+			fetcher.go();
+		}
+		return bodies;
+	}
+
+}
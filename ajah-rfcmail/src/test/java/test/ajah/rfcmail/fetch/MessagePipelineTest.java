@@ -0,0 +1,181 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.rfcmail.fetch;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.rfcmail.fetch.AjahMimeMessage;
+import com.ajah.rfcmail.fetch.MessageClassifier;
+import com.ajah.rfcmail.fetch.MessageHandler;
+import com.ajah.rfcmail.fetch.MessageHandlerResponse;
+import com.ajah.rfcmail.fetch.MessageHandlerResult;
+import com.ajah.rfcmail.fetch.MessagePipeline;
+import com.ajah.rfcmail.fetch.UidCheckpointStore;
+import com.ajah.rfcmail.fetch.UidTracker;
+
+/**
+ * Tests {@link MessagePipeline}'s completion callbacks and the checkpoints
+ * {@link UidTracker} saves from them.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class MessagePipelineTest {
+
+	private final AtomicInteger handled = new AtomicInteger();
+	private final AtomicLong lastUid = new AtomicLong();
+
+	private final UidCheckpointStore store = new UidCheckpointStore() {
+
+		@Override
+		public long getLastUid(final String folderName, final long uidValidity) {
+			return MessagePipelineTest.this.lastUid.get();
+		}
+
+		@Override
+		public void setLastUid(final String folderName, final long uidValidity, final long uid) {
+			MessagePipelineTest.this.lastUid.set(uid);
+		}
+	};
+
+	private static Message message(final String headers) throws MessagingException {
+		final byte[] data = (headers + "\r\n\r\nBody\r\n").getBytes(Charset.forName("US-ASCII"));
+		return new MimeMessage(Session.getInstance(new Properties()), new ByteArrayInputStream(data));
+	}
+
+	private MessagePipeline pipeline() {
+		final MessagePipeline pipeline = new MessagePipeline();
+		pipeline.setClassifier(new MessageClassifier() {
+
+			@Override
+			public MessageHandlerResult classify(final AjahMimeMessage message) throws MessagingException {
+				return "skip".equals(message.getSubject()) ? MessageHandlerResult.SKIPPED : MessageHandlerResult.SUCCESS;
+			}
+		});
+		pipeline.addMessageHandler(new MessageHandler() {
+
+			@Override
+			public MessageHandlerResponse handle(final AjahMimeMessage message) {
+				MessagePipelineTest.this.handled.incrementAndGet();
+				return new MessageHandlerResponse(message, MessageHandlerResult.SUCCESS);
+			}
+
+			@Override
+			public void addHandler(final MessageHandlerResult result, final MessageHandler messageHandler) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void close() {
+				// Nothing to close
+			}
+		});
+		pipeline.start();
+		return pipeline;
+	}
+
+	/**
+	 * The callback should run once a message is handled, skipped, or fails to
+	 * parse.
+	 * 
+	 * @throws Exception
+	 *             If the test fails.
+	 */
+	@Test
+	public void callbacks() throws Exception {
+		final AtomicInteger done = new AtomicInteger();
+		final Runnable callback = new Runnable() {
+
+			@Override
+			public void run() {
+				done.incrementAndGet();
+			}
+		};
+		final MessagePipeline pipeline = pipeline();
+		try {
+			pipeline.submit(message("Message-ID: <1@example.com>\r\nSubject: handle"), callback);
+			pipeline.submit(message("Message-ID: <2@example.com>\r\nSubject: skip"), callback);
+			// An empty Message-ID can't be turned into an id
+			pipeline.submit(message("Message-ID: \r\nSubject: fail"), callback);
+		} finally {
+			pipeline.close();
+		}
+		Assert.assertEquals(3, done.get());
+		Assert.assertEquals(1, pipeline.getHandled().get());
+		Assert.assertEquals(1, pipeline.getSkipped().get());
+		Assert.assertEquals(1, pipeline.getFailed().get());
+		Assert.assertEquals(1, this.handled.get());
+	}
+
+	/**
+	 * The checkpoint should stop below a UID that is still outstanding, and
+	 * move past it once it is done.
+	 * 
+	 * @throws Exception
+	 *             If the test fails.
+	 */
+	@Test
+	public void trackerWaitsForOutstanding() throws Exception {
+		final UidTracker tracker = new UidTracker(this.store, "INBOX", 1, 10);
+		final Runnable first = tracker.submitted(11);
+		final Runnable second = tracker.submitted(12);
+		final Runnable third = tracker.submitted(13);
+		first.run();
+		third.run();
+		tracker.save();
+		Assert.assertEquals(11, this.lastUid.get());
+		tracker.finish();
+		Assert.assertEquals(11, this.lastUid.get());
+		second.run();
+		Assert.assertEquals(13, this.lastUid.get());
+	}
+
+	/**
+	 * Once the pipeline has finished with every submitted message, the
+	 * checkpoint should be at the last UID.
+	 * 
+	 * @throws Exception
+	 *             If the test fails.
+	 */
+	@Test
+	public void trackerWithPipeline() throws Exception {
+		final UidTracker tracker = new UidTracker(this.store, "INBOX", 1, 0);
+		final MessagePipeline pipeline = pipeline();
+		try {
+			for (int uid = 1; uid <= 5; uid++) {
+				pipeline.submit(message("Message-ID: <" + uid + "@example.com>\r\nSubject: " + (uid == 3 ? "skip" : "handle")), tracker.submitted(uid));
+			}
+			tracker.finish();
+		} finally {
+			pipeline.close();
+		}
+		Assert.assertEquals(5, this.lastUid.get());
+		Assert.assertEquals(4, this.handled.get());
+	}
+
+}
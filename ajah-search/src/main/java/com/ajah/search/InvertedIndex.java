@@ -0,0 +1,590 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.search;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.extern.java.Log;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * An embedded full-text index of documents identified by strings, searched
+ * with BM25 ranking.
+ * 
+ * New documents are collected in memory and written out as an immutable
+ * segment file every {@link #setFlushThreshold(int)} documents or on
+ * {@link #flush()}. When there are more than {@link #setMaxSegments(int)}
+ * segments, the two adjacent segments with the fewest documents are merged,
+ * dropping documents that have since been replaced or deleted, so merges stay
+ * small and incremental rather than rewriting the whole index.
+ * 
+ * Adding a document with an ID that is already indexed replaces it. Deletes
+ * are recorded as empty documents so they survive a restart. Documents that
+ * have not been flushed are lost if the process exits without calling
+ * {@link #close()}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Log
+public class InvertedIndex implements Closeable {
+
+	private static final float K1 = 1.2f;
+	private static final float B = 0.75f;
+
+	private static final Pattern SEGMENT_NAME = Pattern.compile("seg-(\\d+)\\.idx");
+
+	private final File directory;
+	private final TextAnalyzer analyzer = new TextAnalyzer();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/** Segments, in document number order. */
+	private final List<Segment> segments = new ArrayList<>();
+
+	/** The current document number of each live ID. */
+	private final Map<String, Integer> live = new HashMap<>();
+	private long liveLength;
+
+	private final Map<String, Postings> bufferPostings = new HashMap<>();
+	private final List<String> bufferIds = new ArrayList<>();
+	private final List<Integer> bufferLengths = new ArrayList<>();
+	private final BitSet bufferDeleted = new BitSet();
+	private int bufferBase;
+
+	private long nextGeneration;
+	private int flushThreshold = 10000;
+	private int maxSegments = 10;
+
+	/**
+	 * Opens an index, creating it if the directory is empty.
+	 * 
+	 * @param directory
+	 *            The directory the segment files are kept in, required. It
+	 *            will be created if it does not exist.
+	 * @throws IOException
+	 *             If the directory or its segments could not be read.
+	 */
+	public InvertedIndex(final File directory) throws IOException {
+		AjahUtils.requireParam(directory, "directory");
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		load();
+	}
+
+	/**
+	 * Indexes a document, replacing any previous version with the same ID.
+	 * 
+	 * @param id
+	 *            The ID of the document, required.
+	 * @param text
+	 *            The text of the document, may contain HTML. If there is no
+	 *            searchable text the document is deleted.
+	 * @throws IOException
+	 *             If this triggered a flush and it failed.
+	 */
+	public void add(final String id, final String text) throws IOException {
+		AjahUtils.requireParam(id, "id");
+		final List<String> terms = this.analyzer.analyze(text);
+		final Map<String, int[]> freqs = new HashMap<>();
+		for (final String term : terms) {
+			final int[] freq = freqs.get(term);
+			if (freq == null) {
+				freqs.put(term, new int[] { 1 });
+			} else {
+				freq[0]++;
+			}
+		}
+		this.lock.writeLock().lock();
+		try {
+			final boolean existed = supersede(id);
+			if (terms.isEmpty() && !existed) {
+				return;
+			}
+			final int doc = bufferDoc(id, terms.size());
+			for (final Map.Entry<String, int[]> freq : freqs.entrySet()) {
+				Postings postings = this.bufferPostings.get(freq.getKey());
+				if (postings == null) {
+					postings = new Postings();
+					this.bufferPostings.put(freq.getKey(), postings);
+				}
+				postings.add(doc, freq.getValue()[0]);
+			}
+			if (this.bufferIds.size() >= this.flushThreshold) {
+				flush();
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a document from the index.
+	 * 
+	 * @param id
+	 *            The ID of the document, required.
+	 * @throws IOException
+	 *             If this triggered a flush and it failed.
+	 */
+	public void delete(final String id) throws IOException {
+		add(id, null);
+	}
+
+	/**
+	 * Finds the documents that best match a query. Documents matching more of
+	 * the query's terms, rarer terms, and terms that make up more of a shorter
+	 * document score higher.
+	 * 
+	 * @param query
+	 *            The words to search for.
+	 * @param limit
+	 *            The maximum number of results.
+	 * @return The matching documents, best first. May be empty but not null.
+	 */
+	public List<SearchHit> search(final String query, final int limit) {
+		final Set<String> terms = new LinkedHashSet<>(this.analyzer.analyze(query));
+		final List<SearchHit> hits = new ArrayList<>();
+		if (terms.isEmpty() || limit < 1) {
+			return hits;
+		}
+		this.lock.readLock().lock();
+		try {
+			final int docCount = this.live.size();
+			if (docCount == 0) {
+				return hits;
+			}
+			final float averageLength = (float) this.liveLength / docCount;
+			final int[] bufferLengths = new int[this.bufferLengths.size()];
+			for (int i = 0; i < bufferLengths.length; i++) {
+				bufferLengths[i] = this.bufferLengths.get(i).intValue();
+			}
+			final Map<Integer, float[]> scores = new HashMap<>();
+			for (final String term : terms) {
+				final Postings buffered = this.bufferPostings.get(term);
+				int docFreq = buffered == null ? 0 : buffered.size();
+				for (final Segment segment : this.segments) {
+					docFreq += segment.docFreq(term);
+				}
+				if (docFreq == 0) {
+					continue;
+				}
+				final float idf = (float) Math.log(1 + (docCount - docFreq + 0.5) / (docFreq + 0.5));
+				for (final Segment segment : this.segments) {
+					final Postings postings = segment.postings(term);
+					if (postings != null) {
+						score(postings, segment.docBase, segment.deleted, segment.lengths, idf, averageLength, scores);
+					}
+				}
+				if (buffered != null) {
+					score(buffered, this.bufferBase, this.bufferDeleted, bufferLengths, idf, averageLength, scores);
+				}
+			}
+			final PriorityQueue<Map.Entry<Integer, float[]>> top = new PriorityQueue<>(limit, new Comparator<Map.Entry<Integer, float[]>>() {
+
+				@Override
+				public int compare(final Map.Entry<Integer, float[]> a, final Map.Entry<Integer, float[]> b) {
+					return Float.compare(a.getValue()[0], b.getValue()[0]);
+				}
+			});
+			for (final Map.Entry<Integer, float[]> score : scores.entrySet()) {
+				if (top.size() < limit) {
+					top.add(score);
+				} else if (score.getValue()[0] > top.peek().getValue()[0]) {
+					top.poll();
+					top.add(score);
+				}
+			}
+			while (!top.isEmpty()) {
+				final Map.Entry<Integer, float[]> score = top.poll();
+				hits.add(new SearchHit(getId(score.getKey().intValue()), score.getValue()[0]));
+			}
+			Collections.reverse(hits);
+			return hits;
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes any documents held in memory to a new segment, merging segments
+	 * if there are now too many.
+	 * 
+	 * @throws IOException
+	 *             If the segment could not be written.
+	 */
+	public void flush() throws IOException {
+		this.lock.writeLock().lock();
+		try {
+			if (this.bufferIds.isEmpty()) {
+				return;
+			}
+			final int limit = this.bufferBase + this.bufferIds.size();
+			final long generation = this.nextGeneration++;
+			final File file = getFile(generation);
+			final SegmentWriter writer = new SegmentWriter(file, this.bufferBase, limit);
+			try {
+				for (int i = 0; i < this.bufferIds.size(); i++) {
+					writer.addDoc(this.bufferIds.get(i), this.bufferLengths.get(i).intValue());
+				}
+				final List<String> terms = new ArrayList<>(this.bufferPostings.keySet());
+				Collections.sort(terms);
+				for (final String term : terms) {
+					writer.startTerm(term);
+					final Postings postings = this.bufferPostings.get(term);
+					for (int i = 0; i < postings.size(); i++) {
+						if (!this.bufferDeleted.get(postings.doc(i) - this.bufferBase)) {
+							writer.addPosting(postings.doc(i), postings.freq(i));
+						}
+					}
+				}
+				writer.finish();
+			} catch (final IOException | RuntimeException e) {
+				writer.abort();
+				throw e;
+			}
+			final Segment segment = Segment.open(file, generation);
+			segment.deleted.or(this.bufferDeleted);
+			this.segments.add(segment);
+			this.bufferPostings.clear();
+			this.bufferIds.clear();
+			this.bufferLengths.clear();
+			this.bufferDeleted.clear();
+			this.bufferBase = limit;
+			while (this.segments.size() > this.maxSegments) {
+				mergeSmallest();
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Flushes any documents held in memory.
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	/**
+	 * Returns the number of documents in the index.
+	 * 
+	 * @return The number of documents in the index.
+	 */
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.live.size();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Sets the number of documents held in memory before a segment is written.
+	 * Defaults to 10,000.
+	 * 
+	 * @param flushThreshold
+	 *            The number of documents per new segment.
+	 */
+	public void setFlushThreshold(final int flushThreshold) {
+		AjahUtils.requireParam(flushThreshold, "flushThreshold", 1);
+		this.flushThreshold = flushThreshold;
+	}
+
+	/**
+	 * Sets the number of segments above which segments are merged. Defaults
+	 * to 10.
+	 * 
+	 * @param maxSegments
+	 *            The maximum number of segments.
+	 */
+	public void setMaxSegments(final int maxSegments) {
+		AjahUtils.requireParam(maxSegments, "maxSegments", 1);
+		this.maxSegments = maxSegments;
+	}
+
+	private static void score(final Postings postings, final int docBase, final BitSet deleted, final int[] lengths, final float idf, final float averageLength,
+			final Map<Integer, float[]> scores) {
+		for (int i = 0; i < postings.size(); i++) {
+			final int local = postings.doc(i) - docBase;
+			if (deleted.get(local)) {
+				continue;
+			}
+			final float freq = postings.freq(i);
+			final float score = idf * freq * (K1 + 1) / (freq + K1 * (1 - B + B * lengths[local] / averageLength));
+			final Integer doc = Integer.valueOf(postings.doc(i));
+			final float[] total = scores.get(doc);
+			if (total == null) {
+				scores.put(doc, new float[] { score });
+			} else {
+				total[0] += score;
+			}
+		}
+	}
+
+	/**
+	 * Appends a document to the in-memory buffer. Empty documents are
+	 * tombstones and are deleted from the start.
+	 */
+	private int bufferDoc(final String id, final int length) {
+		final int doc = this.bufferBase + this.bufferIds.size();
+		if (length == 0) {
+			this.bufferDeleted.set(this.bufferIds.size());
+		} else {
+			this.live.put(id, Integer.valueOf(doc));
+			this.liveLength += length;
+		}
+		this.bufferIds.add(id);
+		this.bufferLengths.add(Integer.valueOf(length));
+		return doc;
+	}
+
+	/**
+	 * Marks the current version of a document as deleted.
+	 * 
+	 * @return true if there was a current version.
+	 */
+	private boolean supersede(final String id) {
+		final Integer previous = this.live.remove(id);
+		if (previous == null) {
+			return false;
+		}
+		final int doc = previous.intValue();
+		if (doc >= this.bufferBase) {
+			this.bufferDeleted.set(doc - this.bufferBase);
+			this.liveLength -= this.bufferLengths.get(doc - this.bufferBase).intValue();
+		} else {
+			final Segment segment = getSegment(doc);
+			segment.deleted.set(doc - segment.docBase);
+			this.liveLength -= segment.lengths[doc - segment.docBase];
+		}
+		return true;
+	}
+
+	private Segment getSegment(final int doc) {
+		int low = 0;
+		int high = this.segments.size() - 1;
+		while (low < high) {
+			final int mid = (low + high + 1) >>> 1;
+			if (this.segments.get(mid).docBase <= doc) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return this.segments.get(low);
+	}
+
+	private String getId(final int doc) {
+		if (doc >= this.bufferBase) {
+			return this.bufferIds.get(doc - this.bufferBase);
+		}
+		final Segment segment = getSegment(doc);
+		return segment.ids[doc - segment.docBase];
+	}
+
+	private File getFile(final long generation) {
+		return new File(this.directory, String.format("seg-%012d.idx", Long.valueOf(generation)));
+	}
+
+	/**
+	 * Opens the segments in the directory. If a merge was interrupted before
+	 * its inputs were removed, the merged segment wins.
+	 */
+	private void load() throws IOException {
+		final List<Segment> loaded = new ArrayList<>();
+		final File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (final File file : files) {
+				final Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+				if (matcher.matches()) {
+					final long generation = Long.parseLong(matcher.group(1));
+					loaded.add(Segment.open(file, generation));
+					this.nextGeneration = Math.max(this.nextGeneration, generation + 1);
+				} else if (file.getName().endsWith(".idx.tmp")) {
+					file.delete();
+				}
+			}
+		}
+		Collections.sort(loaded, new Comparator<Segment>() {
+
+			@Override
+			public int compare(final Segment a, final Segment b) {
+				return Long.compare(b.generation, a.generation);
+			}
+		});
+		for (final Segment segment : loaded) {
+			boolean overlaps = false;
+			for (final Segment kept : this.segments) {
+				if (segment.docBase < kept.limit && kept.docBase < segment.limit) {
+					overlaps = true;
+					break;
+				}
+			}
+			if (overlaps) {
+				log.warning("Removing segment replaced by an interrupted merge: " + segment.file);
+				segment.file.delete();
+			} else {
+				this.segments.add(segment);
+			}
+		}
+		Collections.sort(this.segments, new Comparator<Segment>() {
+
+			@Override
+			public int compare(final Segment a, final Segment b) {
+				return Integer.compare(a.docBase, b.docBase);
+			}
+		});
+		for (final Segment segment : this.segments) {
+			for (int i = 0; i < segment.size(); i++) {
+				supersede(segment.ids[i]);
+				if (segment.lengths[i] == 0) {
+					segment.deleted.set(i);
+				} else {
+					this.live.put(segment.ids[i], Integer.valueOf(segment.docBase + i));
+					this.liveLength += segment.lengths[i];
+				}
+			}
+			this.bufferBase = segment.limit;
+		}
+	}
+
+	/**
+	 * Merges the adjacent pair of segments with the fewest documents.
+	 */
+	private void mergeSmallest() throws IOException {
+		int smallest = 0;
+		for (int i = 1; i < this.segments.size() - 1; i++) {
+			if (this.segments.get(i).size() + this.segments.get(i + 1).size() < this.segments.get(smallest).size() + this.segments.get(smallest + 1).size()) {
+				smallest = i;
+			}
+		}
+		merge(smallest);
+	}
+
+	private void merge(final int index) throws IOException {
+		final Segment first = this.segments.get(index);
+		final Segment second = this.segments.get(index + 1);
+		// Tombstones only matter while an older segment might hold their ID
+		final boolean dropTombstones = index == 0;
+		final Segment[] inputs = new Segment[] { first, second };
+		final int[][] remap = new int[2][];
+		int next = first.docBase;
+		for (int s = 0; s < 2; s++) {
+			final Segment input = inputs[s];
+			remap[s] = new int[input.size()];
+			for (int i = 0; i < input.size(); i++) {
+				final boolean tombstone = input.lengths[i] == 0;
+				if (!input.deleted.get(i) || (tombstone && !dropTombstones)) {
+					remap[s][i] = next++;
+				} else {
+					remap[s][i] = -1;
+				}
+			}
+		}
+		final List<Segment> replaced = new ArrayList<>();
+		replaced.add(first);
+		replaced.add(second);
+		if (next == first.docBase) {
+			this.segments.removeAll(replaced);
+			deleteFiles(replaced);
+			return;
+		}
+		final long generation = this.nextGeneration++;
+		final File file = getFile(generation);
+		final SegmentWriter writer = new SegmentWriter(file, first.docBase, second.limit);
+		try {
+			for (int s = 0; s < 2; s++) {
+				for (int i = 0; i < inputs[s].size(); i++) {
+					if (remap[s][i] >= 0) {
+						writer.addDoc(inputs[s].ids[i], inputs[s].lengths[i]);
+					}
+				}
+			}
+			final String[] firstTerms = first.terms();
+			final String[] secondTerms = second.terms();
+			int a = 0;
+			int b = 0;
+			while (a < firstTerms.length || b < secondTerms.length) {
+				final int compare = a == firstTerms.length ? 1 : b == secondTerms.length ? -1 : firstTerms[a].compareTo(secondTerms[b]);
+				final String term = compare <= 0 ? firstTerms[a] : secondTerms[b];
+				writer.startTerm(term);
+				if (compare <= 0) {
+					copyPostings(writer, first, term, remap[0]);
+					a++;
+				}
+				if (compare >= 0) {
+					copyPostings(writer, second, term, remap[1]);
+					b++;
+				}
+			}
+			writer.finish();
+		} catch (final IOException | RuntimeException e) {
+			writer.abort();
+			throw e;
+		}
+		final Segment merged = Segment.open(file, generation);
+		for (int i = 0; i < merged.size(); i++) {
+			final Integer doc = Integer.valueOf(merged.docBase + i);
+			if (merged.lengths[i] == 0) {
+				merged.deleted.set(i);
+			} else {
+				this.live.put(merged.ids[i], doc);
+			}
+		}
+		this.segments.set(index, merged);
+		this.segments.remove(index + 1);
+		deleteFiles(replaced);
+		log.fine("Merged " + first.file.getName() + " and " + second.file.getName() + " into " + file.getName() + " with " + merged.size() + " documents");
+	}
+
+	private static void copyPostings(final SegmentWriter writer, final Segment segment, final String term, final int[] remap) throws IOException {
+		final Postings postings = segment.postings(term);
+		for (int i = 0; i < postings.size(); i++) {
+			final int doc = remap[postings.doc(i) - segment.docBase];
+			if (doc >= 0) {
+				writer.addPosting(doc, postings.freq(i));
+			}
+		}
+	}
+
+	private static void deleteFiles(final List<Segment> segments) {
+		for (final Segment segment : segments) {
+			if (!segment.file.delete()) {
+				log.warning("Could not delete merged segment " + segment.file);
+			}
+		}
+	}
+
+}
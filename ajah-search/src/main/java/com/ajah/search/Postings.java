@@ -0,0 +1,55 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.search;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of (document number, term frequency) pairs for one term, in
+ * ascending document order.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+final class Postings {
+
+	private int[] docs = new int[4];
+	private int[] freqs = new int[4];
+	private int size;
+
+	void add(final int doc, final int freq) {
+		if (this.size == this.docs.length) {
+			this.docs = Arrays.copyOf(this.docs, this.size * 2);
+			this.freqs = Arrays.copyOf(this.freqs, this.size * 2);
+		}
+		this.docs[this.size] = doc;
+		this.freqs[this.size] = freq;
+		this.size++;
+	}
+
+	int doc(final int index) {
+		return this.docs[index];
+	}
+
+	int freq(final int index) {
+		return this.freqs[index];
+	}
+
+	int size() {
+		return this.size;
+	}
+
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An immutable segment file, memory-mapped so postings are decoded straight
+ * from the page cache. The document table and term dictionary are read into
+ * memory when the segment is opened.
+ * 
+ * A segment owns the document numbers from its doc base up to its limit. Its
+ * documents are numbered contiguously from the doc base, but a merged segment
+ * may hold fewer documents than it owns.
+ * 
+ * @see SegmentWriter
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+final class Segment {
+
+	static final int MAGIC = 0x41534731;
+
+	private static final int FOOTER_SIZE = 36;
+
+	final File file;
+	final long generation;
+	final int docBase;
+	final int limit;
+	final String[] ids;
+	final int[] lengths;
+
+	/**
+	 * Documents that have been deleted or replaced since this segment was
+	 * written. This is rebuilt when the index is opened.
+	 */
+	final BitSet deleted = new BitSet();
+
+	private final String[] terms;
+	private final int[] docFreqs;
+	private final long[] offsets;
+	private final MappedByteBuffer buffer;
+
+	private Segment(final File file, final long generation, final MappedByteBuffer buffer) throws IOException {
+		this.file = file;
+		this.generation = generation;
+		this.buffer = buffer;
+		final ByteBuffer footer = buffer.duplicate();
+		footer.position(buffer.capacity() - FOOTER_SIZE);
+		final long postingsOffset = footer.getLong();
+		final long dictOffset = footer.getLong();
+		this.docBase = footer.getInt();
+		this.limit = footer.getInt();
+		final int docCount = footer.getInt();
+		final int termCount = footer.getInt();
+		if (footer.getInt() != MAGIC) {
+			throw new IOException("Not a segment file: " + file);
+		}
+		final ByteBuffer docs = buffer.duplicate();
+		this.ids = new String[docCount];
+		this.lengths = new int[docCount];
+		for (int i = 0; i < docCount; i++) {
+			this.ids[i] = readString(docs);
+			this.lengths[i] = VarInt.readInt(docs);
+		}
+		if (docs.position() != postingsOffset) {
+			throw new IOException("Corrupt document table: " + file);
+		}
+		final ByteBuffer dict = buffer.duplicate();
+		dict.position((int) dictOffset);
+		this.terms = new String[termCount];
+		this.docFreqs = new int[termCount];
+		this.offsets = new long[termCount];
+		for (int i = 0; i < termCount; i++) {
+			this.terms[i] = readString(dict);
+			this.docFreqs[i] = VarInt.readInt(dict);
+			this.offsets[i] = VarInt.readLong(dict);
+		}
+	}
+
+	/**
+	 * Opens and maps a segment file.
+	 * 
+	 * @param file
+	 *            The segment file.
+	 * @param generation
+	 *            The generation the file was written in.
+	 * @return The segment.
+	 * @throws IOException
+	 *             If the file could not be read or is not a segment.
+	 */
+	static Segment open(final File file, final long generation) throws IOException {
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "r"); final FileChannel channel = raf.getChannel()) {
+			final long size = channel.size();
+			if (size < FOOTER_SIZE || size > Integer.MAX_VALUE) {
+				throw new IOException("Invalid segment size " + size + ": " + file);
+			}
+			// The mapping remains valid after the channel is closed
+			return new Segment(file, generation, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+	}
+
+	int docFreq(final String term) {
+		final int index = Arrays.binarySearch(this.terms, term);
+		return index < 0 ? 0 : this.docFreqs[index];
+	}
+
+	/**
+	 * Decodes the postings for a term.
+	 * 
+	 * @return The postings, or null if the term is not in this segment.
+	 */
+	Postings postings(final String term) {
+		final int index = Arrays.binarySearch(this.terms, term);
+		if (index < 0) {
+			return null;
+		}
+		final ByteBuffer in = this.buffer.duplicate();
+		in.position((int) this.offsets[index]);
+		final Postings postings = new Postings();
+		int doc = this.docBase;
+		for (int i = 0; i < this.docFreqs[index]; i++) {
+			doc += VarInt.readInt(in);
+			postings.add(doc, VarInt.readInt(in));
+		}
+		return postings;
+	}
+
+	String[] terms() {
+		return this.terms;
+	}
+
+	int size() {
+		return this.ids.length;
+	}
+
+	private static String readString(final ByteBuffer in) {
+		final byte[] bytes = new byte[VarInt.readInt(in)];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.search;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes an immutable segment file. Documents are added first, then terms in
+ * sorted order with their postings in ascending document order. Postings are
+ * stored as varint gaps between document numbers followed by the term
+ * frequency, so a typical posting takes two bytes.
+ * 
+ * The file is laid out as documents, postings, the term dictionary and a fixed
+ * size footer, and is written to a temporary file that is renamed into place
+ * by {@link #finish()}.
+ * 
+ * @see Segment
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+final class SegmentWriter {
+
+	private final File file;
+	private final File temp;
+	private final DataOutputStream out;
+	private final int docBase;
+	private final int limit;
+
+	private long position;
+	private long postingsOffset = -1;
+	private int docCount;
+
+	private final List<String> terms = new ArrayList<>();
+	private long[] offsets = new long[64];
+	private int[] docFreqs = new int[64];
+
+	private String term;
+	private int lastDoc;
+
+	SegmentWriter(final File file, final int docBase, final int limit) throws IOException {
+		this.file = file;
+		this.temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.temp), 65536));
+		this.docBase = docBase;
+		this.limit = limit;
+	}
+
+	/**
+	 * Adds the next document, numbered from the segment's doc base.
+	 */
+	void addDoc(final String id, final int length) throws IOException {
+		if (this.postingsOffset >= 0) {
+			throw new IllegalStateException("Documents must be added before terms");
+		}
+		writeString(id);
+		this.position += VarInt.writeInt(this.out, length);
+		this.docCount++;
+	}
+
+	/**
+	 * Starts a term, which must sort after the previous one.
+	 */
+	void startTerm(final String newTerm) throws IOException {
+		endTerm();
+		if (this.postingsOffset < 0) {
+			this.postingsOffset = this.position;
+		}
+		if (!this.terms.isEmpty() && this.terms.get(this.terms.size() - 1).compareTo(newTerm) >= 0) {
+			throw new IllegalStateException("Terms out of order: " + newTerm);
+		}
+		this.term = newTerm;
+		this.lastDoc = -1;
+		if (this.terms.size() == this.offsets.length) {
+			this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+			this.docFreqs = Arrays.copyOf(this.docFreqs, this.docFreqs.length * 2);
+		}
+		this.offsets[this.terms.size()] = this.position;
+		this.docFreqs[this.terms.size()] = 0;
+	}
+
+	/**
+	 * Adds a posting to the current term, after any previous document.
+	 */
+	void addPosting(final int doc, final int freq) throws IOException {
+		if (doc <= this.lastDoc || doc < this.docBase || doc >= this.docBase + this.docCount) {
+			throw new IllegalStateException("Posting out of order or range: " + doc);
+		}
+		this.position += VarInt.writeInt(this.out, this.lastDoc < 0 ? doc - this.docBase : doc - this.lastDoc);
+		this.position += VarInt.writeInt(this.out, freq);
+		this.lastDoc = doc;
+		this.docFreqs[this.terms.size()]++;
+	}
+
+	/**
+	 * Writes the dictionary and footer and moves the file into place.
+	 */
+	void finish() throws IOException {
+		endTerm();
+		if (this.postingsOffset < 0) {
+			this.postingsOffset = this.position;
+		}
+		final long dictOffset = this.position;
+		for (int i = 0; i < this.terms.size(); i++) {
+			writeString(this.terms.get(i));
+			VarInt.writeInt(this.out, this.docFreqs[i]);
+			VarInt.writeLong(this.out, this.offsets[i]);
+		}
+		this.out.writeLong(this.postingsOffset);
+		this.out.writeLong(dictOffset);
+		this.out.writeInt(this.docBase);
+		this.out.writeInt(this.limit);
+		this.out.writeInt(this.docCount);
+		this.out.writeInt(this.terms.size());
+		this.out.writeInt(Segment.MAGIC);
+		this.out.close();
+		if (!this.temp.renameTo(this.file)) {
+			throw new IOException("Could not rename " + this.temp + " to " + this.file);
+		}
+	}
+
+	/**
+	 * Abandons the segment, removing the temporary file.
+	 */
+	void abort() {
+		try {
+			this.out.close();
+		} catch (final IOException e) {
+			// We're discarding it anyway
+		}
+		this.temp.delete();
+	}
+
+	private void endTerm() {
+		if (this.term != null && this.docFreqs[this.terms.size()] > 0) {
+			// Terms with no postings are dropped, their bytes are empty
+			this.terms.add(this.term);
+		}
+		this.term = null;
+	}
+
+	private void writeString(final String string) throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		this.position += VarInt.writeInt(this.out, bytes.length);
+		this.out.write(bytes);
+		this.position += bytes.length;
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits text into lowercase terms for indexing and querying. Terms are runs
+ * of letters and digits; HTML tags and entities are skipped, as are common
+ * English stop words and terms too short or too long to be useful.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class TextAnalyzer {
+
+	private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList("a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "if", "in", "into", "is", "it", "no",
+			"not", "of", "on", "or", "such", "that", "the", "their", "then", "there", "these", "they", "this", "to", "was", "will", "with"));
+
+	private static final int MAX_TERM_LENGTH = 40;
+
+	/**
+	 * Splits text into terms, in the order they appear.
+	 * 
+	 * @param text
+	 *            The text, may contain HTML. May be null.
+	 * @return The terms, may be empty but not null.
+	 */
+	public List<String> analyze(final String text) {
+		final List<String> terms = new ArrayList<>();
+		if (text == null) {
+			return terms;
+		}
+		final int length = text.length();
+		final StringBuilder term = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			final char c = text.charAt(i);
+			if (Character.isLetterOrDigit(c)) {
+				term.append(Character.toLowerCase(c));
+				continue;
+			}
+			addTerm(terms, term);
+			if (c == '<') {
+				final int end = text.indexOf('>', i);
+				if (end > 0) {
+					i = end;
+				}
+			} else if (c == '&') {
+				final int end = entityEnd(text, i);
+				if (end > 0) {
+					i = end;
+				}
+			}
+		}
+		addTerm(terms, term);
+		return terms;
+	}
+
+	/**
+	 * Finds the end of an entity such as &amp;amp; or &amp;#39;.
+	 * 
+	 * @return The index of the semicolon, or -1 if this isn't an entity.
+	 */
+	private static int entityEnd(final String text, final int start) {
+		final int max = Math.min(text.length(), start + 10);
+		for (int i = start + 1; i < max; i++) {
+			final char c = text.charAt(i);
+			if (c == ';') {
+				return i > start + 1 ? i : -1;
+			}
+			if (!Character.isLetterOrDigit(c) && c != '#') {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	private static void addTerm(final List<String> terms, final StringBuilder term) {
+		if (term.length() > 1 && term.length() <= MAX_TERM_LENGTH) {
+			final String string = term.toString();
+			if (!STOP_WORDS.contains(string)) {
+				terms.add(string);
+			}
+		}
+		term.setLength(0);
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.search;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-length integer encoding, seven bits per byte with the high bit set
+ * on every byte but the last. Small numbers, such as the gaps between sorted
+ * document numbers, take a single byte.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class VarInt {
+
+	/**
+	 * Reads a non-negative int.
+	 * 
+	 * @param buffer
+	 *            The buffer to read from, at its current position.
+	 * @return The value read.
+	 */
+	public static int readInt(final ByteBuffer buffer) {
+		int b = buffer.get();
+		int value = b & 0x7F;
+		for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+		}
+		return value;
+	}
+
+	/**
+	 * Reads a non-negative long.
+	 * 
+	 * @param buffer
+	 *            The buffer to read from, at its current position.
+	 * @return The value read.
+	 */
+	public static long readLong(final ByteBuffer buffer) {
+		long b = buffer.get();
+		long value = b & 0x7F;
+		for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+		}
+		return value;
+	}
+
+	/**
+	 * Writes a non-negative int.
+	 * 
+	 * @param out
+	 *            The output to write to.
+	 * @param value
+	 *            The value, must not be negative.
+	 * @return The number of bytes written.
+	 * @throws IOException
+	 *             If the output could not be written to.
+	 */
+	public static int writeInt(final DataOutput out, final int value) throws IOException {
+		return writeLong(out, value);
+	}
+
+	/**
+	 * Writes a non-negative long.
+	 * 
+	 * @param out
+	 *            The output to write to.
+	 * @param value
+	 *            The value, must not be negative.
+	 * @return The number of bytes written.
+	 * @throws IOException
+	 *             If the output could not be written to.
+	 */
+	public static int writeLong(final DataOutput out, final long value) throws IOException {
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative values are not supported: " + value);
+		}
+		long remaining = value;
+		int written = 1;
+		while ((remaining & ~0x7FL) != 0) {
+			out.writeByte((int) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+			written++;
+		}
+		out.writeByte((int) remaining);
+		return written;
+	}
+
+}
@@ -0,0 +1,7 @@
+/**
+The Ajah Search Library provides a small embedded full-text index, for finding documents by their words without scanning a database table.
+
+@author Eric F. Savage
+@version 1.0
+ */
+package com.ajah.search;
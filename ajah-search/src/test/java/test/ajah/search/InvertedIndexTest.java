@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ajah.search.InvertedIndex;
+import com.ajah.search.SearchHit;
+
+/**
+ * Tests {@link InvertedIndex}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class InvertedIndexTest {
+
+	private File directory;
+
+	/**
+	 * Creates an empty index directory.
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setUp() throws IOException {
+		this.directory = Files.createTempDirectory("ajah-search").toFile();
+	}
+
+	/**
+	 * Removes the index directory.
+	 */
+	@After
+	public void tearDown() {
+		for (final File file : this.directory.listFiles()) {
+			file.delete();
+		}
+		this.directory.delete();
+	}
+
+	private static void add(final InvertedIndex index) throws IOException {
+		index.add("1", "<p>The quick brown fox jumps over the lazy dog</p>");
+		index.add("2", "A fox, a fox &amp; another fox!");
+		index.add("3", "Dogs and cats living together");
+		index.add("4", "Nothing to see here, just a long rambling post about the weather and the fox that ran by once");
+	}
+
+	/**
+	 * Results should be ranked by BM25 whether or not they've been flushed.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void ranking() throws IOException {
+		try (final InvertedIndex index = new InvertedIndex(this.directory)) {
+			add(index);
+			assertRanking(index);
+			index.flush();
+			assertRanking(index);
+			Assert.assertTrue(index.search("amp", 10).isEmpty());
+			Assert.assertTrue(index.search("the", 10).isEmpty());
+			Assert.assertEquals("1", index.search("lazy DOG", 10).get(0).getId());
+		}
+	}
+
+	private static void assertRanking(final InvertedIndex index) {
+		final List<SearchHit> hits = index.search("fox", 10);
+		Assert.assertEquals(3, hits.size());
+		Assert.assertEquals("2", hits.get(0).getId());
+		Assert.assertEquals("1", hits.get(1).getId());
+		Assert.assertEquals("4", hits.get(2).getId());
+		Assert.assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+		Assert.assertEquals(1, index.search("fox", 1).size());
+	}
+
+	/**
+	 * Replacements, deletes and merges should survive reopening the index.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void updatesAndMerges() throws IOException {
+		try (final InvertedIndex index = new InvertedIndex(this.directory)) {
+			index.setFlushThreshold(2);
+			index.setMaxSegments(2);
+			add(index);
+			index.add("2", "No canines here");
+			index.delete("4");
+			for (int i = 10; i < 30; i++) {
+				index.add(Integer.toString(i), "filler number " + i);
+			}
+			index.delete("3");
+			assertUpdated(index);
+			Assert.assertTrue(this.directory.listFiles().length <= 3);
+		}
+		try (final InvertedIndex index = new InvertedIndex(this.directory)) {
+			assertUpdated(index);
+			index.add("3", "Dogs are back");
+			Assert.assertEquals("3", index.search("dogs", 10).get(0).getId());
+		}
+	}
+
+	private static void assertUpdated(final InvertedIndex index) {
+		Assert.assertEquals(22, index.size());
+		final List<SearchHit> hits = index.search("fox", 10);
+		Assert.assertEquals(1, hits.size());
+		Assert.assertEquals("1", hits.get(0).getId());
+		Assert.assertEquals("2", index.search("canines", 10).get(0).getId());
+		Assert.assertTrue(index.search("dogs", 10).isEmpty());
+		Assert.assertEquals(20, index.search("filler", 100).size());
+	}
+
+}
@@ -25,6 +25,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -639,6 +640,50 @@ public abstract class AbstractAjahDao<K extends Comparable<K>, T extends Identif
 		}
 	}
 
+	/**
+	 * Inserts the records with one JDBC batch, which the driver may send as a
+	 * single statement (e.g. MySQL with rewriteBatchedStatements). May throw
+	 * an error on duplicate key exceptions.
+	 * 
+	 * @param entities
+	 *            Entities to insert into the table, all must have IDs.
+	 * @return Number of rows inserted.
+	 * @throws DatabaseAccessException
+	 *             If an error occurs executing the query.
+	 */
+	@Override
+	public int insertAll(final List<T> entities) throws DatabaseAccessException {
+		AjahUtils.requireParam(entities, "entities");
+		AjahUtils.requireParam(this.jdbcTemplate, "this.jdbcTemplate");
+		if (entities.isEmpty()) {
+			return 0;
+		}
+		final List<Object[]> values = new ArrayList<>(entities.size());
+		for (final T entity : entities) {
+			AjahUtils.requireParam(entity.getId(), "entity.id");
+			values.add(getInsertValues(entity));
+		}
+		try {
+			final String sql = "INSERT INTO " + getTableName() + "(" + getInsertFields() + ") VALUES (" + getInsertPlaceholders() + ")";
+			if (log.isLoggable(Level.FINEST)) {
+				sqlLog.finest(sql + " x " + entities.size());
+			}
+			int inserted = 0;
+			for (final int rows : this.jdbcTemplate.batchUpdate(sql, values)) {
+				// Drivers may report SUCCESS_NO_INFO (-2) rather than a count,
+				// but EXECUTE_FAILED (-3) is not an insert
+				if (rows == Statement.SUCCESS_NO_INFO) {
+					inserted++;
+				} else if (rows > 0) {
+					inserted += rows;
+				}
+			}
+			return inserted;
+		} catch (final DataAccessException e) {
+			throw new DatabaseAccessException(e);
+		}
+	}
+
 	/**
 	 * Find a list of entities by non-unique match.
 	 * 
@@ -17,6 +17,7 @@ package com.ajah.spring.jdbc;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 import com.ajah.util.Identifiable;
 
@@ -72,6 +73,17 @@ public interface AjahDao<K extends Comparable<K>, T extends Identifiable<K>> {
 	 */
 	int insert(final T entity) throws DatabaseAccessException;
 
+	/**
+	 * Inserts records in a single JDBC batch.
+	 * 
+	 * @param entities
+	 *            The entities to insert as records.
+	 * @return The number of rows inserted.
+	 * @throws DatabaseAccessException
+	 *             if the query could not be executed.
+	 */
+	int insertAll(final List<T> entities) throws DatabaseAccessException;
+
 	/**
 	 * Inserts a record.
 	 * 
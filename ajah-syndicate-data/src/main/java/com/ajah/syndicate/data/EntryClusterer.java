@@ -0,0 +1,88 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.syndicate.data;
+
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+
+import com.ajah.syndicate.Entry;
+import com.ajah.syndicate.EntryId;
+import com.ajah.util.AjahUtils;
+import com.ajah.util.data.SimHashIndex;
+
+/**
+ * Groups near-duplicate {@link Entry}s, such as one article syndicated by
+ * several feed sources, as they are ingested. Entries are matched by
+ * {@link Entry#getSimHash()} against recently ingested entries, and a match
+ * is recorded as {@link Entry#getDuplicateOfId()}, pointing at the first
+ * entry seen in the cluster.
+ * 
+ * Only entries ingested since startup are matched, up to a fixed number held
+ * in memory.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Service
+public class EntryClusterer {
+
+	/**
+	 * Fingerprints that differ in this many bits or fewer are considered the
+	 * same article.
+	 */
+	private static final int MAX_DISTANCE = 3;
+
+	private SimHashIndex<EntryId> index = new SimHashIndex<>(MAX_DISTANCE, 1000000);
+
+	/**
+	 * Finds the cluster a new entry belongs to, setting its duplicate-of ID if
+	 * it matches a recent entry, and remembers it for later entries.
+	 * 
+	 * @param entry
+	 *            The entry, required, with an ID.
+	 * @return The ID of the entry this is a duplicate of, or null if it is
+	 *         not a duplicate.
+	 */
+	public EntryId cluster(final Entry entry) {
+		AjahUtils.requireParam(entry, "entry");
+		AjahUtils.requireParam(entry.getId(), "entry.id");
+		if (entry.getSimHash() == null) {
+			return null;
+		}
+		final long simHash = entry.getSimHash().longValue();
+		synchronized (this) {
+			final List<EntryId> matches = this.index.find(simHash);
+			if (!matches.isEmpty() && entry.getDuplicateOfId() == null) {
+				entry.setDuplicateOfId(matches.get(0));
+			}
+			this.index.add(simHash, entry.getDuplicateOfId() == null ? entry.getId() : entry.getDuplicateOfId());
+		}
+		return entry.getDuplicateOfId();
+	}
+
+	/**
+	 * Sets the number of recent entries to match against. Defaults to
+	 * 1,000,000. This clears any entries already held.
+	 * 
+	 * @param maxSize
+	 *            The number of entries to hold.
+	 */
+	public synchronized void setMaxSize(final int maxSize) {
+		this.index = new SimHashIndex<>(MAX_DISTANCE, maxSize);
+	}
+
+}
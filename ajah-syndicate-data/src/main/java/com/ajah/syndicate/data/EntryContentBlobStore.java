@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.syndicate.data;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.stereotype.Repository;
+
+import com.ajah.util.AjahUtils;
+import com.ajah.util.data.BlobStore;
+
+/**
+ * A {@link BlobStore} in the <code>entry_content</code> table, which keeps
+ * large entry bodies out of the <code>entry</code> table.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Repository
+public class EntryContentBlobStore implements BlobStore {
+
+	private JdbcTemplate jdbcTemplate;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] get(final String key) throws IOException {
+		AjahUtils.requireParam(key, "key");
+		try {
+			final List<byte[]> data = this.jdbcTemplate.query("SELECT data FROM entry_content WHERE sha_1 = ?", new Object[] { key }, new SingleColumnRowMapper<>(byte[].class));
+			return data.isEmpty() ? null : data.get(0);
+		} catch (final DataAccessException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void put(final String key, final byte[] data) throws IOException {
+		AjahUtils.requireParam(key, "key");
+		AjahUtils.requireParam(data, "data");
+		try {
+			this.jdbcTemplate.update("INSERT IGNORE INTO entry_content (sha_1, data, created_date) VALUES (?, ?, ?)", key, data, Long.valueOf(System.currentTimeMillis()));
+		} catch (final DataAccessException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Sets up a new JDBC template with the supplied data source.
+	 * 
+	 * @param dataSource
+	 *            DataSource to use for a new JDBC template.
+	 */
+	@Autowired
+	public void setDataSource(final DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+}
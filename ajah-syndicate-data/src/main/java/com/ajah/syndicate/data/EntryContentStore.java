@@ -0,0 +1,123 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.syndicate.data;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.logging.Level;
+
+import lombok.extern.java.Log;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.ajah.syndicate.ContentLoader;
+import com.ajah.syndicate.Entry;
+import com.ajah.util.AjahUtils;
+import com.ajah.util.data.BlobStore;
+import com.ajah.util.data.HashUtils;
+import com.ajah.util.io.CompressionUtils;
+
+/**
+ * Stores large {@link Entry} bodies gzipped in a {@link BlobStore}, keyed by
+ * the SHA-1 of the text so identical content from different feeds is stored
+ * once. Uses the <code>entry_content</code> table unless another store (e.g. a
+ * {@link com.ajah.util.io.file.FileBlobStore} or S3) is set.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Service
+@Log
+public class EntryContentStore implements ContentLoader {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Autowired
+	private EntryContentBlobStore entryContentBlobStore;
+
+	private BlobStore blobStore;
+
+	private int threshold = 2048;
+
+	/**
+	 * Loads and decompresses stored content.
+	 * 
+	 * @see com.ajah.syndicate.ContentLoader#load(java.lang.String)
+	 */
+	@Override
+	public String load(final String sha1) {
+		try {
+			final byte[] data = getBlobStore().get(sha1);
+			if (data == null) {
+				log.warning("No content stored for " + sha1);
+				return null;
+			}
+			return new String(CompressionUtils.gunzip(data), UTF8);
+		} catch (final IOException e) {
+			log.log(Level.WARNING, sha1 + ": " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores text if it is at least as long as the threshold.
+	 * 
+	 * @param text
+	 *            The text to store, may be null.
+	 * @return The SHA-1 the text was stored under, or null if it was too short
+	 *         to be stored separately.
+	 * @throws IOException
+	 *             If the text could not be stored.
+	 */
+	public String store(final String text) throws IOException {
+		if (text == null || text.length() < this.threshold) {
+			return null;
+		}
+		final String sha1 = HashUtils.sha1Hex(text);
+		getBlobStore().put(sha1, CompressionUtils.gzip(text.getBytes(UTF8)));
+		return sha1;
+	}
+
+	private BlobStore getBlobStore() {
+		return this.blobStore == null ? this.entryContentBlobStore : this.blobStore;
+	}
+
+	/**
+	 * Sets the store to keep content in, instead of the
+	 * <code>entry_content</code> table.
+	 * 
+	 * @param blobStore
+	 *            The store to use, required.
+	 */
+	public void setBlobStore(final BlobStore blobStore) {
+		AjahUtils.requireParam(blobStore, "blobStore");
+		this.blobStore = blobStore;
+	}
+
+	/**
+	 * Sets the length (in characters) at which content is stored separately.
+	 * Defaults to 2048.
+	 * 
+	 * @param threshold
+	 *            The threshold.
+	 */
+	public void setThreshold(final int threshold) {
+		AjahUtils.requireParam(threshold, "threshold", 1);
+		this.threshold = threshold;
+	}
+
+}
@@ -15,10 +15,15 @@
  */
 package com.ajah.syndicate.data;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 import org.springframework.stereotype.Repository;
 
 import com.ajah.spring.jdbc.AjahDao;
 import com.ajah.spring.jdbc.DatabaseAccessException;
+import com.ajah.spring.jdbc.criteria.Criteria;
 import com.ajah.syndicate.Entry;
 import com.ajah.syndicate.EntryId;
 import com.ajah.syndicate.FeedSourceId;
@@ -56,4 +61,27 @@ public interface EntryDao extends AjahDao<EntryId, Entry> {
 	 */
 	Entry findByHtmlUrlSha1(final FeedSourceId feedSourceId, final String htmlUrlSha1);
 
+	/**
+	 * Finds which of a group of {@link Entry#getHtmlUrlSha1()} values already
+	 * have entries for a feed source, in a single query.
+	 * 
+	 * @param feedSourceId
+	 *            The feed source.
+	 * @param htmlUrlSha1s
+	 *            The SHA-1s of the URLs to check.
+	 * @return The SHA-1s that matched an entry, may be empty but not null.
+	 * @throws DatabaseAccessException
+	 *             If the query could not be executed.
+	 */
+	Set<String> findExistingHtmlUrlSha1s(final FeedSourceId feedSourceId, final Collection<String> htmlUrlSha1s) throws DatabaseAccessException;
+
+	/**
+	 * Lists entries matching a criteria.
+	 * 
+	 * @param criteria
+	 *            The criteria, required.
+	 * @return The matching entries, may be empty but not null.
+	 */
+	List<Entry> list(final Criteria criteria);
+
 }
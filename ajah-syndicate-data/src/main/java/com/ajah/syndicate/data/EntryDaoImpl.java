@@ -15,9 +15,21 @@
  */
 package com.ajah.syndicate.data;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
 import com.ajah.spring.jdbc.AbstractAjahDao;
+import com.ajah.spring.jdbc.DatabaseAccessException;
 import com.ajah.spring.jdbc.criteria.Criteria;
 import com.ajah.syndicate.Entry;
 import com.ajah.syndicate.EntryId;
@@ -33,6 +45,9 @@ import com.ajah.syndicate.FeedSourceId;
 @Repository
 public class EntryDaoImpl extends AbstractAjahDao<EntryId, Entry, Entry> implements EntryDao {
 
+	@Autowired
+	private EntryContentStore entryContentStore;
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -41,4 +56,50 @@ public class EntryDaoImpl extends AbstractAjahDao<EntryId, Entry, Entry> impleme
 		return find(new Criteria().eq("feed_source_id", feedSourceId).eq("html_url_sha_1", htmlUrlSha1));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Set<String> findExistingHtmlUrlSha1s(final FeedSourceId feedSourceId, final Collection<String> htmlUrlSha1s) throws DatabaseAccessException {
+		final Set<String> found = new HashSet<>();
+		if (htmlUrlSha1s.isEmpty()) {
+			return found;
+		}
+		final StringBuilder sql = new StringBuilder("SELECT html_url_sha_1 FROM ").append(getTableName()).append(" WHERE feed_source_id = ? AND html_url_sha_1 IN (");
+		final List<Object> params = new ArrayList<>(htmlUrlSha1s.size() + 1);
+		params.add(feedSourceId.toString());
+		for (final String htmlUrlSha1 : htmlUrlSha1s) {
+			sql.append(params.size() > 1 ? ", ?" : "?");
+			params.add(htmlUrlSha1);
+		}
+		sql.append(")");
+		try {
+			found.addAll(getJdbcTemplate().queryForList(sql.toString(), params.toArray(), String.class));
+		} catch (final DataAccessException e) {
+			throw new DatabaseAccessException(e);
+		}
+		return found;
+	}
+
+	/**
+	 * Attaches the {@link EntryContentStore} to every entry read, so content
+	 * and descriptions stored there are loaded when accessed, however the
+	 * entry was found.
+	 * 
+	 * @see com.ajah.spring.jdbc.AbstractAjahDao#getRowMapper()
+	 */
+	@Override
+	protected RowMapper<Entry> getRowMapper() {
+		final RowMapper<Entry> rowMapper = super.getRowMapper();
+		return new RowMapper<Entry>() {
+
+			@Override
+			public Entry mapRow(final ResultSet rs, final int rowNum) throws SQLException {
+				final Entry entry = rowMapper.mapRow(rs, rowNum);
+				entry.setContentLoader(EntryDaoImpl.this.entryContentStore);
+				return entry;
+			}
+		};
+	}
+
 }
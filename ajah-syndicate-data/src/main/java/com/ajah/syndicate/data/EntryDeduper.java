@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.syndicate.data;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.ajah.cache.LruCache;
+import com.ajah.spring.jdbc.DatabaseAccessException;
+import com.ajah.syndicate.Entry;
+import com.ajah.syndicate.FeedSourceId;
+import com.ajah.util.AjahUtils;
+import com.ajah.util.CollectionUtils;
+import com.ajah.util.data.HashPrefixSet;
+
+/**
+ * Filters out {@link Entry}s that have already been stored, by
+ * {@link Entry#getHtmlUrlSha1()}. Recently seen SHA-1s are kept in memory per
+ * feed source so entries that show up in poll after poll are rejected without
+ * a query; the rest are checked with one batched query per feed.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Service
+public class EntryDeduper {
+
+	private static final int MAX_BATCH = 500;
+
+	@Autowired
+	private EntryManager entryManager;
+
+	private final LruCache<FeedSourceId, HashPrefixSet> seen = new LruCache<>(10000);
+
+	private int maxPerFeedSource = 1000;
+
+	/**
+	 * Returns the entries that have not been stored before. Entries without an
+	 * html url SHA-1 are always considered new, and an entry that appears
+	 * twice in the list is only returned once.
+	 * 
+	 * @param feedSourceId
+	 *            The feed source the entries are from, required.
+	 * @param entries
+	 *            The entries to check, may be null.
+	 * @return The new entries, in their original order.
+	 * @throws DatabaseAccessException
+	 *             If the stored entries could not be queried.
+	 */
+	public List<Entry> filterNew(final FeedSourceId feedSourceId, final List<Entry> entries) throws DatabaseAccessException {
+		AjahUtils.requireParam(feedSourceId, "feedSourceId");
+		if (CollectionUtils.isEmpty(entries)) {
+			return new ArrayList<>();
+		}
+		final HashPrefixSet known = getSeen(feedSourceId);
+		final Set<String> unknown = new HashSet<>();
+		synchronized (known) {
+			for (final Entry entry : entries) {
+				if (entry.getHtmlUrlSha1() != null && !known.contains(entry.getHtmlUrlSha1())) {
+					unknown.add(entry.getHtmlUrlSha1());
+				}
+			}
+		}
+		final Set<String> existing = new HashSet<>();
+		final List<String> batch = new ArrayList<>(Math.min(unknown.size(), MAX_BATCH));
+		for (final String htmlUrlSha1 : unknown) {
+			batch.add(htmlUrlSha1);
+			if (batch.size() == MAX_BATCH) {
+				existing.addAll(this.entryManager.findExistingHtmlUrlSha1s(feedSourceId, batch));
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			existing.addAll(this.entryManager.findExistingHtmlUrlSha1s(feedSourceId, batch));
+		}
+		final List<Entry> fresh = new ArrayList<>();
+		synchronized (known) {
+			for (final String htmlUrlSha1 : existing) {
+				known.add(htmlUrlSha1);
+			}
+			for (final Entry entry : entries) {
+				if (entry.getHtmlUrlSha1() == null) {
+					fresh.add(entry);
+				} else if (unknown.remove(entry.getHtmlUrlSha1()) && !existing.contains(entry.getHtmlUrlSha1())) {
+					fresh.add(entry);
+				}
+			}
+		}
+		return fresh;
+	}
+
+	/**
+	 * Records that an entry has been stored, so it will be filtered out of
+	 * later polls without a query.
+	 * 
+	 * @param feedSourceId
+	 *            The feed source the entry is from, required.
+	 * @param entry
+	 *            The entry that was stored, required.
+	 */
+	public void markSeen(final FeedSourceId feedSourceId, final Entry entry) {
+		AjahUtils.requireParam(feedSourceId, "feedSourceId");
+		AjahUtils.requireParam(entry, "entry");
+		if (entry.getHtmlUrlSha1() == null) {
+			return;
+		}
+		final HashPrefixSet known = getSeen(feedSourceId);
+		synchronized (known) {
+			known.add(entry.getHtmlUrlSha1());
+		}
+	}
+
+	/**
+	 * Sets the maximum number of SHA-1s remembered per feed source. This
+	 * should comfortably exceed the number of entries a feed carries at once.
+	 * Defaults to 1,000.
+	 * 
+	 * @param maxPerFeedSource
+	 *            The maximum number of SHA-1s per feed source.
+	 */
+	public void setMaxPerFeedSource(final int maxPerFeedSource) {
+		AjahUtils.requireParam(maxPerFeedSource, "maxPerFeedSource", 1);
+		this.maxPerFeedSource = maxPerFeedSource;
+	}
+
+	private HashPrefixSet getSeen(final FeedSourceId feedSourceId) {
+		synchronized (this.seen) {
+			HashPrefixSet known = this.seen.get(feedSourceId);
+			if (known == null) {
+				known = new HashPrefixSet(this.maxPerFeedSource);
+				this.seen.put(feedSourceId, known);
+			}
+			return known;
+		}
+	}
+
+}
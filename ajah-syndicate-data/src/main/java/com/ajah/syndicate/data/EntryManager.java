@@ -15,14 +15,22 @@
  */
 package com.ajah.syndicate.data;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.ajah.spring.jdbc.DatabaseAccessException;
+import com.ajah.spring.jdbc.criteria.Criteria;
+import com.ajah.spring.jdbc.criteria.Order;
 import com.ajah.syndicate.Entry;
 import com.ajah.syndicate.EntryId;
 import com.ajah.syndicate.FeedSourceId;
@@ -42,6 +50,15 @@ public class EntryManager {
 	@Autowired
 	private EntryDao entryDao;
 
+	@Autowired
+	private EntryContentStore entryContentStore;
+
+	@Autowired
+	private EntrySearch entrySearch;
+
+	@Autowired
+	private EntryClusterer entryClusterer;
+
 	/**
 	 * Fetches an Entry by the SHA-1 of it's html url.
 	 * 
@@ -57,9 +74,29 @@ public class EntryManager {
 		return this.entryDao.findByHtmlUrlSha1(feedSourceId, htmlUrlSha1);
 	}
 
+	/**
+	 * Finds which of a group of html url SHA-1s already have entries from a
+	 * feed source, in a single query.
+	 * 
+	 * @param feedSourceId
+	 *            The ID of the FeedSource the entries are from.
+	 * @param htmlUrlSha1s
+	 *            The SHA-1s of the Entries' html urls.
+	 * @return The SHA-1s that already have entries, may be empty but not null.
+	 * @throws DatabaseAccessException
+	 *             If the query could not be executed.
+	 */
+	public Set<String> findExistingHtmlUrlSha1s(final FeedSourceId feedSourceId, final Collection<String> htmlUrlSha1s) throws DatabaseAccessException {
+		return this.entryDao.findExistingHtmlUrlSha1s(feedSourceId, htmlUrlSha1s);
+	}
+
 	/**
 	 * Saves an entry, inserting if the ID is not set, otherwise updating. Will
-	 * set created date if that is null.
+	 * set created date if that is null. Large content and descriptions are
+	 * stored in the {@link EntryContentStore} rather than the entry's row, and
+	 * loaded from there when accessed. New entries are matched against recent
+	 * near-duplicates by {@link EntryClusterer}, and saved entries are indexed
+	 * by {@link EntrySearch} once the transaction commits.
 	 * 
 	 * @param entry
 	 *            The entry to save.
@@ -72,12 +109,75 @@ public class EntryManager {
 		if (entry.getCreated() == null) {
 			entry.setCreated(new Date());
 		}
-		if (entry.getId() == null) {
-			entry.setId(new EntryId(UUID.randomUUID().toString()));
-			this.entryDao.insert(entry);
+		final String content = entry.getContent();
+		final String description = entry.getDescription();
+		// Detach the loader so the DAO doesn't load what we just moved out
+		entry.setContentLoader(null);
+		try {
+			entry.setContentSha1(this.entryContentStore.store(content));
+			if (entry.getContentSha1() != null) {
+				entry.setContent(null);
+			}
+			entry.setDescriptionSha1(this.entryContentStore.store(description));
+			if (entry.getDescriptionSha1() != null) {
+				entry.setDescription(null);
+			}
+			if (entry.getId() == null) {
+				entry.setId(new EntryId(UUID.randomUUID().toString()));
+				this.entryClusterer.cluster(entry);
+				this.entryDao.insert(entry);
+			} else {
+				this.entryDao.update(entry);
+			}
+		} catch (final IOException e) {
+			throw new DatabaseAccessException(e);
+		} finally {
+			entry.setContent(content);
+			entry.setDescription(description);
+			entry.setContentLoader(this.entryContentStore);
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			// Don't index a row that may yet be rolled back
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+				@Override
+				public void afterCommit() {
+					EntryManager.this.entrySearch.index(entry);
+				}
+			});
 		} else {
-			this.entryDao.update(entry);
+			this.entrySearch.index(entry);
+		}
+	}
+
+	/**
+	 * Indexes every entry in {@link EntrySearch}, replacing what is there. Use
+	 * this to rebuild the index after it is lost or the analyzer changes.
+	 * 
+	 * @param batchSize
+	 *            The number of entries to read at a time.
+	 * @return The number of entries indexed.
+	 * @throws DatabaseAccessException
+	 *             If the index could not be written.
+	 */
+	@Transactional(readOnly = true)
+	public int reindex(final int batchSize) throws DatabaseAccessException {
+		AjahUtils.requireParam(batchSize, "batchSize", 1);
+		int indexed = 0;
+		List<Entry> entries;
+		do {
+			entries = this.entryDao.list(new Criteria().orderBy("entry_id", Order.ASC).offset(indexed).rows(batchSize));
+			for (final Entry entry : entries) {
+				this.entrySearch.index(entry);
+			}
+			indexed += entries.size();
+		} while (entries.size() == batchSize);
+		try {
+			this.entrySearch.flush();
+		} catch (final IOException e) {
+			throw new DatabaseAccessException(e);
 		}
+		return indexed;
 	}
 
 }
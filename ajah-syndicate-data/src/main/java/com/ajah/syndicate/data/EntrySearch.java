@@ -0,0 +1,203 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.syndicate.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import javax.annotation.PreDestroy;
+
+import lombok.extern.java.Log;
+
+import org.springframework.stereotype.Service;
+
+import com.ajah.search.InvertedIndex;
+import com.ajah.search.SearchHit;
+import com.ajah.syndicate.Entry;
+import com.ajah.syndicate.EntryId;
+import com.ajah.util.AjahUtils;
+import com.ajah.util.StringUtils;
+import com.ajah.util.config.Config;
+
+/**
+ * Full-text search of {@link Entry}s, using an {@link InvertedIndex} kept in
+ * the directory named by the <code>ajah.syndicate.search.dir</code> config
+ * property. Entries are indexed as they are saved by {@link EntryManager}. If
+ * the property is not set, nothing is indexed and searches find nothing.
+ * 
+ * Recently indexed entries are held in memory until the index flushes them,
+ * so they are also flushed every
+ * <code>ajah.syndicate.search.flush-seconds</code> (default 60) to bound what
+ * an unclean exit loses. {@link EntryManager#reindex(int)} rebuilds the index
+ * from the database.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Service
+@Log
+public class EntrySearch {
+
+	private InvertedIndex index;
+	private boolean initialized;
+	private ScheduledExecutorService flusher;
+
+	/**
+	 * Indexes an entry's title, description and content, replacing any
+	 * previous version. Failures are logged rather than thrown, as the entry
+	 * itself has already been saved.
+	 * 
+	 * @param entry
+	 *            The entry to index, required, with an ID.
+	 */
+	public void index(final Entry entry) {
+		AjahUtils.requireParam(entry, "entry");
+		AjahUtils.requireParam(entry.getId(), "entry.id");
+		final InvertedIndex entryIndex = getIndex();
+		if (entryIndex == null) {
+			return;
+		}
+		final StringBuilder text = new StringBuilder();
+		for (final String field : new String[] { entry.getTitle(), entry.getDescription(), entry.getContent() }) {
+			if (!StringUtils.isBlank(field)) {
+				text.append(field).append(' ');
+			}
+		}
+		try {
+			entryIndex.add(entry.getId().toString(), text.toString());
+		} catch (final IOException e) {
+			log.log(Level.WARNING, "Could not index entry " + entry.getId(), e);
+		}
+	}
+
+	/**
+	 * Finds the entries that best match a query.
+	 * 
+	 * @param query
+	 *            The words to search for.
+	 * @param limit
+	 *            The maximum number of results.
+	 * @return The IDs of the matching entries, best first. May be empty but
+	 *         not null.
+	 */
+	public List<EntryId> search(final String query, final int limit) {
+		final List<EntryId> entryIds = new ArrayList<>();
+		final InvertedIndex entryIndex = getIndex();
+		if (entryIndex == null) {
+			return entryIds;
+		}
+		for (final SearchHit hit : entryIndex.search(query, limit)) {
+			entryIds.add(new EntryId(hit.getId()));
+		}
+		return entryIds;
+	}
+
+	/**
+	 * Writes any recently indexed entries to disk.
+	 * 
+	 * @throws IOException
+	 *             If the index could not be written.
+	 */
+	public void flush() throws IOException {
+		final InvertedIndex entryIndex = getIndex();
+		if (entryIndex != null) {
+			entryIndex.flush();
+		}
+	}
+
+	/**
+	 * Stops the periodic flush and writes any recently indexed entries to
+	 * disk.
+	 * 
+	 * @throws IOException
+	 *             If the index could not be written.
+	 */
+	@PreDestroy
+	public void close() throws IOException {
+		synchronized (this) {
+			if (this.flusher != null) {
+				this.flusher.shutdown();
+				this.flusher = null;
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Sets the index to use instead of the configured one.
+	 * 
+	 * @param index
+	 *            The index, or null to disable indexing.
+	 */
+	public synchronized void setIndex(final InvertedIndex index) {
+		this.index = index;
+		this.initialized = true;
+		startFlusher();
+	}
+
+	private synchronized InvertedIndex getIndex() {
+		if (!this.initialized) {
+			this.initialized = true;
+			final String dir = Config.i.get("ajah.syndicate.search.dir", null);
+			if (StringUtils.isBlank(dir)) {
+				log.info("ajah.syndicate.search.dir is not set, entries will not be indexed");
+			} else {
+				try {
+					this.index = new InvertedIndex(new File(dir));
+				} catch (final IOException e) {
+					log.log(Level.SEVERE, "Could not open entry index in " + dir, e);
+				}
+			}
+			startFlusher();
+		}
+		return this.index;
+	}
+
+	private synchronized void startFlusher() {
+		if (this.index == null || this.flusher != null) {
+			return;
+		}
+		final int seconds = AjahUtils.safeInt(Config.i.get("ajah.syndicate.search.flush-seconds"), 60);
+		this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "entry-search-flush");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.flusher.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (final IOException | RuntimeException e) {
+					log.log(Level.WARNING, "Could not flush entry index", e);
+				}
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+}
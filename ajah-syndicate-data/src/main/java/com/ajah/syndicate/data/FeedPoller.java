@@ -0,0 +1,270 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.syndicate.data;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import lombok.extern.java.Log;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.ajah.cache.LruCache;
+import com.ajah.http.Http;
+import com.ajah.http.HttpCallback;
+import com.ajah.http.err.NotFoundException;
+import com.ajah.spring.jdbc.DatabaseAccessException;
+import com.ajah.syndicate.Entry;
+import com.ajah.syndicate.Feed;
+import com.ajah.syndicate.FeedSource;
+import com.ajah.syndicate.FeedSourceId;
+import com.ajah.syndicate.PollScheduler;
+import com.ajah.syndicate.rome.RomeUtils;
+import com.ajah.util.AjahUtils;
+import com.ajah.util.StringUtils;
+import com.ajah.util.date.CalendarUnit;
+import com.ajah.util.data.XmlString;
+import com.sun.syndication.io.FeedException;
+
+/**
+ * Polls {@link FeedSource}s in batches. A batch of due feed sources is leased
+ * from the database, fetched concurrently (subject to the per-host limits of
+ * {@link Http}), and each response is ingested as it arrives. The next poll of
+ * each feed source is set by a {@link PollScheduler}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Service
+@Log
+public class FeedPoller {
+
+	private static class PollResult {
+
+		final FeedSource feedSource;
+		final String body;
+		final Exception error;
+
+		PollResult(final FeedSource feedSource, final String body, final Exception error) {
+			this.feedSource = feedSource;
+			this.body = body;
+			this.error = error;
+		}
+
+	}
+
+	@Autowired
+	private FeedSourceManager feedSourceManager;
+
+	@Autowired
+	private FeedManager feedManager;
+
+	@Autowired
+	private EntryManager entryManager;
+
+	@Autowired
+	private EntryDeduper entryDeduper;
+
+	private PollScheduler pollScheduler = new PollScheduler();
+
+	private long leaseMillis = 10 * CalendarUnit.MINUTE.getMillis();
+
+	private LruCache<FeedSourceId, String> lastSha1s = new LruCache<>(50000);
+
+	/**
+	 * Leases up to batchSize due feed sources, fetches them concurrently and
+	 * ingests the results. Feed sources that aren't ingested before the lease
+	 * expires are left for the next poll. A feed source that fails to fetch,
+	 * parse or save is scheduled as a failure without stopping the rest of the
+	 * batch.
+	 * 
+	 * @param batchSize
+	 *            The maximum number of feed sources to poll.
+	 * @return The number of feed sources that were successfully polled.
+	 * @throws DatabaseAccessException
+	 *             If the feed sources could not be leased.
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for fetches to complete.
+	 */
+	public int poll(final int batchSize) throws DatabaseAccessException, InterruptedException {
+		AjahUtils.requireParam(batchSize, "batchSize", 1);
+		final long deadline = System.currentTimeMillis() + this.leaseMillis;
+		final List<FeedSource> feedSources = this.feedSourceManager.leaseStaleFeedSources(batchSize, this.leaseMillis);
+		log.fine("Leased " + feedSources.size() + " feed sources");
+		final BlockingQueue<PollResult> results = new LinkedBlockingQueue<>();
+		for (final FeedSource feedSource : feedSources) {
+			if (StringUtils.isBlank(feedSource.getFeedUrl())) {
+				results.add(new PollResult(feedSource, null, new URISyntaxException("", "No feed URL")));
+				continue;
+			}
+			final URI uri;
+			try {
+				uri = new URI(feedSource.getFeedUrl());
+			} catch (final URISyntaxException e) {
+				results.add(new PollResult(feedSource, null, e));
+				continue;
+			}
+			Http.getAsync(uri, new HttpCallback<String>() {
+
+				@Override
+				public void completed(final String result) {
+					results.add(new PollResult(feedSource, result, null));
+				}
+
+				@Override
+				public void failed(final Exception e) {
+					results.add(new PollResult(feedSource, null, e));
+				}
+			});
+		}
+		int polled = 0;
+		for (int i = 0; i < feedSources.size(); i++) {
+			final PollResult result = results.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+			if (result == null) {
+				log.warning("Lease expired with " + (feedSources.size() - i) + " feed sources outstanding");
+				break;
+			}
+			if (process(result)) {
+				polled++;
+			}
+		}
+		return polled;
+	}
+
+	/**
+	 * Ingests one result, or records its failure. Never throws, so one bad
+	 * feed can't abandon the rest of the batch.
+	 */
+	private boolean process(final PollResult result) {
+		final FeedSource feedSource = result.feedSource;
+		if (result.error == null) {
+			try {
+				ingest(feedSource, new XmlString(result.body));
+				return true;
+			} catch (final FeedException e) {
+				log.warning(feedSource.getFeedUrl() + ": " + e.getMessage());
+			} catch (final DatabaseAccessException | RuntimeException e) {
+				log.log(Level.WARNING, feedSource.getFeedUrl() + ": " + e.getMessage(), e);
+			}
+			this.pollScheduler.failure(feedSource, false);
+		} else {
+			log.warning(feedSource.getFeedUrl() + ": " + result.error.getMessage());
+			this.pollScheduler.failure(feedSource, result.error instanceof NotFoundException || result.error instanceof URISyntaxException);
+		}
+		try {
+			this.feedSourceManager.save(feedSource);
+		} catch (final DatabaseAccessException | RuntimeException e) {
+			// The lease will expire and the feed source will be polled again
+			log.log(Level.WARNING, "Could not save " + feedSource.getFeedUrl() + ": " + e.getMessage(), e);
+		}
+		return false;
+	}
+
+	/**
+	 * Parses and stores a fetched feed, saving any entries that haven't been
+	 * seen before, and schedules the next poll of the feed source. If the body
+	 * is identical to the last one stored for the feed source it is not parsed
+	 * and nothing but the feed source's next poll is written.
+	 * 
+	 * @param feedSource
+	 *            The feed source that was fetched, required.
+	 * @param xml
+	 *            The body of the feed, required.
+	 * @return The feed that was stored, or null if the feed had not changed.
+	 * @throws FeedException
+	 *             If the feed could not be parsed.
+	 * @throws DatabaseAccessException
+	 *             If the feed or its entries could not be saved.
+	 */
+	public Feed ingest(final FeedSource feedSource, final XmlString xml) throws FeedException, DatabaseAccessException {
+		AjahUtils.requireParam(feedSource, "feedSource");
+		AjahUtils.requireParam(xml, "xml");
+		if (xml.getSha1() != null && xml.getSha1().equals(getLastSha1(feedSource))) {
+			log.fine(feedSource.getFeedUrl() + ": unchanged");
+			this.pollScheduler.success(feedSource, null, false);
+			this.feedSourceManager.save(feedSource);
+			return null;
+		}
+		final Feed feed = RomeUtils.createFeed(xml, feedSource);
+		this.feedManager.insert(feed);
+		int added = 0;
+		for (final Entry entry : this.entryDeduper.filterNew(feedSource.getId(), feed.getEntries())) {
+			this.entryManager.save(entry);
+			this.entryDeduper.markSeen(feedSource.getId(), entry);
+			added++;
+		}
+		log.fine(feedSource.getFeedUrl() + ": " + added + " new entries");
+		this.pollScheduler.success(feedSource, feed, added > 0);
+		this.feedSourceManager.save(feedSource);
+		this.lastSha1s.put(feedSource.getId(), feed.getSha1());
+		return feed;
+	}
+
+	private String getLastSha1(final FeedSource feedSource) throws DatabaseAccessException {
+		final String sha1 = this.lastSha1s.get(feedSource.getId());
+		if (sha1 != null) {
+			return sha1;
+		}
+		final Feed latest = this.feedManager.getLatestFeed(feedSource);
+		if (latest == null || latest.getSha1() == null) {
+			return null;
+		}
+		this.lastSha1s.put(feedSource.getId(), latest.getSha1());
+		return latest.getSha1();
+	}
+
+	/**
+	 * Sets the number of feed sources whose last body hash is kept in memory.
+	 * Feed sources that aren't in memory are checked against their latest
+	 * stored feed. Defaults to 50,000.
+	 * 
+	 * @param size
+	 *            The number of hashes to keep.
+	 */
+	public void setHashCacheSize(final int size) {
+		this.lastSha1s = new LruCache<>(size);
+	}
+
+	/**
+	 * Sets how long a poller has to finish a batch before the feed sources in
+	 * it may be leased by another poller. Defaults to 10 minutes.
+	 * 
+	 * @param leaseMillis
+	 *            The lease length in milliseconds.
+	 */
+	public void setLeaseMillis(final long leaseMillis) {
+		AjahUtils.requireParam(leaseMillis, "leaseMillis", 1);
+		this.leaseMillis = leaseMillis;
+	}
+
+	/**
+	 * Sets the scheduler used to compute the next poll of each feed source.
+	 * 
+	 * @param pollScheduler
+	 *            The scheduler to use, required.
+	 */
+	public void setPollScheduler(final PollScheduler pollScheduler) {
+		AjahUtils.requireParam(pollScheduler, "pollScheduler");
+		this.pollScheduler = pollScheduler;
+	}
+
+}
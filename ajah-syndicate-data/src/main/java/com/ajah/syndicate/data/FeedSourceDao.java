@@ -15,6 +15,10 @@
  */
 package com.ajah.syndicate.data;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
 import org.springframework.stereotype.Repository;
 
 import com.ajah.spring.jdbc.AjahDao;
@@ -51,6 +55,23 @@ public interface FeedSourceDao extends AjahDao<FeedSourceId, FeedSource> {
 	 */
 	FeedSource getStaleFeedSource();
 
+	/**
+	 * Claims a batch of active or temporarily failed feed sources that are due
+	 * to be polled, by pushing their next poll date out to the end of a lease.
+	 * Feed sources claimed by one caller will not be returned to another until
+	 * the lease expires, so multiple pollers can share a table.
+	 * 
+	 * @param count
+	 *            The maximum number of feed sources to claim.
+	 * @param leaseMillis
+	 *            How long the caller has to poll the feed sources before they
+	 *            may be claimed again.
+	 * @return The claimed feed sources, may be empty but will not be null.
+	 * @throws DatabaseAccessException
+	 *             If the queries could not be executed.
+	 */
+	List<FeedSource> leaseStaleFeedSources(final int count, final long leaseMillis) throws DatabaseAccessException;
+
 	/**
 	 * Finds a feed by the SHA-1 of it's url.
 	 * 
@@ -60,4 +81,17 @@ public interface FeedSourceDao extends AjahDao<FeedSourceId, FeedSource> {
 	 */
 	FeedSource findByFeedUrlSha1(final String feedUrlSha1);
 
+	/**
+	 * Finds which of a group of feed url SHA-1s already have feed sources, in
+	 * a single query.
+	 * 
+	 * @param feedUrlSha1s
+	 *            The SHA-1s of the urls to check.
+	 * @return The SHA-1s that matched a feed source, may be empty but not
+	 *         null.
+	 * @throws DatabaseAccessException
+	 *             If the query could not be executed.
+	 */
+	Set<String> findExistingFeedUrlSha1s(final Collection<String> feedUrlSha1s) throws DatabaseAccessException;
+
 }
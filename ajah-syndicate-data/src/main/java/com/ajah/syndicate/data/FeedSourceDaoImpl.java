@@ -15,9 +15,18 @@
  */
 package com.ajah.syndicate.data;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Repository;
 
 import com.ajah.spring.jdbc.AbstractAjahDao;
+import com.ajah.spring.jdbc.DatabaseAccessException;
 import com.ajah.syndicate.FeedSource;
 import com.ajah.syndicate.FeedSourceId;
 import com.ajah.syndicate.PollStatus;
@@ -40,6 +49,28 @@ public class FeedSourceDaoImpl extends AbstractAjahDao<FeedSourceId, FeedSource,
 		return findByField("feed_url_sha_1", feedUrlSha1);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Set<String> findExistingFeedUrlSha1s(final Collection<String> feedUrlSha1s) throws DatabaseAccessException {
+		final Set<String> found = new HashSet<>();
+		if (feedUrlSha1s.isEmpty()) {
+			return found;
+		}
+		final StringBuilder sql = new StringBuilder("SELECT feed_url_sha_1 FROM ").append(getTableName()).append(" WHERE feed_url_sha_1 IN (");
+		for (int i = 0; i < feedUrlSha1s.size(); i++) {
+			sql.append(i > 0 ? ", ?" : "?");
+		}
+		sql.append(")");
+		try {
+			found.addAll(getJdbcTemplate().queryForList(sql.toString(), feedUrlSha1s.toArray(), String.class));
+		} catch (final DataAccessException e) {
+			throw new DatabaseAccessException(e);
+		}
+		return found;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -48,4 +79,32 @@ public class FeedSourceDaoImpl extends AbstractAjahDao<FeedSourceId, FeedSource,
 		return findByWhere("poll_status=" + PollStatus.ACTIVE.getId() + " AND next_poll_date < (unix_timestamp() * 1000)");
 	}
 
+	/**
+	 * Claims feed sources with a single UPDATE ... ORDER BY ... LIMIT that moves
+	 * their next poll date to the lease expiration and stamps them with a
+	 * lease owner unique to this call, then selects the rows carrying that
+	 * owner. Rows another poller has already claimed have a future next poll
+	 * date so they can't be claimed twice.
+	 * 
+	 * @see com.ajah.syndicate.data.FeedSourceDao#leaseStaleFeedSources(int,
+	 *      long)
+	 */
+	@Override
+	public List<FeedSource> leaseStaleFeedSources(final int count, final long leaseMillis) throws DatabaseAccessException {
+		final long now = System.currentTimeMillis();
+		final String leaseOwner = UUID.randomUUID().toString();
+		try {
+			final String update = "UPDATE " + getTableName() + " SET next_poll_date = ?, lease_owner = ? WHERE poll_status IN (?, ?) AND next_poll_date < ? ORDER BY next_poll_date LIMIT "
+					+ count;
+			final int claimed = getJdbcTemplate().update(update, Long.valueOf(now + leaseMillis), leaseOwner, PollStatus.ACTIVE.getId(), PollStatus.ERROR_TMP.getId(), Long.valueOf(now));
+			if (claimed < 1) {
+				return Collections.emptyList();
+			}
+			final String select = "SELECT " + getSelectFields() + " FROM " + getTableName() + " WHERE lease_owner = ?";
+			return getJdbcTemplate().query(select, new Object[] { leaseOwner }, getRowMapper());
+		} catch (final DataAccessException e) {
+			throw new DatabaseAccessException(e);
+		}
+	}
+
 }
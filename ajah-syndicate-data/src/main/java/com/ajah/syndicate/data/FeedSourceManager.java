@@ -15,6 +15,9 @@
  */
 package com.ajah.syndicate.data;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -51,6 +54,21 @@ public class FeedSourceManager {
 		return this.feedDao.findByFeedUrlSha1(feedUrlSha1);
 	}
 
+	/**
+	 * Finds which of a group of feed url SHA-1s already have feed sources, in
+	 * a single query.
+	 * 
+	 * @param feedUrlSha1s
+	 *            The SHA-1s of the feed urls.
+	 * @return The SHA-1s that already have feed sources, may be empty but not
+	 *         null.
+	 * @throws DatabaseAccessException
+	 *             If the query could not be executed.
+	 */
+	public Set<String> findExistingFeedUrlSha1s(final Collection<String> feedUrlSha1s) throws DatabaseAccessException {
+		return this.feedDao.findExistingFeedUrlSha1s(feedUrlSha1s);
+	}
+
 	/**
 	 * Find a feed source where the next_poll_date field is in the past.
 	 * 
@@ -62,6 +80,42 @@ public class FeedSourceManager {
 		return this.feedDao.getStaleFeedSource();
 	}
 
+	/**
+	 * Claims a batch of feed sources that are due to be polled.
+	 * 
+	 * @see FeedSourceDao#leaseStaleFeedSources(int, long)
+	 * @param count
+	 *            The maximum number of feed sources to claim.
+	 * @param leaseMillis
+	 *            How long the caller has to poll the feed sources before they
+	 *            may be claimed again.
+	 * @return The claimed feed sources, may be empty but will not be null.
+	 * @throws DatabaseAccessException
+	 *             If the feed sources could not be claimed.
+	 */
+	public List<FeedSource> leaseStaleFeedSources(final int count, final long leaseMillis) throws DatabaseAccessException {
+		return this.feedDao.leaseStaleFeedSources(count, leaseMillis);
+	}
+
+	/**
+	 * Inserts new feed sources in a single batch, assigning IDs to any that
+	 * don't have one.
+	 * 
+	 * @param feedSources
+	 *            The feed sources to insert.
+	 * @return The number of feed sources inserted.
+	 * @throws DatabaseAccessException
+	 *             If the feed sources could not be inserted.
+	 */
+	public int insertAll(final List<FeedSource> feedSources) throws DatabaseAccessException {
+		for (final FeedSource feedSource : feedSources) {
+			if (feedSource.getId() == null) {
+				feedSource.setId(new FeedSourceId(UUID.randomUUID().toString()));
+			}
+		}
+		return this.feedDao.insertAll(feedSources);
+	}
+
 	/**
 	 * Saves a feed source, inserting if the ID is empty, otherwise updating.
 	 * 
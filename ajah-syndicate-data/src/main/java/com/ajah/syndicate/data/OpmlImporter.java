@@ -0,0 +1,207 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.syndicate.data;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import lombok.extern.java.Log;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.ajah.spring.jdbc.DatabaseAccessException;
+import com.ajah.syndicate.FeedSource;
+import com.ajah.syndicate.FeedSourceHandler;
+import com.ajah.syndicate.rome.OpmlUtils;
+import com.ajah.util.AjahUtils;
+import com.ajah.util.data.HashPrefixSet;
+import com.sun.syndication.io.FeedException;
+
+/**
+ * Imports the feeds listed in an OPML file as {@link FeedSource}s. The file is
+ * streamed rather than loaded, feeds listed more than once are dropped in
+ * memory, and new feed sources are checked and inserted in batches on a
+ * writer thread while the next batch is being read.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Service
+@Log
+public class OpmlImporter {
+
+	private class BatchHandler implements FeedSourceHandler {
+
+		final ExecutorService writer;
+		final OpmlImportListener listener;
+		final OpmlImportProgress progress = new OpmlImportProgress();
+		final HashPrefixSet seen = new HashPrefixSet(Integer.MAX_VALUE);
+		List<FeedSource> batch = new ArrayList<>();
+		Future<int[]> pending;
+		DatabaseAccessException error;
+
+		BatchHandler(final ExecutorService writer, final OpmlImportListener listener) {
+			this.writer = writer;
+			this.listener = listener;
+		}
+
+		@Override
+		public boolean handle(final FeedSource feedSource) {
+			this.progress.setRead(this.progress.getRead() + 1);
+			if (!this.seen.add(feedSource.getFeedUrlSha1())) {
+				this.progress.setDuplicates(this.progress.getDuplicates() + 1);
+				return true;
+			}
+			this.batch.add(feedSource);
+			if (this.batch.size() >= OpmlImporter.this.batchSize) {
+				return flush();
+			}
+			return true;
+		}
+
+		/**
+		 * Waits for the previous batch and hands the current one to the
+		 * writer, so at most one batch is being written while another fills.
+		 * 
+		 * @return false if a batch failed and reading should stop.
+		 */
+		boolean flush() {
+			if (!await()) {
+				return false;
+			}
+			if (!this.batch.isEmpty()) {
+				final List<FeedSource> feedSources = this.batch;
+				this.batch = new ArrayList<>();
+				this.pending = this.writer.submit(new Callable<int[]>() {
+
+					@Override
+					public int[] call() throws DatabaseAccessException {
+						return write(feedSources);
+					}
+				});
+			}
+			return true;
+		}
+
+		boolean await() {
+			if (this.pending == null) {
+				return true;
+			}
+			try {
+				final int[] result = this.pending.get();
+				this.progress.setExisting(this.progress.getExisting() + result[0]);
+				this.progress.setInserted(this.progress.getInserted() + result[1]);
+				log.fine(this.progress.toString());
+				if (this.listener != null) {
+					this.listener.progress(this.progress);
+				}
+				return true;
+			} catch (final ExecutionException e) {
+				if (e.getCause() instanceof DatabaseAccessException) {
+					this.error = (DatabaseAccessException) e.getCause();
+				} else {
+					this.error = new DatabaseAccessException(e.getCause());
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.error = new DatabaseAccessException(e);
+			} finally {
+				this.pending = null;
+			}
+			return false;
+		}
+
+	}
+
+	@Autowired
+	private FeedSourceManager feedSourceManager;
+
+	private int batchSize = 500;
+
+	/**
+	 * Imports the feeds in an OPML document.
+	 * 
+	 * @param in
+	 *            The OPML document, required. The stream is not closed.
+	 * @param listener
+	 *            Told of progress after each batch, may be null.
+	 * @return The final totals.
+	 * @throws FeedException
+	 *             If the document could not be parsed. Batches before the
+	 *             error will have been imported.
+	 * @throws DatabaseAccessException
+	 *             If a batch could not be written. Earlier batches will have
+	 *             been imported.
+	 */
+	public OpmlImportProgress importOpml(final InputStream in, final OpmlImportListener listener) throws FeedException, DatabaseAccessException {
+		AjahUtils.requireParam(in, "in");
+		final ExecutorService writer = Executors.newSingleThreadExecutor();
+		try {
+			final BatchHandler handler = new BatchHandler(writer, listener);
+			try {
+				OpmlUtils.extractFeedSources(in, handler);
+			} finally {
+				// Write whatever was read, even if the document was truncated
+				if (handler.flush()) {
+					handler.await();
+				}
+			}
+			if (handler.error != null) {
+				throw handler.error;
+			}
+			log.info("Imported OPML: " + handler.progress);
+			return handler.progress;
+		} finally {
+			writer.shutdown();
+		}
+	}
+
+	/**
+	 * Sets the number of feed sources checked and inserted at a time. Defaults
+	 * to 500.
+	 * 
+	 * @param batchSize
+	 *            The batch size.
+	 */
+	public void setBatchSize(final int batchSize) {
+		AjahUtils.requireParam(batchSize, "batchSize", 1);
+		this.batchSize = batchSize;
+	}
+
+	private int[] write(final List<FeedSource> feedSources) throws DatabaseAccessException {
+		final List<String> sha1s = new ArrayList<>(feedSources.size());
+		for (final FeedSource feedSource : feedSources) {
+			sha1s.add(feedSource.getFeedUrlSha1());
+		}
+		final Set<String> existing = this.feedSourceManager.findExistingFeedUrlSha1s(sha1s);
+		final List<FeedSource> fresh = new ArrayList<>(feedSources.size() - existing.size());
+		for (final FeedSource feedSource : feedSources) {
+			if (!existing.contains(feedSource.getFeedUrlSha1())) {
+				fresh.add(feedSource);
+			}
+		}
+		return new int[] { existing.size(), this.feedSourceManager.insertAll(fresh) };
+	}
+
+}
@@ -0,0 +1,10 @@
+CREATE TABLE `entry_content` (
+  `sha_1` char(40) NOT NULL,
+  `data` mediumblob NOT NULL,
+  `created_date` bigint(20) unsigned NOT NULL,
+  PRIMARY KEY (`sha_1`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+ALTER TABLE `entry`
+  ADD COLUMN `content_sha_1` char(40) DEFAULT NULL,
+  ADD COLUMN `description_sha_1` char(40) DEFAULT NULL;
@@ -0,0 +1,4 @@
+ALTER TABLE `entry`
+  ADD COLUMN `sim_hash` bigint(20) DEFAULT NULL,
+  ADD COLUMN `duplicate_of_id` char(36) DEFAULT NULL,
+  ADD INDEX `duplicate_of_id` (`duplicate_of_id`);
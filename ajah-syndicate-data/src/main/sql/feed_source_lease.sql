@@ -0,0 +1,3 @@
+ALTER TABLE `feed_source`
+  ADD COLUMN `lease_owner` char(36) DEFAULT NULL,
+  ADD INDEX `lease_owner` (`lease_owner`);
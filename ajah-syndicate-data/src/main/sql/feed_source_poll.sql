@@ -0,0 +1,4 @@
+ALTER TABLE `feed_source`
+  ADD COLUMN `poll_errors` int(10) unsigned NOT NULL DEFAULT '0',
+  ADD COLUMN `poll_interval` bigint(20) unsigned NOT NULL DEFAULT '0',
+  ADD INDEX `poll_status_next_poll_date` (`poll_status`, `next_poll_date`);
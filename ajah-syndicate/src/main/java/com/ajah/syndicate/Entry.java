@@ -17,7 +17,11 @@ package com.ajah.syndicate;
 
 import java.util.Date;
 
+import javax.persistence.Transient;
+
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import com.ajah.util.Identifiable;
 import com.ajah.util.data.Audited;
@@ -33,6 +37,8 @@ import com.ajah.util.net.AjahMimeType;
  * 
  */
 @Data
+@EqualsAndHashCode(exclude = "contentLoader", doNotUseGetters = true)
+@ToString(exclude = "contentLoader", doNotUseGetters = true)
 @Audited
 public class Entry implements Identifiable<EntryId> {
 
@@ -45,10 +51,45 @@ public class Entry implements Identifiable<EntryId> {
 	private Date created;
 	private Date updated;
 	private String content;
+	private String contentSha1;
 	private AjahMimeType contentType;
 	private String description;
+	private String descriptionSha1;
 	private FeedId feedId;
 	private FeedSourceId feedSourceId;
+	private Long simHash;
+	private EntryId duplicateOfId;
+
+	// Left out of equals/hashCode/toString, which read fields rather than
+	// getters so they never trigger a load
+	@Transient
+	private ContentLoader contentLoader;
+
+	/**
+	 * Returns the content, loading it with the {@link ContentLoader} if it is
+	 * stored separately and hasn't been loaded yet.
+	 * 
+	 * @return The content, may be null.
+	 */
+	public String getContent() {
+		if (this.content == null && this.contentSha1 != null && this.contentLoader != null) {
+			this.content = this.contentLoader.load(this.contentSha1);
+		}
+		return this.content;
+	}
+
+	/**
+	 * Returns the description, loading it with the {@link ContentLoader} if it
+	 * is stored separately and hasn't been loaded yet.
+	 * 
+	 * @return The description, may be null.
+	 */
+	public String getDescription() {
+		if (this.description == null && this.descriptionSha1 != null && this.contentLoader != null) {
+			this.description = this.contentLoader.load(this.descriptionSha1);
+		}
+		return this.description;
+	}
 
 	/**
 	 * Returns the SHA-1 of the htmlUrl field, if it is available.
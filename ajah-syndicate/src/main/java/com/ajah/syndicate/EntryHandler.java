@@ -0,0 +1,36 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.syndicate;
+
+/**
+ * Receives {@link Entry}s one at a time as a feed is parsed.
+ * 
+ * @see StreamingFeedParser
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public interface EntryHandler {
+
+	/**
+	 * Handles an entry.
+	 * 
+	 * @param entry
+	 *            The entry that was parsed.
+	 * @return true to keep parsing, false to stop.
+	 */
+	boolean handle(final Entry entry);
+
+}
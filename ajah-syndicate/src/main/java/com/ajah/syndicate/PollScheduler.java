@@ -0,0 +1,162 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.syndicate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.ajah.util.AjahUtils;
+import com.ajah.util.CollectionUtils;
+import com.ajah.util.date.CalendarUnit;
+
+/**
+ * Decides when a {@link FeedSource} should next be polled. Feeds that publish
+ * often are polled often, feeds that don't change drift towards the maximum
+ * interval, and feeds that fail are backed off exponentially until they are
+ * marked {@link PollStatus#ERROR_PERM}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class PollScheduler {
+
+	private final long minInterval;
+	private final long maxInterval;
+	private final int maxErrors;
+
+	/**
+	 * Creates a scheduler that polls no more than every 15 minutes and no less
+	 * than once a day, giving up after 10 consecutive errors.
+	 */
+	public PollScheduler() {
+		this(15 * CalendarUnit.MINUTE.getMillis(), CalendarUnit.DAY.getMillis(), 10);
+	}
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param minInterval
+	 *            The shortest time between polls, in milliseconds.
+	 * @param maxInterval
+	 *            The longest time between polls (and longest error backoff),
+	 *            in milliseconds.
+	 * @param maxErrors
+	 *            The number of consecutive errors after which a feed source is
+	 *            no longer polled.
+	 */
+	public PollScheduler(final long minInterval, final long maxInterval, final int maxErrors) {
+		AjahUtils.requireParam(minInterval, "minInterval", 1);
+		AjahUtils.requireParam(maxInterval, "maxInterval", 1);
+		AjahUtils.requireParam(maxErrors, "maxErrors", 1);
+		this.minInterval = minInterval;
+		this.maxInterval = Math.max(minInterval, maxInterval);
+		this.maxErrors = maxErrors;
+	}
+
+	/**
+	 * Estimates how often a feed publishes, using the median gap between the
+	 * published dates of its entries.
+	 * 
+	 * @param entries
+	 *            The entries of a feed, may be null.
+	 * @return The estimated interval in milliseconds, or -1 if there aren't
+	 *         enough dated entries to tell.
+	 */
+	public static long estimateUpdateInterval(final List<Entry> entries) {
+		if (CollectionUtils.isEmpty(entries)) {
+			return -1;
+		}
+		final List<Long> times = new ArrayList<>(entries.size());
+		for (final Entry entry : entries) {
+			final Date date = entry.getPublished() != null ? entry.getPublished() : entry.getUpdated();
+			if (date != null) {
+				times.add(Long.valueOf(date.getTime()));
+			}
+		}
+		if (times.size() < 2) {
+			return -1;
+		}
+		Collections.sort(times);
+		final long[] gaps = new long[times.size() - 1];
+		for (int i = 0; i < gaps.length; i++) {
+			gaps[i] = times.get(i + 1).longValue() - times.get(i).longValue();
+		}
+		Arrays.sort(gaps);
+		return gaps[gaps.length / 2];
+	}
+
+	/**
+	 * Updates the poll fields of a feed source after a successful poll.
+	 * 
+	 * @param feedSource
+	 *            The feed source that was polled, required.
+	 * @param feed
+	 *            The feed that was fetched, may be null if the feed was not
+	 *            parsed (e.g. because it hadn't changed).
+	 * @param changed
+	 *            Did the feed change since the last poll?
+	 */
+	public void success(final FeedSource feedSource, final Feed feed, final boolean changed) {
+		AjahUtils.requireParam(feedSource, "feedSource");
+		final long previous = feedSource.getPollInterval() > 0 ? feedSource.getPollInterval() : this.minInterval;
+		long interval;
+		if (!changed) {
+			interval = previous + previous / 2;
+		} else {
+			final long estimate = feed == null ? -1 : estimateUpdateInterval(feed.getEntries());
+			if (estimate > 0) {
+				// Aim for about two polls per update, smoothed against history
+				interval = (previous + estimate / 2) / 2;
+			} else {
+				interval = previous * 3 / 4;
+			}
+		}
+		interval = clamp(interval);
+		feedSource.setPollErrors(0);
+		feedSource.setPollStatus(PollStatus.ACTIVE);
+		feedSource.setPollInterval(interval);
+		feedSource.setNextPoll(new Date(System.currentTimeMillis() + interval));
+	}
+
+	/**
+	 * Updates the poll fields of a feed source after a failed poll.
+	 * 
+	 * @param feedSource
+	 *            The feed source that was polled, required.
+	 * @param permanent
+	 *            Is this an error that retrying won't fix (e.g. a 404)?
+	 */
+	public void failure(final FeedSource feedSource, final boolean permanent) {
+		AjahUtils.requireParam(feedSource, "feedSource");
+		final int errors = feedSource.getPollErrors() + 1;
+		feedSource.setPollErrors(errors);
+		if (permanent || errors >= this.maxErrors) {
+			feedSource.setPollStatus(PollStatus.ERROR_PERM);
+			return;
+		}
+		feedSource.setPollStatus(PollStatus.ERROR_TMP);
+		final long backoff = clamp(this.minInterval << Math.min(errors, 20));
+		feedSource.setNextPoll(new Date(System.currentTimeMillis() + backoff));
+	}
+
+	private long clamp(final long interval) {
+		return Math.max(this.minInterval, Math.min(this.maxInterval, interval));
+	}
+
+}
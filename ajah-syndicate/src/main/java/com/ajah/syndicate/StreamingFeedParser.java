@@ -0,0 +1,388 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.syndicate;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import lombok.extern.java.Log;
+
+import com.ajah.html.HtmlCleaner;
+import com.ajah.html.HtmlUtils;
+import com.ajah.syndicate.rome.RomeUtils;
+import com.ajah.util.AjahUtils;
+import com.ajah.util.StringUtils;
+import com.ajah.util.net.AjahMimeType;
+import com.sun.syndication.io.FeedException;
+import com.sun.syndication.io.impl.DateParser;
+
+/**
+ * Parses RSS (0.9x, 1.0 and 2.0) and Atom feeds with StAX, handing each
+ * {@link Entry} to an {@link EntryHandler} as soon as it has been read instead
+ * of building a document for the whole feed. Only one entry is held in memory
+ * at a time, and parsing can stop after a number of entries or at the first
+ * entry that has already been seen, which for most feeds means only the top
+ * of the document is read.
+ * 
+ * Entries are populated the same way as
+ * {@link com.ajah.syndicate.rome.RomeUtils}, including using the guid/id of an
+ * entry as its URL, so the {@link Entry#getHtmlUrlSha1()} values of both
+ * parsers match.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+@Log
+public class StreamingFeedParser {
+
+	private static final String ATOM_03_NS = "http://purl.org/atom/ns#";
+	private static final String ATOM_10_NS = "http://www.w3.org/2005/Atom";
+	private static final String CONTENT_NS = "http://purl.org/rss/1.0/modules/content/";
+	private static final String DC_NS = "http://purl.org/dc/elements/1.1/";
+
+	private static final XMLInputFactory factory;
+
+	static {
+		factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		// Feeds come from strangers, don't let them pull in other documents
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private int maxEntries;
+
+	private Set<String> seenHtmlUrlSha1s;
+
+	/**
+	 * Parses a feed, passing each entry to a handler in document order.
+	 * 
+	 * @param in
+	 *            The feed document, required. The stream is not closed.
+	 * @param feedSource
+	 *            The source of the feed, required.
+	 * @param handler
+	 *            The handler to pass entries to, required.
+	 * @return The feed's metadata. The entries are not retained so
+	 *         {@link Feed#getEntries()} is empty, and the SHA-1 is not set.
+	 * @throws FeedException
+	 *             If the document is not well-formed XML.
+	 */
+	public Feed parse(final InputStream in, final FeedSource feedSource, final EntryHandler handler) throws FeedException {
+		AjahUtils.requireParam(in, "in");
+		AjahUtils.requireParam(feedSource, "feedSource");
+		AjahUtils.requireParam(handler, "handler");
+		final Feed feed = new Feed();
+		feed.setId(new FeedId(UUID.randomUUID().toString()));
+		feed.setFeedSourceId(feedSource.getId());
+		feed.setCreated(new Date());
+		feed.setEntries(Collections.<Entry> emptyList());
+		XMLStreamReader reader = null;
+		try {
+			reader = factory.createXMLStreamReader(in);
+			int count = 0;
+			int depth = 0;
+			while (reader.hasNext()) {
+				final int event = reader.next();
+				if (event == XMLStreamConstants.END_ELEMENT) {
+					depth--;
+					continue;
+				} else if (event != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+				depth++;
+				final String name = reader.getLocalName();
+				if ("item".equals(name) || "entry".equals(name)) {
+					final Entry entry = readEntry(reader, feed);
+					depth--;
+					if (this.seenHtmlUrlSha1s != null && entry.getHtmlUrlSha1() != null && this.seenHtmlUrlSha1s.contains(entry.getHtmlUrlSha1())) {
+						log.finest("Stopping at seen entry " + entry.getHtmlUrl());
+						break;
+					}
+					count++;
+					if (!handler.handle(entry) || (this.maxEntries > 0 && count >= this.maxEntries)) {
+						break;
+					}
+				} else if (depth > 1 && depth <= 3) {
+					// feed/x (Atom) or rss/channel/x (RSS)
+					if (readFeedField(reader, feed)) {
+						depth--;
+					}
+				}
+			}
+		} catch (final XMLStreamException e) {
+			throw new FeedException(e.getMessage(), e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (final XMLStreamException e) {
+					log.finest(e.getMessage());
+				}
+			}
+		}
+		if (StringUtils.isBlank(feed.getTitle())) {
+			feed.setTitle(feedSource.getTitle());
+		}
+		return feed;
+	}
+
+	/**
+	 * Stops parsing after this many entries have been handled.
+	 * 
+	 * @param maxEntries
+	 *            The maximum number of entries, or 0 for no limit.
+	 */
+	public void setMaxEntries(final int maxEntries) {
+		AjahUtils.requireParam(maxEntries, "maxEntries", 0);
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Stops parsing at the first entry whose {@link Entry#getHtmlUrlSha1()} is
+	 * in this set. That entry is not handled. Feeds list their newest entries
+	 * first, so everything after the first seen entry is usually seen too.
+	 * 
+	 * @param seenHtmlUrlSha1s
+	 *            The SHA-1s of entries that have already been seen, may be
+	 *            null.
+	 */
+	public void setSeenHtmlUrlSha1s(final Set<String> seenHtmlUrlSha1s) {
+		this.seenHtmlUrlSha1s = seenHtmlUrlSha1s;
+	}
+
+	/**
+	 * Reads a feed-level element if it's one we keep.
+	 * 
+	 * @return true if the element was consumed.
+	 */
+	private static boolean readFeedField(final XMLStreamReader reader, final Feed feed) throws XMLStreamException {
+		final String name = reader.getLocalName();
+		final boolean atom = isAtom(reader);
+		if ("title".equals(name) && feed.getTitle() == null) {
+			feed.setTitle(trim(readContent(reader)));
+		} else if ("link".equals(name) && !atom && feed.getUrl() == null) {
+			feed.setUrl(trim(readContent(reader)));
+		} else if ("id".equals(name) && atom) {
+			feed.setUrl(trim(readContent(reader)));
+		} else if ("author".equals(name) && atom) {
+			feed.setAuthor(readAtomPerson(reader));
+		} else if (("managingEditor".equals(name) || ("creator".equals(name) && DC_NS.equals(reader.getNamespaceURI()))) && feed.getAuthor() == null) {
+			feed.setAuthor(trim(readContent(reader)));
+		} else if (("pubDate".equals(name) || "updated".equals(name) || "modified".equals(name) || ("date".equals(name) && DC_NS.equals(reader.getNamespaceURI()))) && feed.getPublished() == null) {
+			feed.setPublished(parseDate(readContent(reader)));
+		} else if ("channel".equals(name)) {
+			// Descend into the RSS channel
+			return false;
+		} else {
+			skip(reader);
+		}
+		return true;
+	}
+
+	private static Entry readEntry(final XMLStreamReader reader, final Feed feed) throws XMLStreamException {
+		final Entry entry = new Entry();
+		entry.setFeedId(feed.getId());
+		entry.setFeedSourceId(feed.getFeedSourceId());
+		String link = null;
+		String guid = null;
+		String contentType = null;
+		String descriptionType = null;
+		while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+			if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			final String name = reader.getLocalName();
+			final String ns = reader.getNamespaceURI();
+			final boolean atom = isAtom(reader);
+			if ("title".equals(name)) {
+				entry.setTitle(trim(readContent(reader)));
+			} else if ("link".equals(name) && atom) {
+				final String rel = reader.getAttributeValue(null, "rel");
+				if (link == null && (rel == null || "alternate".equals(rel))) {
+					link = reader.getAttributeValue(null, "href");
+				}
+				skip(reader);
+			} else if ("link".equals(name)) {
+				link = trim(readContent(reader));
+			} else if ("guid".equals(name) || ("id".equals(name) && atom)) {
+				guid = trim(readContent(reader));
+			} else if ("pubDate".equals(name) || "published".equals(name) || "issued".equals(name) || ("date".equals(name) && DC_NS.equals(ns))) {
+				if (entry.getPublished() == null) {
+					entry.setPublished(parseDate(readContent(reader)));
+				} else {
+					skip(reader);
+				}
+			} else if ("updated".equals(name) || "modified".equals(name)) {
+				entry.setUpdated(parseDate(readContent(reader)));
+			} else if ("author".equals(name) && atom) {
+				entry.setAuthor(readAtomPerson(reader));
+			} else if ("author".equals(name) || ("creator".equals(name) && DC_NS.equals(ns))) {
+				if (entry.getAuthor() == null) {
+					entry.setAuthor(trim(readContent(reader)));
+				} else {
+					skip(reader);
+				}
+			} else if ("description".equals(name) || ("summary".equals(name) && atom)) {
+				descriptionType = atom ? reader.getAttributeValue(null, "type") : "html";
+				entry.setDescription(readContent(reader));
+			} else if (("encoded".equals(name) && CONTENT_NS.equals(ns)) || ("content".equals(name) && atom)) {
+				contentType = atom ? reader.getAttributeValue(null, "type") : "html";
+				entry.setContent(readContent(reader));
+			} else {
+				skip(reader);
+			}
+		}
+		entry.setHtmlUrl(guid != null ? guid : link);
+		if (entry.getContent() == null) {
+			entry.setContentType(AjahMimeType.TEXT_PLAIN);
+		} else {
+			entry.setContentType(isHtml(contentType) ? AjahMimeType.TEXT_HTML : AjahMimeType.TEXT_PLAIN);
+		}
+		if (entry.getDescription() != null && !isHtml(descriptionType)) {
+			entry.setDescription(HtmlUtils.toBodyHtml(entry.getDescription()));
+		}
+		if (StringUtils.isBlank(entry.getTitle())) {
+			if (!StringUtils.isBlank(entry.getDescription())) {
+				entry.setTitle(HtmlCleaner.SIMPLE_TEXT.clean(StringUtils.truncate(entry.getDescription(), 100)));
+			} else if (!StringUtils.isBlank(entry.getContent())) {
+				entry.setTitle(StringUtils.truncate(entry.getContent(), 100));
+			}
+		}
+		entry.setSimHash(RomeUtils.getSimHash(entry));
+		return entry;
+	}
+
+	private static boolean isAtom(final XMLStreamReader reader) {
+		final String ns = reader.getNamespaceURI();
+		return ATOM_10_NS.equals(ns) || ATOM_03_NS.equals(ns);
+	}
+
+	private static boolean isHtml(final String type) {
+		return type != null && (type.equals("html") || type.equals("xhtml") || type.endsWith("/html") || type.endsWith("+xml"));
+	}
+
+	private static Date parseDate(final String date) {
+		if (StringUtils.isBlank(date)) {
+			return null;
+		}
+		return DateParser.parseDate(date.trim());
+	}
+
+	private static String readAtomPerson(final XMLStreamReader reader) throws XMLStreamException {
+		String name = null;
+		while (reader.next() != XMLStreamConstants.END_ELEMENT) {
+			if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+			if ("name".equals(reader.getLocalName())) {
+				name = trim(readContent(reader));
+			} else {
+				skip(reader);
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Reads the content of the current element, serializing any child
+	 * elements (e.g. Atom's xhtml content) as markup.
+	 */
+	private static String readContent(final XMLStreamReader reader) throws XMLStreamException {
+		final StringBuilder content = new StringBuilder();
+		int depth = 1;
+		while (depth > 0) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				content.append('<').append(reader.getLocalName());
+				for (int i = 0; i < reader.getAttributeCount(); i++) {
+					content.append(' ').append(reader.getAttributeLocalName(i)).append("=\"");
+					escape(reader.getAttributeValue(i), content);
+					content.append('"');
+				}
+				content.append('>');
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				if (depth > 0) {
+					content.append("</").append(reader.getLocalName()).append('>');
+				}
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if (depth > 1) {
+					escape(reader.getText(), content);
+				} else {
+					content.append(reader.getText());
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		return content.toString();
+	}
+
+	private static void escape(final String text, final StringBuilder out) {
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				out.append("&amp;");
+				break;
+			case '<':
+				out.append("&lt;");
+				break;
+			case '>':
+				out.append("&gt;");
+				break;
+			case '"':
+				out.append("&quot;");
+				break;
+			default:
+				out.append(c);
+			}
+		}
+	}
+
+	private static String trim(final String text) {
+		return text == null ? null : text.trim();
+	}
+
+	private static void skip(final XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+}
@@ -17,20 +17,28 @@ package com.ajah.syndicate.rome;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import lombok.extern.java.Log;
 
 import org.jdom.Document;
 import org.jdom.JDOMException;
 
 import com.ajah.syndicate.FeedSource;
+import com.ajah.syndicate.FeedSourceHandler;
 import com.ajah.syndicate.FeedSourceStatus;
 import com.ajah.syndicate.FeedSourceType;
 import com.ajah.syndicate.PollStatus;
 import com.ajah.syndicate.opml.Opml;
 import com.ajah.syndicate.opml.Outline;
+import com.ajah.util.AjahUtils;
 import com.ajah.util.CollectionUtils;
 import com.ajah.util.StringUtils;
 import com.sun.syndication.io.FeedException;
@@ -47,6 +55,14 @@ import com.sun.syndication.io.impl.OPML10Parser;
 @Log
 public class OpmlUtils {
 
+	private static final XMLInputFactory factory;
+
+	static {
+		factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
 	private static Outline createOutline(final com.sun.syndication.feed.opml.Outline syndOutline, final Outline parent) {
 		final Outline outline = new Outline();
 		@SuppressWarnings("unchecked")
@@ -77,12 +93,19 @@ public class OpmlUtils {
 		return outlines;
 	}
 
-	private static FeedSource extractFeedSource(final Outline outline) {
+	/**
+	 * Creates a FeedSource from an outline.
+	 * 
+	 * @param outline
+	 *            The outline, should have an xmlUrl.
+	 * @return The feed source, active and ready to poll.
+	 */
+	public static FeedSource extractFeedSource(final Outline outline) {
 		final FeedSource feedSource = new FeedSource();
 		feedSource.setTitle(outline.getTitle());
 		feedSource.setHtmlUrl(outline.getHtmlUrl());
 		feedSource.setFeedUrl(outline.getXmlUrl());
-		if (!outline.getTitle().equals(outline.getText())) {
+		if (outline.getText() != null && !outline.getText().equals(outline.getTitle())) {
 			feedSource.setDescription(outline.getText());
 		}
 		if ("rss".equals(outline.getType())) {
@@ -120,6 +143,72 @@ public class OpmlUtils {
 		return feedSources;
 	}
 
+	/**
+	 * Reads the FeedSources out of an OPML document as it is parsed, without
+	 * building the document or outline tree in memory. Outlines are flattened
+	 * as in {@link #extractFeedSources(Opml)}, but are handed over in document
+	 * order.
+	 * 
+	 * @param in
+	 *            The OPML document, required. The stream is not closed.
+	 * @param handler
+	 *            The handler to pass feed sources to, required.
+	 * @return The number of feed sources handled.
+	 * @throws FeedException
+	 *             If the document is not well-formed XML.
+	 */
+	public static int extractFeedSources(final InputStream in, final FeedSourceHandler handler) throws FeedException {
+		AjahUtils.requireParam(in, "in");
+		AjahUtils.requireParam(handler, "handler");
+		int count = 0;
+		XMLStreamReader reader = null;
+		try {
+			reader = factory.createXMLStreamReader(in);
+			while (reader.hasNext()) {
+				if (reader.next() != XMLStreamConstants.START_ELEMENT || !"outline".equals(reader.getLocalName())) {
+					continue;
+				}
+				final Outline outline = new Outline();
+				for (int i = 0; i < reader.getAttributeCount(); i++) {
+					final String name = reader.getAttributeLocalName(i);
+					final String value = reader.getAttributeValue(i);
+					if ("text".equalsIgnoreCase(name)) {
+						outline.setText(value);
+					} else if ("title".equalsIgnoreCase(name)) {
+						outline.setTitle(value);
+					} else if ("xmlUrl".equalsIgnoreCase(name)) {
+						outline.setXmlUrl(value);
+					} else if ("htmlUrl".equalsIgnoreCase(name)) {
+						outline.setHtmlUrl(value);
+					} else if ("type".equalsIgnoreCase(name)) {
+						outline.setType(value);
+					}
+				}
+				if (StringUtils.isBlank(outline.getXmlUrl())) {
+					continue;
+				}
+				if (outline.getTitle() == null) {
+					outline.setTitle(outline.getText());
+				}
+				count++;
+				if (!handler.handle(extractFeedSource(outline))) {
+					break;
+				}
+			}
+		} catch (final XMLStreamException e) {
+			throw new FeedException(e.getMessage(), e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (final XMLStreamException e) {
+					log.finest(e.getMessage());
+				}
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * Parses a JDOM document into an Ajah {@link Opml}.
 	 * 
@@ -24,15 +24,14 @@ import java.util.UUID;
 
 import lombok.extern.java.Log;
 
-import org.jsoup.Jsoup;
-import org.jsoup.safety.Whitelist;
-
+import com.ajah.html.HtmlCleaner;
 import com.ajah.html.HtmlUtils;
 import com.ajah.syndicate.Entry;
 import com.ajah.syndicate.Feed;
 import com.ajah.syndicate.FeedId;
 import com.ajah.syndicate.FeedSource;
 import com.ajah.util.StringUtils;
+import com.ajah.util.data.SimHash;
 import com.ajah.util.data.XmlString;
 import com.ajah.util.net.AjahMimeType;
 import com.sun.syndication.feed.synd.SyndContent;
@@ -130,7 +129,7 @@ public class RomeUtils {
 		}
 		if (StringUtils.isBlank(entry.getTitle())) {
 			if (!StringUtils.isBlank(entry.getDescription())) {
-				entry.setTitle(Jsoup.clean(StringUtils.truncate(entry.getDescription(), 100), Whitelist.simpleText()));
+				entry.setTitle(HtmlCleaner.SIMPLE_TEXT.clean(StringUtils.truncate(entry.getDescription(), 100)));
 			} else if (!StringUtils.isBlank(entry.getContent())) {
 				entry.setTitle(entry.getContent().substring(0, 100));
 			}
@@ -138,9 +137,25 @@ public class RomeUtils {
 		if (StringUtils.isBlank(entry.getContent()) && StringUtils.isBlank(entry.getDescription()) && StringUtils.isBlank(entry.getTitle())) {
 			log.warning("Title, contents and description are all null");
 		}
+		entry.setSimHash(getSimHash(entry));
 		return entry;
 	}
 
+	/**
+	 * Computes the {@link SimHash} fingerprint of an entry's title and its
+	 * content, or description if it has no content. Copies of the same
+	 * article will have the same or nearly the same fingerprint even if their
+	 * markup and urls differ.
+	 * 
+	 * @param entry
+	 *            The entry to fingerprint, required.
+	 * @return The fingerprint, or null if the entry has too little text.
+	 */
+	public static Long getSimHash(final Entry entry) {
+		final String body = StringUtils.isBlank(entry.getContent()) ? entry.getDescription() : entry.getContent();
+		return SimHash.fingerprint(StringUtils.isBlank(entry.getTitle()) ? body : entry.getTitle() + " " + body);
+	}
+
 	/**
 	 * Convert a Rome feed to an Ajah feed.
 	 * 
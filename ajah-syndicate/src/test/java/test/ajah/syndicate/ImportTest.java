@@ -16,14 +16,20 @@
 package test.ajah.syndicate;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import lombok.extern.java.Log;
 
 import org.jdom.Document;
 import org.jdom.JDOMException;
+import org.junit.Assert;
 import org.junit.Test;
 
+import com.ajah.syndicate.FeedSource;
+import com.ajah.syndicate.FeedSourceHandler;
 import com.ajah.syndicate.opml.Opml;
 import com.ajah.syndicate.opml.Outline;
 import com.ajah.syndicate.rome.OpmlUtils;
@@ -77,4 +83,34 @@ public class ImportTest {
 		printOutlines(opml.getOutlines());
 	}
 
+	/**
+	 * Streaming the same file should yield the same feed sources as parsing
+	 * it.
+	 * 
+	 * @throws FeedException
+	 * @throws JDOMException
+	 * @throws IOException
+	 */
+	@Test
+	public void testOpmlStream() throws FeedException, JDOMException, IOException {
+		final Document doc = new SAXBuilder(false).build(getClass().getResourceAsStream("/opml/scoble.opml"));
+		final Set<String> parsed = new HashSet<>();
+		for (final FeedSource feedSource : OpmlUtils.extractFeedSources(OpmlUtils.parse(doc))) {
+			parsed.add(feedSource.getFeedUrl());
+		}
+		final Set<String> streamed = new HashSet<>();
+		try (final InputStream in = getClass().getResourceAsStream("/opml/scoble.opml")) {
+			OpmlUtils.extractFeedSources(in, new FeedSourceHandler() {
+
+				@Override
+				public boolean handle(final FeedSource feedSource) {
+					streamed.add(feedSource.getFeedUrl());
+					return true;
+				}
+			});
+		}
+		Assert.assertFalse(parsed.isEmpty());
+		Assert.assertEquals(parsed, streamed);
+	}
+
 }
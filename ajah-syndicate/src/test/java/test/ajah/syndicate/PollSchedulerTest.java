@@ -0,0 +1,112 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.syndicate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.syndicate.Entry;
+import com.ajah.syndicate.Feed;
+import com.ajah.syndicate.FeedSource;
+import com.ajah.syndicate.PollScheduler;
+import com.ajah.syndicate.PollStatus;
+import com.ajah.util.date.CalendarUnit;
+
+/**
+ * Tests {@link PollScheduler}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class PollSchedulerTest {
+
+	private static final long MIN = CalendarUnit.MINUTE.getMillis();
+
+	private final PollScheduler scheduler = new PollScheduler(MIN, 60 * MIN, 3);
+
+	private static Feed feed(final long gap, final int count) {
+		final List<Entry> entries = new ArrayList<>();
+		final long now = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			final Entry entry = new Entry();
+			entry.setPublished(new Date(now - i * gap));
+			entries.add(entry);
+		}
+		final Feed feed = new Feed();
+		feed.setEntries(entries);
+		return feed;
+	}
+
+	/**
+	 * The update interval is the median gap between entries.
+	 */
+	@Test
+	public void estimate() {
+		Assert.assertEquals(10 * MIN, PollScheduler.estimateUpdateInterval(feed(10 * MIN, 5).getEntries()));
+		Assert.assertEquals(-1, PollScheduler.estimateUpdateInterval(feed(10 * MIN, 1).getEntries()));
+		Assert.assertEquals(-1, PollScheduler.estimateUpdateInterval(null));
+	}
+
+	/**
+	 * Unchanged feeds back off, but not past the maximum.
+	 */
+	@Test
+	public void unchanged() {
+		final FeedSource feedSource = new FeedSource();
+		feedSource.setPollInterval(10 * MIN);
+		this.scheduler.success(feedSource, null, false);
+		Assert.assertEquals(15 * MIN, feedSource.getPollInterval());
+		Assert.assertEquals(PollStatus.ACTIVE, feedSource.getPollStatus());
+		for (int i = 0; i < 20; i++) {
+			this.scheduler.success(feedSource, null, false);
+		}
+		Assert.assertEquals(60 * MIN, feedSource.getPollInterval());
+	}
+
+	/**
+	 * Busy feeds are polled more often.
+	 */
+	@Test
+	public void busy() {
+		final FeedSource feedSource = new FeedSource();
+		feedSource.setPollInterval(40 * MIN);
+		this.scheduler.success(feedSource, feed(4 * MIN, 10), true);
+		Assert.assertEquals(21 * MIN, feedSource.getPollInterval());
+		Assert.assertTrue(feedSource.getNextPoll().getTime() > System.currentTimeMillis());
+	}
+
+	/**
+	 * Errors back off and eventually become permanent.
+	 */
+	@Test
+	public void errors() {
+		final FeedSource feedSource = new FeedSource();
+		this.scheduler.failure(feedSource, false);
+		Assert.assertEquals(PollStatus.ERROR_TMP, feedSource.getPollStatus());
+		Assert.assertEquals(1, feedSource.getPollErrors());
+		this.scheduler.failure(feedSource, false);
+		this.scheduler.failure(feedSource, false);
+		Assert.assertEquals(PollStatus.ERROR_PERM, feedSource.getPollStatus());
+		this.scheduler.success(feedSource, null, true);
+		Assert.assertEquals(0, feedSource.getPollErrors());
+		Assert.assertEquals(PollStatus.ACTIVE, feedSource.getPollStatus());
+	}
+
+}
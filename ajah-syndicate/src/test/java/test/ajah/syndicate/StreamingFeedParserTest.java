@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.syndicate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.syndicate.Entry;
+import com.ajah.syndicate.EntryHandler;
+import com.ajah.syndicate.Feed;
+import com.ajah.syndicate.FeedSource;
+import com.ajah.syndicate.StreamingFeedParser;
+import com.ajah.util.data.HashUtils;
+import com.ajah.util.net.AjahMimeType;
+import com.sun.syndication.io.FeedException;
+
+/**
+ * Tests {@link StreamingFeedParser}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class StreamingFeedParserTest {
+
+	private static class Collector implements EntryHandler {
+
+		final List<Entry> entries = new ArrayList<>();
+
+		@Override
+		public boolean handle(final Entry entry) {
+			this.entries.add(entry);
+			return true;
+		}
+
+	}
+
+	private Feed parse(final StreamingFeedParser parser, final String resource, final Collector collector) throws FeedException, IOException {
+		try (final InputStream in = getClass().getResourceAsStream(resource)) {
+			return parser.parse(in, new FeedSource(), collector);
+		}
+	}
+
+	/**
+	 * Parse an RSS 2.0 feed with content and Dublin Core extensions.
+	 * 
+	 * @throws FeedException
+	 * @throws IOException
+	 */
+	@Test
+	public void rss() throws FeedException, IOException {
+		final Collector collector = new Collector();
+		final Feed feed = parse(new StreamingFeedParser(), "/feeds/rss2.xml", collector);
+		Assert.assertEquals("Example Blog", feed.getTitle());
+		Assert.assertEquals("http://example.com/", feed.getUrl());
+		Assert.assertEquals(3, collector.entries.size());
+		final Entry third = collector.entries.get(0);
+		Assert.assertEquals("Third Post", third.getTitle());
+		Assert.assertEquals("http://example.com/?p=3", third.getHtmlUrl());
+		Assert.assertEquals("Eric", third.getAuthor());
+		Assert.assertEquals("<p>Third &amp; final</p>", third.getContent());
+		Assert.assertEquals(AjahMimeType.TEXT_HTML, third.getContentType());
+		Assert.assertEquals(feed.getId(), third.getFeedId());
+		Assert.assertNotNull(third.getPublished());
+		final Entry first = collector.entries.get(2);
+		Assert.assertEquals("http://example.com/1", first.getHtmlUrl());
+		Assert.assertEquals("<b>First</b> summary", first.getDescription());
+		Assert.assertEquals("<b>First</b> summary", first.getTitle());
+		Assert.assertEquals(AjahMimeType.TEXT_PLAIN, first.getContentType());
+	}
+
+	/**
+	 * Parse an Atom 1.0 feed with xhtml content.
+	 * 
+	 * @throws FeedException
+	 * @throws IOException
+	 */
+	@Test
+	public void atom() throws FeedException, IOException {
+		final Collector collector = new Collector();
+		final Feed feed = parse(new StreamingFeedParser(), "/feeds/atom.xml", collector);
+		Assert.assertEquals("Example Atom", feed.getTitle());
+		Assert.assertEquals("Eric", feed.getAuthor());
+		Assert.assertNotNull(feed.getPublished());
+		Assert.assertEquals(2, collector.entries.size());
+		final Entry second = collector.entries.get(0);
+		Assert.assertEquals("tag:example.com,2012:b", second.getHtmlUrl());
+		Assert.assertEquals("<div><p class=\"x\">Hello <b>world</b></p></div>", second.getContent());
+		Assert.assertNotNull(second.getUpdated());
+		Assert.assertEquals("Plain & simple", second.getDescription());
+		Assert.assertEquals("<p>Escaped</p>", collector.entries.get(1).getContent());
+	}
+
+	/**
+	 * Parsing should stop at the entry limit or the first seen entry.
+	 * 
+	 * @throws FeedException
+	 * @throws IOException
+	 */
+	@Test
+	public void stopEarly() throws FeedException, IOException {
+		final StreamingFeedParser parser = new StreamingFeedParser();
+		parser.setMaxEntries(1);
+		Collector collector = new Collector();
+		parse(parser, "/feeds/rss2.xml", collector);
+		Assert.assertEquals(1, collector.entries.size());
+
+		parser.setMaxEntries(0);
+		parser.setSeenHtmlUrlSha1s(Collections.singleton(HashUtils.sha1Hex("http://example.com/2")));
+		collector = new Collector();
+		parse(parser, "/feeds/rss2.xml", collector);
+		Assert.assertEquals(1, collector.entries.size());
+		Assert.assertEquals("Third Post", collector.entries.get(0).getTitle());
+	}
+
+}
@@ -54,6 +54,22 @@ public interface UserDao extends AjahDao<UserId, User> {
 	 */
 	public int update(final UserId userId, final Password password) throws DatabaseAccessException;
 
+	/**
+	 * Updates a user's password in the database, but only if it has not been
+	 * changed since it was read.
+	 * 
+	 * @param userId
+	 *            The ID of the user to update.
+	 * @param password
+	 *            The user's new password.
+	 * @param previous
+	 *            The stored password hash the new one replaces.
+	 * @return The number of rows updated, 0 if the password had changed.
+	 * @throws DatabaseAccessException
+	 *             If the record could not be updated.
+	 */
+	public int update(final UserId userId, final Password password, final String previous) throws DatabaseAccessException;
+
 	/**
 	 * Finds a user by username field.
 	 * 
@@ -66,7 +82,21 @@ public interface UserDao extends AjahDao<UserId, User> {
 	public User findByUsername(final String username) throws DatabaseAccessException;
 
 	/**
-	 * Finds a user by username and password.
+	 * Returns the stored password hash for a user.
+	 * 
+	 * @param userId
+	 *            The ID of the user.
+	 * @return The password hash, or null if the user was not found.
+	 * @throws DatabaseAccessException
+	 *             If the query could not be executed.
+	 */
+	public String findPassword(final UserId userId) throws DatabaseAccessException;
+
+	/**
+	 * Finds a user by username and password. This only works for password
+	 * schemes that hash the same password to the same value, so it will not
+	 * find users whose password is stored as a salted hash such as BCrypt.
+	 * Use {@link UserManager#getUser(String, Password)} to authenticate.
 	 * 
 	 * @param username
 	 *            The username to query.
@@ -15,10 +15,13 @@
  */
 package com.ajah.user.data;
 
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Repository;
 
 import com.ajah.crypto.Password;
 import com.ajah.spring.jdbc.AbstractAjahDao;
+import com.ajah.spring.jdbc.DatabaseAccessException;
 import com.ajah.user.User;
 import com.ajah.user.UserId;
 import com.ajah.user.UserImpl;
@@ -38,6 +41,21 @@ public class UserDaoImpl extends AbstractAjahDao<UserId, User, UserImpl> impleme
 		return super.findByField("username", username);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String findPassword(final UserId userId) throws DatabaseAccessException {
+		AjahUtils.requireParam(userId, "userId");
+		try {
+			return getJdbcTemplate().queryForObject("SELECT password FROM user WHERE user_id = ?", String.class, userId.toString());
+		} catch (final EmptyResultDataAccessException e) {
+			return null;
+		} catch (final DataAccessException e) {
+			throw new DatabaseAccessException(e);
+		}
+	}
+
 	@Override
 	public User findByUsernameAndPassword(final String username, final String password) {
 		return super.findByFields(new String[] { "username", "password" }, new String[] { username, password });
@@ -78,4 +96,24 @@ public class UserDaoImpl extends AbstractAjahDao<UserId, User, UserImpl> impleme
 		return this.jdbcTemplate.update("UPDATE user SET password = ? WHERE user_id = ?", new Object[] { password.toString(), userId.toString() });
 	}
 
+	/**
+	 * UPDATEs the user table with a new password, if the stored one is still
+	 * the one it replaces.
+	 * 
+	 * @param userId
+	 *            ID of user to update, required.
+	 * @param password
+	 *            Password to update to, required.
+	 * @param previous
+	 *            The stored password hash being replaced, required.
+	 */
+	@Override
+	public int update(final UserId userId, final Password password, final String previous) {
+		AjahUtils.requireParam(userId, "userId");
+		AjahUtils.requireParam(password, "password");
+		AjahUtils.requireParam(previous, "previous");
+		AjahUtils.requireParam(this.jdbcTemplate, "this.jdbcTemplate");
+		return this.jdbcTemplate.update("UPDATE user SET password = ? WHERE user_id = ? AND password = ?", new Object[] { password.toString(), userId.toString(), previous });
+	}
+
 }
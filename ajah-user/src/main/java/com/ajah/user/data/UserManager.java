@@ -15,8 +15,19 @@
  */
 package com.ajah.user.data;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 
 import lombok.extern.java.Log;
 
@@ -24,7 +35,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.ajah.crypto.BCrypt;
+import com.ajah.crypto.BCryptPassword;
 import com.ajah.crypto.Password;
+import com.ajah.crypto.PasswordHasher;
 import com.ajah.spring.jdbc.DatabaseAccessException;
 import com.ajah.user.AuthenicationFailureException;
 import com.ajah.user.User;
@@ -65,6 +79,32 @@ public class UserManager {
 	@Autowired
 	private EmailDao emailDao;
 
+	// Upgrades stored password hashes after log in, off the request thread.
+	// When its queue is full, upgrades are rejected and retried at the next
+	// log in.
+	private final ThreadPoolExecutor rehasher = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(100), new ThreadFactory() {
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread thread = new Thread(r, "password-rehasher");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final Set<String> rehashing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * A BCrypt hash of a random password, checked when there is no user or
+	 * stored hash so that failing takes as long as a wrong password does.
+	 * Created on first use, since it takes as long as a log in.
+	 */
+	private static final class NoUser {
+
+		static final String HASH = BCrypt.hashpw(UUID.randomUUID().toString(), BCrypt.gensalt(PasswordHasher.i.getLogRounds()));
+
+	}
+
 	/**
 	 * Changes a user's password.
 	 * 
@@ -182,12 +222,19 @@ public class UserManager {
 	}
 
 	/**
-	 * Attempt to find a user and authenticate.
+	 * Attempt to find a user and authenticate. The user is loaded by username
+	 * and the password is verified with the scheme of the stored hash, either
+	 * a plain {@link com.ajah.crypto.HmacSha1Password} hash or a
+	 * {@link com.ajah.crypto.BCrypt} hash of it. After a successful log in, a
+	 * stored hash that is not BCrypt, or has fewer log rounds than
+	 * {@link PasswordHasher#i}, is replaced in the background. An unknown
+	 * username costs a BCrypt check too, so response times don't reveal which
+	 * usernames exist.
 	 * 
 	 * @param username
 	 *            A valid username for a user.
 	 * @param password
-	 *            The user's password, unencrypted.
+	 *            The user's password, as an HmacSha1 hash.
 	 * @return User if found and authenticated correctly, will never return
 	 *         null.
 	 * @throws AuthenicationFailureException
@@ -199,14 +246,55 @@ public class UserManager {
 	 */
 	public User getUser(final String username, final Password password) throws AuthenicationFailureException, UserNotFoundException, DatabaseAccessException {
 		AjahUtils.requireParam(username, "username");
-		final User user = this.userDao.findByUsernameAndPassword(username, password.toString());
-		if (user != null) {
+		AjahUtils.requireParam(password, "password");
+		final User user = this.userDao.findByUsername(username);
+		final String stored = user == null ? null : this.userDao.findPassword(user.getId());
+		if (stored == null) {
+			PasswordHasher.i.check(password.toString(), NoUser.HASH);
+		} else if (matches(password.toString(), stored)) {
 			log.fine("getUser successful");
+			if (PasswordHasher.i.needsRehash(stored)) {
+				rehash(user.getId(), password.toString(), stored);
+			}
 			return user;
 		}
 		throw new AuthenicationFailureException(username + " authentication failed");
 	}
 
+	private static boolean matches(final String hash, final String stored) {
+		if (PasswordHasher.isBCrypt(stored)) {
+			return PasswordHasher.i.check(hash, stored);
+		}
+		return MessageDigest.isEqual(hash.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void rehash(final UserId userId, final String hash, final String stored) {
+		if (!this.rehashing.add(userId.toString())) {
+			return;
+		}
+		try {
+			this.rehasher.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						final Password upgraded = new BCryptPassword(hash, false);
+						if (UserManager.this.userDao.update(userId, upgraded, stored) > 0) {
+							log.fine("Upgraded password hash for " + userId);
+						}
+					} catch (final DatabaseAccessException | RuntimeException e) {
+						// The old hash still works, so try again next time
+						log.log(Level.WARNING, "Could not upgrade password hash for " + userId + ": " + e.getMessage(), e);
+					} finally {
+						UserManager.this.rehashing.remove(userId.toString());
+					}
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			this.rehashing.remove(userId.toString());
+		}
+	}
+
 	/**
 	 * Find a user info object if possible, otherwise create one.
 	 * 
@@ -0,0 +1,136 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.user.data;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ajah.crypto.BCrypt;
+import com.ajah.crypto.HmacSha1Password;
+import com.ajah.crypto.PasswordHasher;
+import com.ajah.user.AuthenicationFailureException;
+import com.ajah.user.User;
+import com.ajah.user.UserId;
+import com.ajah.user.UserImpl;
+import com.ajah.user.data.UserDao;
+import com.ajah.user.data.UserManager;
+
+/**
+ * Tests logging in with {@link UserManager} against an in-memory
+ * {@link UserDao}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class UserManagerTest {
+
+	private static final String HMAC = "8843d7f92416211de9ebb963ff4ce28125932878";
+
+	private final User user = new UserImpl();
+	private final AtomicReference<String> stored = new AtomicReference<>(HMAC);
+	private UserManager userManager;
+
+	/**
+	 * Creates a manager with a user whose password is stored as a plain
+	 * HMAC-SHA1 hash.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.user.setId(new UserId("user-1"));
+		this.user.setUsername("alice");
+		final UserDao userDao = (UserDao) Proxy.newProxyInstance(UserDao.class.getClassLoader(), new Class<?>[] { UserDao.class }, new InvocationHandler() {
+
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+				switch (method.getName()) {
+				case "findByUsername":
+					return UserManagerTest.this.user.getUsername().equals(args[0]) ? UserManagerTest.this.user : null;
+				case "findPassword":
+					return UserManagerTest.this.stored.get();
+				case "update":
+					if (args.length == 3) {
+						// Only replaces the hash it was read with
+						return Integer.valueOf(UserManagerTest.this.stored.compareAndSet((String) args[2], args[1].toString()) ? 1 : 0);
+					}
+					break;
+				default:
+					break;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+		this.userManager = new UserManager();
+		final Field field = UserManager.class.getDeclaredField("userDao");
+		field.setAccessible(true);
+		field.set(this.userManager, userDao);
+	}
+
+	/**
+	 * Logging in with a plain hash should replace it with a BCrypt hash, and
+	 * logging in should still work afterwards.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void upgrade() throws Exception {
+		Assert.assertSame(this.user, this.userManager.getUser("alice", new HmacSha1Password(HMAC, true)));
+		for (int i = 0; i < 100 && !PasswordHasher.isBCrypt(this.stored.get()); i++) {
+			Thread.sleep(100);
+		}
+		final String upgraded = this.stored.get();
+		Assert.assertTrue(PasswordHasher.isBCrypt(upgraded));
+		Assert.assertTrue(BCrypt.checkpw(HMAC, upgraded));
+
+		Assert.assertSame(this.user, this.userManager.getUser("alice", new HmacSha1Password(HMAC, true)));
+		Assert.assertEquals(upgraded, this.stored.get());
+	}
+
+	/**
+	 * A wrong password should fail, and leave the stored hash alone.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void wrongPassword() throws Exception {
+		try {
+			this.userManager.getUser("alice", new HmacSha1Password("0000000000000000000000000000000000000000", true));
+			Assert.fail("Expected the log in to fail");
+		} catch (final AuthenicationFailureException e) {
+			// Expected
+		}
+		Assert.assertEquals(HMAC, this.stored.get());
+	}
+
+	/**
+	 * An unknown username should fail the same way as a wrong password.
+	 * 
+	 * @throws Exception
+	 */
+	@Test(expected = AuthenicationFailureException.class)
+	public void unknownUser() throws Exception {
+		this.userManager.getUser("bob", new HmacSha1Password(HMAC, true));
+	}
+
+}
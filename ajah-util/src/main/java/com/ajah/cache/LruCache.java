@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * A thread-safe cache that holds a fixed maximum number of values, discarding
+ * the least recently used value when full.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ * @param <K>
+ *            The type of key.
+ * @param <V>
+ *            The type of value.
+ */
+public class LruCache<K, V> {
+
+	private static class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 2952816287358318451L;
+
+		private final int maxSize;
+
+		LruMap(final int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+			return size() > this.maxSize;
+		}
+
+	}
+
+	private final LruMap<K, V> map;
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param maxSize
+	 *            The maximum number of values to hold, must be 1 or greater.
+	 */
+	public LruCache(final int maxSize) {
+		AjahUtils.requireParam(maxSize, "maxSize", 1);
+		this.map = new LruMap<>(maxSize);
+	}
+
+	/**
+	 * Removes all values.
+	 */
+	public synchronized void clear() {
+		this.map.clear();
+	}
+
+	/**
+	 * Returns a cached value, marking it as recently used.
+	 * 
+	 * @param key
+	 *            The key of the value to fetch.
+	 * @return The cached value, or null.
+	 */
+	public synchronized V get(final K key) {
+		return this.map.get(key);
+	}
+
+	/**
+	 * Stores a value, discarding the least recently used value if the cache is
+	 * full.
+	 * 
+	 * @param key
+	 *            The key to store the value under.
+	 * @param value
+	 *            The value to store.
+	 */
+	public synchronized void put(final K key, final V value) {
+		this.map.put(key, value);
+	}
+
+	/**
+	 * Removes a value.
+	 * 
+	 * @param key
+	 *            The key of the value to remove.
+	 * @return The value that was removed, or null.
+	 */
+	public synchronized V remove(final K key) {
+		return this.map.remove(key);
+	}
+
+	/**
+	 * Returns the number of values currently cached.
+	 * 
+	 * @return The number of values currently cached.
+	 */
+	public synchronized int size() {
+		return this.map.size();
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.util.data;
+
+import java.io.IOException;
+
+/**
+ * A store of opaque blobs by key. Implementations are typically used
+ * content-addressed, with the key being a hash of the data, so storing the
+ * same data twice is harmless.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public interface BlobStore {
+
+	/**
+	 * Fetches a blob.
+	 * 
+	 * @param key
+	 *            The key the blob was stored under, required.
+	 * @return The blob, or null if there is nothing stored under the key.
+	 * @throws IOException
+	 *             If the store could not be read.
+	 */
+	byte[] get(final String key) throws IOException;
+
+	/**
+	 * Stores a blob. If a blob is already stored under the key it is left in
+	 * place.
+	 * 
+	 * @param key
+	 *            The key to store the blob under, required.
+	 * @param data
+	 *            The blob, required.
+	 * @throws IOException
+	 *             If the blob could not be stored.
+	 */
+	void put(final String key, final byte[] data) throws IOException;
+
+}
@@ -0,0 +1,183 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.util.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * A BK-tree of 64-bit hashes, finding values whose hash is within any given
+ * Hamming distance of a query. Each child of a node is keyed by its distance
+ * to that node, so by the triangle inequality a search only descends into
+ * children whose key is within the search distance of the query's distance
+ * to the node. Unlike {@link SimHashIndex} the distance is chosen per search
+ * and is not limited, though searches get slower as it grows.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ * @param <T>
+ *            The type of value stored with each hash.
+ */
+public class HammingBkTree<T> {
+
+	private static class Node<T> {
+
+		final long hash;
+		final List<T> values = new ArrayList<>(1);
+		// Most nodes have few children, so they're kept in small parallel
+		// arrays rather than a 65 slot table
+		byte[] distances = new byte[2];
+		Object[] children = new Object[2];
+		int childCount;
+
+		Node(final long hash) {
+			this.hash = hash;
+		}
+
+		@SuppressWarnings("unchecked")
+		Node<T> getChild(final int distance) {
+			for (int i = 0; i < this.childCount; i++) {
+				if (this.distances[i] == distance) {
+					return (Node<T>) this.children[i];
+				}
+			}
+			return null;
+		}
+
+		void addChild(final int distance, final Node<T> child) {
+			if (this.childCount == this.children.length) {
+				this.distances = Arrays.copyOf(this.distances, this.childCount * 2);
+				this.children = Arrays.copyOf(this.children, this.childCount * 2);
+			}
+			this.distances[this.childCount] = (byte) distance;
+			this.children[this.childCount++] = child;
+		}
+
+	}
+
+	private static class Match<T> {
+
+		final int distance;
+		final T value;
+
+		Match(final int distance, final T value) {
+			this.distance = distance;
+			this.value = value;
+		}
+
+	}
+
+	private Node<T> root;
+	private int size;
+
+	/**
+	 * Adds a value. Values with the same hash are kept together.
+	 * 
+	 * @param hash
+	 *            The value's hash.
+	 * @param value
+	 *            The value, required.
+	 */
+	public void add(final long hash, final T value) {
+		AjahUtils.requireParam(value, "value");
+		this.size++;
+		if (this.root == null) {
+			this.root = new Node<>(hash);
+			this.root.values.add(value);
+			return;
+		}
+		Node<T> node = this.root;
+		while (true) {
+			final int distance = Long.bitCount(node.hash ^ hash);
+			if (distance == 0) {
+				node.values.add(value);
+				return;
+			}
+			final Node<T> next = node.getChild(distance);
+			if (next == null) {
+				final Node<T> child = new Node<>(hash);
+				child.values.add(value);
+				node.addChild(distance, child);
+				return;
+			}
+			node = next;
+		}
+	}
+
+	/**
+	 * Finds the values within a distance of a hash.
+	 * 
+	 * @param hash
+	 *            The hash to match.
+	 * @param maxDistance
+	 *            The greatest number of differing bits that is still a match.
+	 * @return The matching values, closest first. May be empty but not null.
+	 */
+	public List<T> find(final long hash, final int maxDistance) {
+		final List<Match<T>> matches = new ArrayList<>();
+		if (this.root != null) {
+			final Deque<Node<T>> stack = new ArrayDeque<>();
+			stack.push(this.root);
+			while (!stack.isEmpty()) {
+				final Node<T> node = stack.pop();
+				final int distance = Long.bitCount(node.hash ^ hash);
+				if (distance <= maxDistance) {
+					for (final T value : node.values) {
+						matches.add(new Match<>(distance, value));
+					}
+				}
+				for (int i = 0; i < node.childCount; i++) {
+					if (Math.abs(node.distances[i] - distance) <= maxDistance) {
+						@SuppressWarnings("unchecked")
+						final Node<T> child = (Node<T>) node.children[i];
+						stack.push(child);
+					}
+				}
+			}
+		}
+		Collections.sort(matches, new Comparator<Match<T>>() {
+
+			@Override
+			public int compare(final Match<T> a, final Match<T> b) {
+				return a.distance - b.distance;
+			}
+		});
+		final List<T> values = new ArrayList<>(matches.size());
+		for (final Match<T> match : matches) {
+			values.add(match.value);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the number of values in the tree.
+	 * 
+	 * @return The number of values in the tree.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+}
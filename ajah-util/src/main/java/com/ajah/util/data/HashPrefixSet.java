@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.util.data;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * A compact set of hexadecimal hashes (such as those from
+ * {@link HashUtils#sha1Hex(String)}) that stores only the first 64 bits of
+ * each hash in an open-addressed array of longs, about 16 bytes per hash
+ * instead of the ~100 a {@link String} in a {@link java.util.HashSet} costs.
+ * Two distinct hashes sharing a 64-bit prefix is vanishingly unlikely, so
+ * {@link #contains(String)} is treated as exact.
+ * 
+ * The set holds at most a fixed number of hashes; adding one more empties it
+ * first, so it is suited to caching recently seen hashes in front of an
+ * authoritative store. This class is not thread-safe.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class HashPrefixSet {
+
+	private final int maxSize;
+	private long[] slots;
+	private boolean hasZero;
+	private int size;
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param maxSize
+	 *            The maximum number of hashes to hold, must be 1 or greater.
+	 */
+	public HashPrefixSet(final int maxSize) {
+		AjahUtils.requireParam(maxSize, "maxSize", 1);
+		this.maxSize = maxSize;
+		this.slots = new long[16];
+	}
+
+	/**
+	 * Adds a hash to the set, emptying it first if it is full.
+	 * 
+	 * @param hash
+	 *            The hexadecimal hash, at least 16 characters, required.
+	 * @return true if the hash was not already in the set.
+	 */
+	public boolean add(final String hash) {
+		final long prefix = prefix(hash);
+		if (contains(prefix)) {
+			return false;
+		}
+		if (this.size >= this.maxSize) {
+			clear();
+		}
+		if (prefix == 0) {
+			this.hasZero = true;
+		} else {
+			if ((this.size + 1) * 2 > this.slots.length) {
+				rehash(this.slots.length * 2);
+			}
+			insert(this.slots, prefix);
+		}
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Removes all hashes from the set.
+	 */
+	public void clear() {
+		this.slots = new long[16];
+		this.hasZero = false;
+		this.size = 0;
+	}
+
+	/**
+	 * Checks if a hash is in the set.
+	 * 
+	 * @param hash
+	 *            The hexadecimal hash, at least 16 characters, required.
+	 * @return true if the hash is in the set.
+	 */
+	public boolean contains(final String hash) {
+		return contains(prefix(hash));
+	}
+
+	/**
+	 * Returns the number of hashes in the set.
+	 * 
+	 * @return The number of hashes in the set.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	private boolean contains(final long prefix) {
+		if (prefix == 0) {
+			return this.hasZero;
+		}
+		final int mask = this.slots.length - 1;
+		for (int i = index(prefix, mask);; i = (i + 1) & mask) {
+			if (this.slots[i] == prefix) {
+				return true;
+			} else if (this.slots[i] == 0) {
+				return false;
+			}
+		}
+	}
+
+	private void rehash(final int capacity) {
+		final long[] newSlots = new long[capacity];
+		for (final long prefix : this.slots) {
+			if (prefix != 0) {
+				insert(newSlots, prefix);
+			}
+		}
+		this.slots = newSlots;
+	}
+
+	private static int index(final long prefix, final int mask) {
+		// The prefix is already a hash, so any bits will do
+		return (int) (prefix ^ (prefix >>> 32)) & mask;
+	}
+
+	private static void insert(final long[] slots, final long prefix) {
+		final int mask = slots.length - 1;
+		int i = index(prefix, mask);
+		while (slots[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		slots[i] = prefix;
+	}
+
+	private static long prefix(final String hash) {
+		AjahUtils.requireParam(hash, "hash");
+		if (hash.length() < 16) {
+			throw new IllegalArgumentException("Hash must be at least 16 characters: " + hash);
+		}
+		long prefix = 0;
+		for (int i = 0; i < 16; i++) {
+			final int digit = Character.digit(hash.charAt(i), 16);
+			if (digit < 0) {
+				throw new IllegalArgumentException("Hash must be hexadecimal: " + hash);
+			}
+			prefix = (prefix << 4) | digit;
+		}
+		return prefix;
+	}
+
+}
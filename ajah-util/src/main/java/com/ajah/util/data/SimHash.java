@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.util.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * SimHash fingerprints, which map similar texts to 64-bit values that differ
+ * in only a few bits, so near-duplicates can be found by
+ * {@link #distance(long, long)} rather than by comparing the texts.
+ * 
+ * @see SimHashIndex
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class SimHash {
+
+	private static final int SHINGLE_SIZE = 3;
+
+	private static final int MIN_WORDS = 8;
+
+	/**
+	 * Fingerprints text by its overlapping three-word shingles. HTML tags and
+	 * entities are ignored, as are case and punctuation.
+	 * 
+	 * @param text
+	 *            The text to fingerprint, may be null.
+	 * @return The fingerprint, or null if the text has too few words for a
+	 *         meaningful fingerprint.
+	 */
+	public static Long fingerprint(final String text) {
+		final List<String> words = words(text);
+		if (words.size() < MIN_WORDS) {
+			return null;
+		}
+		final List<String> shingles = new ArrayList<>(words.size() - SHINGLE_SIZE + 1);
+		final StringBuilder shingle = new StringBuilder();
+		for (int i = 0; i + SHINGLE_SIZE <= words.size(); i++) {
+			shingle.setLength(0);
+			for (int j = i; j < i + SHINGLE_SIZE; j++) {
+				shingle.append(words.get(j)).append(' ');
+			}
+			shingles.add(shingle.toString());
+		}
+		return Long.valueOf(hash(shingles));
+	}
+
+	/**
+	 * Computes the SimHash of a set of features, each weighted equally.
+	 * 
+	 * @param features
+	 *            The features, required.
+	 * @return The SimHash of the features.
+	 */
+	public static long hash(final Collection<String> features) {
+		final int[] weights = new int[64];
+		for (final String feature : features) {
+			final long featureHash = hash64(feature);
+			for (int bit = 0; bit < 64; bit++) {
+				if ((featureHash & (1L << bit)) != 0) {
+					weights[bit]++;
+				} else {
+					weights[bit]--;
+				}
+			}
+		}
+		long simHash = 0;
+		for (int bit = 0; bit < 64; bit++) {
+			if (weights[bit] > 0) {
+				simHash |= 1L << bit;
+			}
+		}
+		return simHash;
+	}
+
+	/**
+	 * The number of bits that differ between two fingerprints.
+	 * 
+	 * @param a
+	 *            A fingerprint.
+	 * @param b
+	 *            Another fingerprint.
+	 * @return The Hamming distance, from 0 to 64.
+	 */
+	public static int distance(final long a, final long b) {
+		return Long.bitCount(a ^ b);
+	}
+
+	/**
+	 * A 64-bit FNV-1a hash, with a final mix so every input bit affects every
+	 * output bit.
+	 */
+	private static long hash64(final String string) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < string.length(); i++) {
+			hash ^= string.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static List<String> words(final String text) {
+		final List<String> words = new ArrayList<>();
+		if (text == null) {
+			return words;
+		}
+		final StringBuilder word = new StringBuilder();
+		boolean inTag = false;
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+			if (inTag) {
+				inTag = c != '>';
+			} else if (Character.isLetterOrDigit(c)) {
+				word.append(Character.toLowerCase(c));
+				continue;
+			} else if (c == '<') {
+				inTag = true;
+			} else if (c == '&') {
+				// Skip the entity name, the semicolon ends the word below
+				while (i + 1 < text.length() && (Character.isLetterOrDigit(text.charAt(i + 1)) || text.charAt(i + 1) == '#')) {
+					i++;
+				}
+			}
+			if (word.length() > 0) {
+				words.add(word.toString());
+				word.setLength(0);
+			}
+		}
+		if (word.length() > 0) {
+			words.add(word.toString());
+		}
+		return words;
+	}
+
+}
@@ -0,0 +1,185 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.util.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * Finds values whose {@link SimHash} fingerprints are within a small Hamming
+ * distance of a given fingerprint, without comparing against every value.
+ * 
+ * Fingerprints are split into one more band than the maximum distance, and
+ * each band is indexed in its own hash table. Two fingerprints that differ in
+ * at most that many bits must match exactly in at least one band, so a lookup
+ * only has to check the candidates that share a band.
+ * 
+ * The index holds a fixed number of values, dropping the oldest when full.
+ * This class is not thread-safe.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ * @param <T>
+ *            The type of value stored with each fingerprint.
+ */
+public class SimHashIndex<T> {
+
+	private static final class Item<T> {
+
+		final long fingerprint;
+		final T value;
+		int distance;
+
+		Item(final long fingerprint, final T value) {
+			this.fingerprint = fingerprint;
+			this.value = value;
+		}
+
+	}
+
+	private final int maxDistance;
+	private final int maxSize;
+	private final int bandBits;
+	private final List<Map<Long, List<Item<T>>>> bands;
+	private final ArrayDeque<Item<T>> items = new ArrayDeque<>();
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param maxDistance
+	 *            The greatest number of differing bits that is still a match,
+	 *            from 0 to 7.
+	 * @param maxSize
+	 *            The maximum number of values to hold, must be 1 or greater.
+	 */
+	public SimHashIndex(final int maxDistance, final int maxSize) {
+		AjahUtils.requireParam(maxDistance, "maxDistance", 0);
+		AjahUtils.requireParam(maxSize, "maxSize", 1);
+		if (maxDistance > 7) {
+			throw new IllegalArgumentException("maxDistance must be 7 or less");
+		}
+		this.maxDistance = maxDistance;
+		this.maxSize = maxSize;
+		this.bandBits = 64 / (maxDistance + 1);
+		this.bands = new ArrayList<>(maxDistance + 1);
+		for (int i = 0; i <= maxDistance; i++) {
+			this.bands.add(new HashMap<Long, List<Item<T>>>());
+		}
+	}
+
+	/**
+	 * Adds a value, dropping the oldest value if the index is full.
+	 * 
+	 * @param fingerprint
+	 *            The value's fingerprint.
+	 * @param value
+	 *            The value, required.
+	 */
+	public void add(final long fingerprint, final T value) {
+		AjahUtils.requireParam(value, "value");
+		if (this.items.size() >= this.maxSize) {
+			remove(this.items.removeFirst());
+		}
+		final Item<T> item = new Item<>(fingerprint, value);
+		this.items.addLast(item);
+		for (int band = 0; band < this.bands.size(); band++) {
+			final Long key = Long.valueOf(getKey(fingerprint, band));
+			List<Item<T>> bucket = this.bands.get(band).get(key);
+			if (bucket == null) {
+				bucket = new ArrayList<>(1);
+				this.bands.get(band).put(key, bucket);
+			}
+			bucket.add(item);
+		}
+	}
+
+	/**
+	 * Finds the values within the maximum distance of a fingerprint.
+	 * 
+	 * @param fingerprint
+	 *            The fingerprint to match.
+	 * @return The matching values, closest first. May be empty but not null.
+	 */
+	public List<T> find(final long fingerprint) {
+		final Map<Item<T>, Boolean> matches = new IdentityHashMap<>();
+		for (int band = 0; band < this.bands.size(); band++) {
+			final List<Item<T>> bucket = this.bands.get(band).get(Long.valueOf(getKey(fingerprint, band)));
+			if (bucket == null) {
+				continue;
+			}
+			for (final Item<T> item : bucket) {
+				item.distance = SimHash.distance(fingerprint, item.fingerprint);
+				if (item.distance <= this.maxDistance) {
+					matches.put(item, Boolean.TRUE);
+				}
+			}
+		}
+		final List<Item<T>> sorted = new ArrayList<>(matches.keySet());
+		Collections.sort(sorted, new Comparator<Item<T>>() {
+
+			@Override
+			public int compare(final Item<T> a, final Item<T> b) {
+				return a.distance - b.distance;
+			}
+		});
+		final List<T> values = new ArrayList<>(sorted.size());
+		for (final Item<T> item : sorted) {
+			values.add(item.value);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the number of values in the index.
+	 * 
+	 * @return The number of values in the index.
+	 */
+	public int size() {
+		return this.items.size();
+	}
+
+	private long getKey(final long fingerprint, final int band) {
+		final int shift = band * this.bandBits;
+		final int width = band == this.bands.size() - 1 ? 64 - shift : this.bandBits;
+		final long mask = width == 64 ? -1L : (1L << width) - 1;
+		return (fingerprint >>> shift) & mask;
+	}
+
+	private void remove(final Item<T> item) {
+		for (int band = 0; band < this.bands.size(); band++) {
+			final Long key = Long.valueOf(getKey(item.fingerprint, band));
+			final List<Item<T>> bucket = this.bands.get(band).get(key);
+			for (int i = 0; i < bucket.size(); i++) {
+				if (bucket.get(i) == item) {
+					bucket.remove(i);
+					break;
+				}
+			}
+			if (bucket.isEmpty()) {
+				this.bands.get(band).remove(key);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,176 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.util.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.ajah.util.AjahUtils;
+
+/**
+ * Utilities for compressing and decompressing data with gzip.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class CompressionUtils {
+
+	/**
+	 * Gzips a byte array.
+	 * 
+	 * @param data
+	 *            The data to compress, required.
+	 * @return The gzipped data.
+	 * @throws IOException
+	 *             If the data could not be compressed.
+	 */
+	public static byte[] gzip(final byte[] data) throws IOException {
+		AjahUtils.requireParam(data, "data");
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+		try (final GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+			gzip.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Gunzips a byte array. The decompressed size is read from the gzip
+	 * trailer so the result can be allocated once, at the right size.
+	 * 
+	 * @param data
+	 *            The gzipped data, required.
+	 * @return The decompressed data.
+	 * @throws IOException
+	 *             If the data is not valid gzip data.
+	 */
+	public static byte[] gunzip(final byte[] data) throws IOException {
+		AjahUtils.requireParam(data, "data");
+		final int size = getUncompressedSize(data);
+		try (final GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data), 8192)) {
+			if (size >= 0) {
+				final byte[] result = new byte[size];
+				int offset = 0;
+				int read;
+				while (offset < size && (read = in.read(result, offset, size - offset)) != -1) {
+					offset += read;
+				}
+				if (offset == size && in.read() == -1) {
+					return result;
+				}
+			}
+		}
+		// The trailer lied (e.g. concatenated members or >4GB), do it the slow
+		// way.
+		try (final GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data), 8192)) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Reads the uncompressed size (modulo 2^32) recorded in the trailer of
+	 * gzipped data.
+	 * 
+	 * @param data
+	 *            The gzipped data, required.
+	 * @return The uncompressed size, or -1 if it is not available or too large
+	 *         for an array.
+	 */
+	public static int getUncompressedSize(final byte[] data) {
+		AjahUtils.requireParam(data, "data");
+		if (!isGzip(data) || data.length < 18) {
+			return -1;
+		}
+		final int i = data.length - 4;
+		final int size = (data[i] & 0xff) | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff) << 16 | (data[i + 3] & 0xff) << 24;
+		// Deflate can't do better than about 1032:1, so anything beyond that is
+		// a corrupt or wrapped trailer.
+		if (size < 0 || size / 1032 > data.length) {
+			return -1;
+		}
+		return size;
+	}
+
+	/**
+	 * Checks for the gzip magic number.
+	 * 
+	 * @param data
+	 *            The data to check, required.
+	 * @return true if the data starts with the gzip magic number.
+	 */
+	public static boolean isGzip(final byte[] data) {
+		AjahUtils.requireParam(data, "data");
+		return data.length >= 2 && (data[0] & 0xff) == 0x1f && (data[1] & 0xff) == 0x8b;
+	}
+
+	/**
+	 * Sniffs the first few bytes of data for the signature of formats that are
+	 * already compressed (images, archives, etc.) and so aren't worth
+	 * compressing again.
+	 * 
+	 * @param data
+	 *            The data to check, required.
+	 * @return true if the data appears to be in a compressed format.
+	 */
+	public static boolean isCompressedFormat(final byte[] data) {
+		AjahUtils.requireParam(data, "data");
+		if (data.length < 4) {
+			return false;
+		}
+		final int b0 = data[0] & 0xff;
+		final int b1 = data[1] & 0xff;
+		final int b2 = data[2] & 0xff;
+		final int b3 = data[3] & 0xff;
+		if (b0 == 0x1f && b1 == 0x8b) {
+			// gzip
+			return true;
+		} else if (b0 == 0x89 && b1 == 'P' && b2 == 'N' && b3 == 'G') {
+			return true;
+		} else if (b0 == 0xff && b1 == 0xd8 && b2 == 0xff) {
+			// JPEG
+			return true;
+		} else if (b0 == 'G' && b1 == 'I' && b2 == 'F' && b3 == '8') {
+			return true;
+		} else if (b0 == 'P' && b1 == 'K' && b2 == 3 && b3 == 4) {
+			// zip, jar, docx, etc.
+			return true;
+		} else if (b0 == 'R' && b1 == 'I' && b2 == 'F' && b3 == 'F') {
+			// webp, avi, wav
+			return true;
+		} else if (b0 == 'B' && b1 == 'Z' && b2 == 'h') {
+			return true;
+		} else if (b0 == 0xfd && b1 == '7' && b2 == 'z' && b3 == 'X') {
+			// xz
+			return true;
+		} else if (b0 == 'I' && b1 == 'D' && b2 == '3') {
+			// mp3
+			return true;
+		} else if (data.length >= 8 && (data[4] & 0xff) == 'f' && (data[5] & 0xff) == 't' && (data[6] & 0xff) == 'y' && (data[7] & 0xff) == 'p') {
+			// mp4, mov
+			return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.ajah.util.io.file;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.ajah.util.AjahUtils;
+import com.ajah.util.data.BlobStore;
+
+/**
+ * A {@link BlobStore} that keeps each blob in its own file, spread over
+ * subdirectories by {@link FileHashUtils#getHashedFileName(String, int, int)}.
+ * Keys should be hashes (or at least six characters of evenly distributed
+ * filename-safe text).
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class FileBlobStore implements BlobStore {
+
+	private final File root;
+
+	/**
+	 * Public constructor.
+	 * 
+	 * @param root
+	 *            The directory to store blobs under, required.
+	 */
+	public FileBlobStore(final File root) {
+		AjahUtils.requireParam(root, "root");
+		this.root = root;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] get(final String key) throws IOException {
+		final File file = getFile(key);
+		if (!file.exists()) {
+			return null;
+		}
+		return FileUtils.readFileAsBytes(file);
+	}
+
+	/**
+	 * Writes to a temporary file and renames it into place, so concurrent
+	 * readers never see a partial blob.
+	 * 
+	 * @see com.ajah.util.data.BlobStore#put(java.lang.String, byte[])
+	 */
+	@Override
+	public void put(final String key, final byte[] data) throws IOException {
+		AjahUtils.requireParam(data, "data");
+		final File file = getFile(key);
+		if (file.exists()) {
+			return;
+		}
+		final File temp = new File(file.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+		FileUtils.write(temp, data);
+		if (!temp.renameTo(file) && !file.exists()) {
+			temp.delete();
+			throw new IOException("Could not rename " + temp + " to " + file);
+		}
+		temp.delete();
+	}
+
+	private File getFile(final String key) {
+		AjahUtils.requireParam(key, "key");
+		return new File(this.root, FileHashUtils.getHashedFileName(key, 3, 2));
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.util.data;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.util.data.HammingBkTree;
+
+/**
+ * Tests {@link HammingBkTree}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class HammingBkTreeTest {
+
+	/**
+	 * Searches should find exactly what a brute force scan finds.
+	 */
+	@Test
+	public void matchesBruteForce() {
+		final Random random = new Random(1);
+		final HammingBkTree<Integer> tree = new HammingBkTree<>();
+		final List<Long> hashes = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			// Cluster the hashes so there is something to find
+			final long hash = i % 10 == 0 || hashes.isEmpty() ? random.nextLong() : hashes.get(random.nextInt(hashes.size())) ^ (1L << random.nextInt(64)) ^ (1L << random.nextInt(64));
+			hashes.add(Long.valueOf(hash));
+			tree.add(hash, Integer.valueOf(i));
+		}
+		Assert.assertEquals(5000, tree.size());
+		for (int q = 0; q < 50; q++) {
+			final long query = hashes.get(random.nextInt(hashes.size())).longValue() ^ (1L << random.nextInt(64));
+			final HashSet<Integer> expected = new HashSet<>();
+			for (int i = 0; i < hashes.size(); i++) {
+				if (Long.bitCount(hashes.get(i).longValue() ^ query) <= 6) {
+					expected.add(Integer.valueOf(i));
+				}
+			}
+			final List<Integer> found = tree.find(query, 6);
+			Assert.assertEquals(expected, new HashSet<>(found));
+			for (int i = 1; i < found.size(); i++) {
+				Assert.assertTrue(Long.bitCount(hashes.get(found.get(i - 1).intValue()).longValue() ^ query) <= Long.bitCount(hashes.get(found.get(i).intValue()).longValue() ^ query));
+			}
+		}
+	}
+
+}
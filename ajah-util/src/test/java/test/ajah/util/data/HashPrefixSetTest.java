@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.util.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.util.data.HashPrefixSet;
+import com.ajah.util.data.HashUtils;
+
+/**
+ * Tests {@link HashPrefixSet}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class HashPrefixSetTest {
+
+	/**
+	 * Added hashes should be found, others not.
+	 */
+	@Test
+	public void addAndContains() {
+		final HashPrefixSet set = new HashPrefixSet(10000);
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertTrue(set.add(HashUtils.sha1Hex("http://example.com/" + i)));
+		}
+		Assert.assertEquals(1000, set.size());
+		for (int i = 0; i < 1000; i++) {
+			Assert.assertTrue(set.contains(HashUtils.sha1Hex("http://example.com/" + i)));
+			Assert.assertFalse(set.contains(HashUtils.sha1Hex("http://example.org/" + i)));
+		}
+		Assert.assertFalse(set.add(HashUtils.sha1Hex("http://example.com/0")));
+		Assert.assertTrue(set.add("0000000000000000ffff"));
+		Assert.assertTrue(set.contains("0000000000000000aaaa"));
+	}
+
+	/**
+	 * A full set should empty itself rather than grow.
+	 */
+	@Test
+	public void full() {
+		final HashPrefixSet set = new HashPrefixSet(2);
+		set.add(HashUtils.sha1Hex("a"));
+		set.add(HashUtils.sha1Hex("b"));
+		set.add(HashUtils.sha1Hex("c"));
+		Assert.assertEquals(1, set.size());
+		Assert.assertTrue(set.contains(HashUtils.sha1Hex("c")));
+		Assert.assertFalse(set.contains(HashUtils.sha1Hex("a")));
+	}
+
+}
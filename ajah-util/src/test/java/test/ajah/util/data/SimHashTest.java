@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.util.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.util.data.SimHash;
+import com.ajah.util.data.SimHashIndex;
+
+/**
+ * Tests {@link SimHash} and {@link SimHashIndex}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class SimHashTest {
+
+	private static final String ARTICLE = "The city council voted on Tuesday to approve a new budget that adds funding for parks, libraries and road repairs across every district, "
+			+ "after months of debate between the mayor and members who wanted deeper cuts to administrative spending. The final plan raises the parks budget by "
+			+ "twelve percent and sets aside money for two new branch libraries, one on the north side and one near the river. Road repairs will be scheduled "
+			+ "by a new office that ranks streets by traffic and condition rather than by district, a change that several members said was overdue. Opponents "
+			+ "argued that the city should have used the surplus to pay down debt, and warned that the new office would grow into another layer of management. "
+			+ "The mayor is expected to sign the budget next week, and the first repairs under the new system could begin as early as the spring.";
+
+	/**
+	 * Copies of an article with different markup and a small edit should be
+	 * close, and a different article should not.
+	 */
+	@Test
+	public void fingerprint() {
+		final long original = SimHash.fingerprint(ARTICLE).longValue();
+		Assert.assertEquals(original, SimHash.fingerprint("<p>" + ARTICLE.replace("parks", "<b>parks</b>") + "</p>").longValue());
+		final long edited = SimHash.fingerprint(ARTICLE + " Read more at our site.").longValue();
+		Assert.assertTrue(SimHash.distance(original, edited) <= 3);
+		final long other = SimHash.fingerprint("A recipe for banana bread that uses brown butter, toasted walnuts and a pinch of cardamom for extra warmth.").longValue();
+		Assert.assertTrue(SimHash.distance(original, other) > 10);
+		Assert.assertNull(SimHash.fingerprint("Too short to matter"));
+	}
+
+	/**
+	 * The index should find fingerprints within the distance and drop the
+	 * oldest when full.
+	 */
+	@Test
+	public void index() {
+		final SimHashIndex<String> index = new SimHashIndex<>(3, 2);
+		final long a = 0x123456789abcdef0L;
+		index.add(a, "a");
+		// Differs in one bit in each of three bands
+		index.add(a ^ 0x0001000100010000L, "b");
+		Assert.assertEquals("a", index.find(a).get(0));
+		Assert.assertEquals(2, index.find(a).size());
+		Assert.assertTrue(index.find(a ^ 0xF0000000000000FFL).isEmpty());
+		index.add(~a, "c");
+		Assert.assertEquals(2, index.size());
+		Assert.assertEquals(1, index.find(a).size());
+		Assert.assertEquals("b", index.find(a).get(0));
+		Assert.assertEquals("c", index.find(~a).get(0));
+	}
+
+}
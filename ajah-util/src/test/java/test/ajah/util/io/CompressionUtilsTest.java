@@ -0,0 +1,77 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.util.io;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.util.io.CompressionUtils;
+import com.ajah.util.text.LoremIpsum;
+
+/**
+ * Tests {@link CompressionUtils}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class CompressionUtilsTest {
+
+	/**
+	 * Gzipped data should round trip and record its uncompressed size.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void roundTrip() throws IOException {
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			text.append(LoremIpsum.getParagraph());
+		}
+		final byte[] data = text.toString().getBytes("UTF-8");
+		final byte[] compressed = CompressionUtils.gzip(data);
+		Assert.assertTrue(compressed.length < data.length);
+		Assert.assertTrue(CompressionUtils.isGzip(compressed));
+		Assert.assertEquals(data.length, CompressionUtils.getUncompressedSize(compressed));
+		Assert.assertArrayEquals(data, CompressionUtils.gunzip(compressed));
+	}
+
+	/**
+	 * Empty arrays should round trip too.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void empty() throws IOException {
+		Assert.assertArrayEquals(new byte[0], CompressionUtils.gunzip(CompressionUtils.gzip(new byte[0])));
+	}
+
+	/**
+	 * Images and archives should be recognized, text should not.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void compressedFormats() throws IOException {
+		Assert.assertTrue(CompressionUtils.isCompressedFormat(new byte[] { (byte) 0x89, 'P', 'N', 'G', 0x0d, 0x0a }));
+		Assert.assertTrue(CompressionUtils.isCompressedFormat(new byte[] { (byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0 }));
+		Assert.assertTrue(CompressionUtils.isCompressedFormat(CompressionUtils.gzip("foo".getBytes("UTF-8"))));
+		Assert.assertFalse(CompressionUtils.isCompressedFormat("<?xml version=\"1.0\"?><rss/>".getBytes("UTF-8")));
+		Assert.assertFalse(CompressionUtils.isCompressedFormat(new byte[] { 'a' }));
+	}
+
+}
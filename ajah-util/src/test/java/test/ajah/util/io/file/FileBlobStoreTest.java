@@ -0,0 +1,53 @@
+/*
+ *  Copyright 2012 Eric F. Savage, code@efsavage.com
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package test.ajah.util.io.file;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ajah.util.data.HashUtils;
+import com.ajah.util.io.file.FileBlobStore;
+
+/**
+ * Tests {@link FileBlobStore}.
+ * 
+ * @author <a href="http://efsavage.com">Eric F. Savage</a>, <a
+ *         href="mailto:code@efsavage.com">code@efsavage.com</a>.
+ */
+public class FileBlobStoreTest {
+
+	/**
+	 * Blobs should be stored under hashed directories and read back.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void putAndGet() throws IOException {
+		final File root = new File(System.getProperty("java.io.tmpdir"), "ajah-blob-test-" + System.nanoTime());
+		final FileBlobStore store = new FileBlobStore(root);
+		final byte[] data = "Hello, blob".getBytes("UTF-8");
+		final String key = HashUtils.sha1Hex(data);
+		Assert.assertNull(store.get(key));
+		store.put(key, data);
+		store.put(key, data);
+		Assert.assertArrayEquals(data, store.get(key));
+		Assert.assertTrue(new File(root, key.substring(0, 2) + "/" + key.substring(2, 4) + "/" + key.substring(4, 6) + "/" + key).exists());
+	}
+
+}